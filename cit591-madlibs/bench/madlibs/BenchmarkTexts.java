@@ -0,0 +1,65 @@
+package madlibs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Loads the texts used by the benchmarks. A text is either one of the passage
+ * files from the library, or "synthetic-" followed by a size such as 64k or
+ * 4m, which repeats the library passages until the text is that long.
+ *
+ */
+final class BenchmarkTexts {
+
+	static final String[] LIBRARY = {
+		"children1.txt", "children2.txt", "children3.txt",
+		"classic1.txt", "classic2.txt", "classic3.txt"};
+
+	private BenchmarkTexts() {
+	}
+
+	static String load(String name) throws IOException {
+		if (!name.startsWith("synthetic-")) {
+			return read(name);
+		}
+		String size = name.substring("synthetic-".length()).toLowerCase();
+		int multiplier = 1;
+		if (size.endsWith("k")) {
+			multiplier = 1024;
+		}
+		else if (size.endsWith("m")) {
+			multiplier = 1024 * 1024;
+		}
+		if (multiplier > 1) {
+			size = size.substring(0, size.length() - 1);
+		}
+		int length = Integer.parseInt(size) * multiplier;
+		StringBuilder text = new StringBuilder(length + 8192);
+		for (int i = 0; text.length() < length; i = (i + 1) % LIBRARY.length) {
+			text.append(read(LIBRARY[i])).append("\n\n");
+		}
+		return text.toString();
+	}
+
+	private static String read(String fileName) throws IOException {
+		return new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Samples words for every part of speech and replaces them, the way a
+	 * game does.
+	 */
+	static void playGame(Passage passage, long seed) {
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			int[][] indexes = new WeightedSampler(passage.getPartOfSpeech(pos).getIndexGroups())
+				.sampleIndexes(pos.getDesiredPercent(), seed + pos.ordinal(), MadLib.MAX_WORDS_PER_PART_OF_SPEECH);
+			String[] words = new String[indexes.length];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = "zebra" + i;
+			}
+			passage.replaceWords(words, indexes);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package madlibs;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the parts of Passage used during a game. Run with -prof gc
+ * (the default for mvn -Pjmh exec:exec) to also see the allocation rate.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PassageBenchmark {
+
+	@Param({"children1.txt", "children2.txt", "children3.txt", "classic1.txt", "classic2.txt", "classic3.txt",
+		"synthetic-64k", "synthetic-1m", "synthetic-4m"})
+	public String text;
+
+	// The lexicon tagger by default, since CoreNLP takes minutes on the larger texts
+	@Param({"lexicon"})
+	public String tagger;
+
+	private String originalText;
+	private Tagger passageTagger;
+	private TaggedText taggedText;
+	// A passage that has been through a whole game
+	private Passage playedPassage;
+	private final StringBuilder renderBuffer = new StringBuilder();
+	private String[] replacementWords;
+	private int[][] replacementIndexes;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		originalText = BenchmarkTexts.load(text);
+		passageTagger = tagger.equals("corenlp") ? CoreNlpTagger.getInstance() : LexiconTagger.getInstance();
+		passageTagger.warmUp();
+		taggedText = passageTagger.tag(originalText);
+		playedPassage = new Passage(taggedText);
+		BenchmarkTexts.playGame(playedPassage, 42);
+		replacementIndexes = new WeightedSampler(playedPassage.getPartOfSpeech(PartOfSpeech.SINGULAR_NOUN)
+			.getIndexGroups()).sampleIndexes(0.2, 7, MadLib.MAX_WORDS_PER_PART_OF_SPEECH);
+		replacementWords = new String[replacementIndexes.length];
+		for (int i = 0; i < replacementWords.length; i++) {
+			replacementWords[i] = "Smart Car";
+		}
+	}
+
+	@Benchmark
+	public Passage constructWithTagging() {
+		return new Passage(originalText, passageTagger);
+	}
+
+	@Benchmark
+	public Passage constructFromTaggedText() {
+		return new Passage(taggedText);
+	}
+
+	@Benchmark
+	public Passage replaceWords() {
+		playedPassage.replaceWords(replacementWords, replacementIndexes);
+		return playedPassage;
+	}
+
+	@Benchmark
+	public String getUpdatedText() {
+		return playedPassage.getUpdatedText();
+	}
+
+	@Benchmark
+	public StringBuilder renderUpdatedText() throws IOException {
+		// Reuses one buffer, as a server writing many results would
+		renderBuffer.setLength(0);
+		playedPassage.renderUpdatedText(renderBuffer, null);
+		return renderBuffer;
+	}
+
+	@Benchmark
+	public String getOriginalText() {
+		return playedPassage.getOriginalText();
+	}
+
+	@Benchmark
+	public int[][] getIndexesOfReplacedWords() {
+		return playedPassage.getIndexesOfReplacedWords();
+	}
+
+	@Benchmark
+	public int[][] getIndexesOfOriginalWords() {
+		return playedPassage.getIndexesOfOriginalWords();
+	}
+
+	@Benchmark
+	public Integer[][] toNestedArray() {
+		return playedPassage.getPartOfSpeech(PartOfSpeech.SINGULAR_NOUN).toNestedArray();
+	}
+
+	@Benchmark
+	public int[][] getIndexGroups() {
+		return playedPassage.getPartOfSpeech(PartOfSpeech.SINGULAR_NOUN).getIndexGroups();
+	}
+}
@@ -0,0 +1,178 @@
+package madlibs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * TaggerBenchmark compares LexiconTagger with CoreNlpTagger. For every text it
+ * prints how long each tagger takes and how often the two agree on the
+ * PartOfSpeech of a word, which is all that matters for the game.
+ *
+ * The shipped lexicon.tsv was built from the library passages, so agreement
+ * with it on those passages is training-set agreement, and is labelled so.
+ * The held-out column tags every text with a lexicon built, the same way as
+ * LexiconTagger.main, from the other texts only. The precision and recall
+ * are for the held-out lexicons.
+ *
+ * Run it with mvn -Pjmh compile exec:exec -Dbench.command=madlibs.TaggerBenchmark,
+ * adding the text files after the class name, or with no files to use the
+ * passages listed in index.csv.
+ *
+ */
+public class TaggerBenchmark {
+
+	// Repeat the fast tagger enough times to get a stable average
+	private static final int LEXICON_ROUNDS = 20000;
+	private static final int CORENLP_ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		ArrayList<String> fileNames = new ArrayList<String>();
+		if (args.length > 0) {
+			for (String arg : args) {
+				fileNames.add(arg);
+			}
+		}
+		else {
+			MadLib madLib = new MadLib();
+			madLib.makeMenu();
+			for (MenuEntry entry : madLib.getChildrensMenu()) {
+				fileNames.add(entry.getLitFileName());
+			}
+			for (MenuEntry entry : madLib.getClassicsMenu()) {
+				fileNames.add(entry.getLitFileName());
+			}
+		}
+
+		CoreNlpTagger coreNlp = CoreNlpTagger.getInstance();
+		LexiconTagger lexicon = LexiconTagger.getInstance();
+		coreNlp.warmUp();
+
+		ArrayList<String> texts = new ArrayList<String>();
+		ArrayList<TaggedText> expected = new ArrayList<TaggedText>();
+		for (String fileName : fileNames) {
+			String text = new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8);
+			texts.add(text);
+			expected.add(coreNlp.tag(text));
+		}
+
+		System.out.println(String.format("%-16s %7s %12s %12s %9s %9s %9s",
+			"file", "tokens", "lexicon us", "corenlp us", "aligned", "train", "held-out"));
+		long totalAligned = 0;
+		long totalTrain = 0;
+		long totalHeldOutAligned = 0;
+		long totalHeldOut = 0;
+		long totalTokens = 0;
+		// Rows are what CoreNLP says, columns are what the lexicon tagger says,
+		// and the last row and column are for words that are never replaced
+		int buckets = PartOfSpeech.values().length + 1;
+		long[][] confusion = new long[buckets][buckets];
+		for (int f = 0; f < fileNames.size(); f++) {
+			String text = texts.get(f);
+			double lexiconMicros = time(lexicon, text, LEXICON_ROUNDS);
+			double coreNlpMicros = time(coreNlp, text, CORENLP_ROUNDS);
+			LexiconTagger heldOut = new LexiconTagger(lexiconWithout(expected, f), "held-out");
+			int[] train = compare(expected.get(f), lexicon.tag(text), new long[buckets][buckets]);
+			int[] test = compare(expected.get(f), heldOut.tag(text), confusion);
+			int size = expected.get(f).size();
+			totalAligned += train[0];
+			totalTrain += train[1];
+			totalHeldOutAligned += test[0];
+			totalHeldOut += test[1];
+			totalTokens += size;
+			System.out.println(String.format("%-16s %7d %12.1f %12.1f %8.1f%% %8.1f%% %8.1f%%",
+				fileNames.get(f), size, lexiconMicros, coreNlpMicros, 100.0 * train[0] / size,
+				100.0 * train[1] / Math.max(1, train[0]), 100.0 * test[1] / Math.max(1, test[0])));
+		}
+		System.out.println(String.format("%-16s %7d %12s %12s %8.1f%% %8.1f%% %8.1f%%",
+			"total", totalTokens, "", "", 100.0 * totalAligned / totalTokens, 100.0 * totalTrain / totalAligned,
+			100.0 * totalHeldOut / totalHeldOutAligned));
+
+		System.out.println();
+		System.out.println(String.format("%-16s %9s %9s", "held-out", "precision", "recall"));
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			int b = pos.ordinal();
+			long truePositives = confusion[b][b];
+			long predicted = 0;
+			long actual = 0;
+			for (int k = 0; k < buckets; k++) {
+				predicted += confusion[k][b];
+				actual += confusion[b][k];
+			}
+			System.out.println(String.format("%-16s %8.1f%% %8.1f%%", pos,
+				100.0 * truePositives / Math.max(1, predicted), 100.0 * truePositives / Math.max(1, actual)));
+		}
+	}
+
+	/*
+	 * Lines the words up by where they start in the text, since the two
+	 * taggers don't always split the text the same way, and counts the words
+	 * in the confusion matrix. Returns how many words lined up and how many of
+	 * those got the same PartOfSpeech.
+	 */
+	private static int[] compare(TaggedText expected, TaggedText actual, long[][] confusion) {
+		int[] expectedStarts = starts(expected);
+		int[] actualStarts = starts(actual);
+		int aligned = 0;
+		int agree = 0;
+		int j = 0;
+		for (int i = 0; i < expected.size(); i++) {
+			while (j < actual.size() && actualStarts[j] < expectedStarts[i]) {
+				j++;
+			}
+			if (j < actual.size() && actualStarts[j] == expectedStarts[i]
+					&& actual.getWord(j).equals(expected.getWord(i))) {
+				aligned++;
+				int row = bucket(expected.getTag(i));
+				int column = bucket(actual.getTag(j));
+				confusion[row][column]++;
+				if (row == column) {
+					agree++;
+				}
+			}
+		}
+		return new int[] {aligned, agree};
+	}
+
+	/*
+	 * Builds a lexicon the way LexiconTagger.main and load do, leaving out one text.
+	 */
+	private static Map<String, String> lexiconWithout(ArrayList<TaggedText> taggedTexts, int leftOut) {
+		ArrayList<TaggedText> others = new ArrayList<TaggedText>(taggedTexts);
+		others.remove(leftOut);
+		return LexiconTagger.mostFrequentTags(LexiconTagger.countTags(others));
+	}
+
+	/*
+	 * Returns the average time to tag the text once, in microseconds.
+	 */
+	private static double time(Tagger tagger, String text, int rounds) {
+		// Let the JIT compile the tagger before timing it
+		for (int i = 0; i < rounds; i++) {
+			tagger.tag(text);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			tagger.tag(text);
+		}
+		return (System.nanoTime() - start) / 1000.0 / rounds;
+	}
+
+	private static int bucket(String posTag) {
+		PartOfSpeech pos = PartOfSpeech.fromPennTag(posTag);
+		return pos == null ? PartOfSpeech.values().length : pos.ordinal();
+	}
+
+	private static int[] starts(TaggedText taggedText) {
+		int[] starts = new int[taggedText.size()];
+		int position = 0;
+		for (int i = 0; i < taggedText.size(); i++) {
+			starts[i] = position;
+			position += taggedText.getWord(i).length() + taggedText.getTrailingBlanks(i).length();
+		}
+		return starts;
+	}
+}
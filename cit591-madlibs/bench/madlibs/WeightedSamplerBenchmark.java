@@ -0,0 +1,68 @@
+package madlibs;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for WeightedSampler, using the singular nouns of a passage as
+ * the rows to sample.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeightedSamplerBenchmark {
+
+	@Param({"children1.txt", "children2.txt", "children3.txt", "classic1.txt", "classic2.txt", "classic3.txt",
+		"synthetic-64k", "synthetic-1m", "synthetic-4m"})
+	public String text;
+
+	// The most words a player is asked for, and effectively no limit
+	@Param({"5", "2147483647"})
+	public int maxN;
+
+	private Integer[][] boxedGroups;
+	private WeightedSampler sampler;
+	private int[] rows;
+	private long seed = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Passage passage = new Passage(BenchmarkTexts.load(text), LexiconTagger.getInstance());
+		TaggedPassage.PartOfSpeechTracker nouns = passage.getPartOfSpeech(PartOfSpeech.SINGULAR_NOUN);
+		boxedGroups = nouns.toNestedArray();
+		sampler = new WeightedSampler(nouns.getIndexGroups());
+		rows = new int[Math.max(1, Math.min(maxN, nouns.getWordCount()))];
+	}
+
+	@Benchmark
+	public WeightedSampler build() {
+		return new WeightedSampler(boxedGroups);
+	}
+
+	@Benchmark
+	public Integer[][] sample() {
+		return sampler.sample(PartOfSpeech.SINGULAR_NOUN.getDesiredPercent(), seed++, maxN);
+	}
+
+	@Benchmark
+	public int sampleRows() {
+		return sampler.sampleRows(PartOfSpeech.SINGULAR_NOUN.getDesiredPercent(), seed++, maxN, rows);
+	}
+}
@@ -0,0 +1,440 @@
+package madlibs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BatchMadLib fills in Mad-Libs without a window, for example to generate
+ * thousands of them for another program. Every Mad-Lib goes through a
+ * pipeline of stages joined by bounded queues:
+ *
+ * read the passage, tag it and build a Passage, plan the words to replace
+ * with a GamePlan, replace them with words from the word lists, and
+ * render the result as a line of JSON.
+ *
+ * Every stage except the first and last runs on as many threads as there are
+ * processors. Each passage is only read and tagged once, however many
+ * Mad-Libs are made from it. Progress is printed to standard error.
+ *
+ * The lines are written in the order of the Mad-Libs' ids, whatever order the
+ * threads finish them in, so the same seed always gives the same output. A
+ * Mad-Lib that fails, for example because its passage can't be read, is left
+ * out and counted in the summary.
+ *
+ * Usage: java madlibs.BatchMadLib [options] [passage files]
+ *
+ * Without passage files, the passages in the library are used in turn.
+ * Options are --count n (default 1000), --out file (default standard output),
+ * --words file (default words.tsv), --seed n, --threads n and --queue n.
+ *
+ */
+public class BatchMadLib {
+
+	public static final String DEFAULT_WORDS_FILE = "words.tsv";
+
+	// Put on a queue after the last job, to shut the following stage down
+	private static final Job END = new Job(-1, null);
+
+	private int count = 1000;
+	private Path outFile;
+	private Path wordsFile = Paths.get(DEFAULT_WORDS_FILE);
+	private long seed = System.nanoTime();
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int queueCapacity = 256;
+	private List<Source> sources = new ArrayList<Source>();
+	private EnumMap<PartOfSpeech, String[]> words;
+	private Tagger tagger;
+	// Mad-Libs that have been started but not yet written, which bounds how
+	// many finished lines wait for an earlier one before they can be written
+	private Semaphore inFlight;
+	private int window;
+
+	/*
+	 * A passage that Mad-Libs are made from. It is read and tagged by the first
+	 * job that needs it, and its TaggedPassage, including the samplers, is
+	 * shared by all the others. Each job only adds its own Passage overlay.
+	 */
+	private class Source {
+		final String fileName;
+		final MenuEntry entry;
+		private String text;
+		private IOException readFailure;
+		private TaggedPassage taggedPassage;
+
+		Source(String fileName, MenuEntry entry) {
+			this.fileName = fileName;
+			this.entry = entry;
+		}
+
+		synchronized void read() {
+			// Files given on the command line are streamed while they are tagged
+			if (text == null && taggedPassage == null && readFailure == null && entry != null) {
+				try {
+					text = PassageContentCache.getInstance().get(fileName);
+				} catch (IOException e) {
+					// Every job for this passage fails when it is tagged
+					readFailure = e;
+				}
+			}
+		}
+
+		synchronized TaggedPassage getTaggedPassage() throws IOException {
+			if (readFailure != null) {
+				throw readFailure;
+			}
+			if (taggedPassage == null) {
+				TaggedText taggedText = text != null ? tagger.tag(text)
+					: new PassageReader(tagger).read(Paths.get(fileName));
+				taggedPassage = new TaggedPassage(taggedText);
+				text = null;
+			}
+			return taggedPassage;
+		}
+	}
+
+	/*
+	 * One Mad-Lib on its way through the pipeline.
+	 */
+	private static class Job {
+		final int id;
+		final Source source;
+		Passage passage;
+		GamePlan plan;
+		String line;
+		// Set when a stage fails, so the later stages pass the job straight on
+		boolean failed;
+
+		Job(int id, Source source) {
+			this.id = id;
+			this.source = source;
+		}
+	}
+
+	private interface Step {
+		void process(Job job) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BatchMadLib batch = new BatchMadLib();
+		try {
+			batch.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java madlibs.BatchMadLib [--count n] [--out file] [--words file]"
+				+ " [--seed n] [--threads n] [--queue n] [passage files]");
+			System.exit(1);
+		}
+		batch.run();
+	}
+
+	private void parseArguments(String[] args) {
+		ArrayList<String> fileNames = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (!arg.startsWith("--")) {
+				fileNames.add(arg);
+				continue;
+			}
+			if (i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value for " + arg);
+			}
+			String value = args[++i];
+			try {
+				switch (arg) {
+				case "--count":
+					count = Integer.parseInt(value);
+					break;
+				case "--out":
+					outFile = Paths.get(value);
+					break;
+				case "--words":
+					wordsFile = Paths.get(value);
+					break;
+				case "--seed":
+					seed = Long.parseLong(value);
+					break;
+				case "--threads":
+					threads = Math.max(1, Integer.parseInt(value));
+					break;
+				case "--queue":
+					queueCapacity = Math.max(1, Integer.parseInt(value));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Not a number for " + arg + ": " + value);
+			}
+		}
+		if (fileNames.isEmpty()) {
+			MadLib madLib = new MadLib();
+			madLib.makeMenu();
+			for (MenuEntry entry : madLib.getChildrensMenu()) {
+				sources.add(new Source(entry.getLitFileName(), entry));
+			}
+			for (MenuEntry entry : madLib.getClassicsMenu()) {
+				sources.add(new Source(entry.getLitFileName(), entry));
+			}
+		}
+		else {
+			for (String fileName : fileNames) {
+				sources.add(new Source(fileName, null));
+			}
+		}
+		if (sources.isEmpty()) {
+			throw new IllegalArgumentException("No passages to use");
+		}
+	}
+
+	/**
+	 * Reads the word lists from a file with a PartOfSpeech name, a tab and a
+	 * word on every line. Empty lines and lines starting with # are skipped.
+	 * @param file The file to read
+	 * @return The words for every part of speech
+	 * @throws IOException If the file can't be read, or a part of speech has no words
+	 */
+	static EnumMap<PartOfSpeech, String[]> readWords(Path file) throws IOException {
+		EnumMap<PartOfSpeech, List<String>> lists = new EnumMap<PartOfSpeech, List<String>>(PartOfSpeech.class);
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			lists.put(pos, new ArrayList<String>());
+		}
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] columns = line.split("\t");
+				if (columns.length < 2) {
+					throw new IOException("Expected a part of speech and a word: " + line);
+				}
+				try {
+					lists.get(PartOfSpeech.valueOf(columns[0].trim())).add(columns[1].trim());
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Unknown part of speech: " + columns[0]);
+				}
+			}
+		}
+		EnumMap<PartOfSpeech, String[]> words = new EnumMap<PartOfSpeech, String[]>(PartOfSpeech.class);
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			if (lists.get(pos).isEmpty()) {
+				throw new IOException("No words for " + pos + " in " + file);
+			}
+			words.put(pos, lists.get(pos).toArray(new String[0]));
+		}
+		return words;
+	}
+
+	private void run() throws Exception {
+		words = readWords(wordsFile);
+		tagger = Tagger.getDefault();
+
+		BlockingQueue<Job> toTag = new ArrayBlockingQueue<Job>(queueCapacity);
+		BlockingQueue<Job> toSample = new ArrayBlockingQueue<Job>(queueCapacity);
+		BlockingQueue<Job> toReplace = new ArrayBlockingQueue<Job>(queueCapacity);
+		BlockingQueue<Job> toRender = new ArrayBlockingQueue<Job>(queueCapacity);
+		BlockingQueue<Job> toWrite = new ArrayBlockingQueue<Job>(queueCapacity);
+
+		// As many jobs as all the queues hold, so the queues, not the window, set the pace
+		window = 5 * queueCapacity;
+		inFlight = new Semaphore(window);
+
+		long start = System.nanoTime();
+		startStage("tag", threads, toTag, toSample, job -> job.passage = new Passage(job.source.getTaggedPassage()));
+		startStage("sample", threads, toSample, toReplace, this::sample);
+		startStage("replace", threads, toReplace, toRender, this::replace);
+		startStage("render", threads, toRender, toWrite, this::render);
+
+		Thread reader = new Thread(() -> {
+			try {
+				for (int id = 0; id < count; id++) {
+					Source source = sources.get(id % sources.size());
+					source.read();
+					inFlight.acquire();
+					toTag.put(new Job(id, source));
+				}
+				toTag.put(END);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "batch-read");
+		reader.setDaemon(true);
+		reader.start();
+
+		long written = write(toWrite, start);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		// Counts the jobs that failed, and any lost when a whole stage died
+		System.err.println(String.format("Wrote %d Mad-Libs in %.2f s (%.0f per second), %d failed",
+			written, seconds, written / seconds, count - written));
+	}
+
+	/*
+	 * Starts the threads of one stage. When a thread sees END it puts it back
+	 * for the other threads of the stage, and the last one to stop passes it on.
+	 * Failed jobs are passed on too, so the writer knows not to wait for them.
+	 * A thread that is ended by an Error still passes on the job it held, and
+	 * still counts as stopped, so the stages after it are not left waiting.
+	 */
+	private void startStage(String name, int threadCount, BlockingQueue<Job> input, BlockingQueue<Job> output,
+			Step step) {
+		AtomicInteger running = new AtomicInteger(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			Thread thread = new Thread(() -> {
+				Job job = null;
+				try {
+					while (true) {
+						job = input.take();
+						if (job == END) {
+							job = null;
+							input.put(END);
+							return;
+						}
+						if (!job.failed) {
+							try {
+								step.process(job);
+							} catch (InterruptedException e) {
+								throw e;
+							} catch (Exception e) {
+								fail(job, name, e);
+							}
+						}
+						output.put(job);
+						job = null;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					try {
+						if (job != null) {
+							fail(job, name, null);
+							output.put(job);
+						}
+						if (running.decrementAndGet() == 0) {
+							output.put(END);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "batch-" + name + "-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void fail(Job job, String stage, Exception e) {
+		job.failed = true;
+		job.passage = null;
+		job.plan = null;
+		System.err.println("Mad-Lib " + job.id + " (" + job.source.fileName + ") failed in " + stage
+			+ (e != null ? ": " + e : ""));
+	}
+
+	private void sample(Job job) {
+		job.plan = job.passage.planGame(seed + job.id);
+	}
+
+	private void replace(Job job) {
+		// A different random sequence from the sampling, but still repeatable
+		Random random = new Random(~(seed + job.id));
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			int[][] indexes = job.plan.getIndexes(pos);
+			String[] choices = words.get(pos);
+			String[] replacements = new String[indexes.length];
+			for (int i = 0; i < replacements.length; i++) {
+				replacements[i] = choices[random.nextInt(choices.length)];
+			}
+			job.passage.replaceWords(replacements, indexes);
+		}
+	}
+
+	private void render(Job job) {
+		GameEvents.ResultRendered event = new GameEvents.ResultRendered();
+		event.begin();
+		StringBuilder line = new StringBuilder(job.passage.getUpdatedLength() + 256);
+		line.append('{');
+		Json.appendName(line, "id").append(job.id);
+		Json.appendName(line, "file");
+		Json.appendString(line, job.source.fileName);
+		if (job.source.entry != null) {
+			Json.appendName(line, "title");
+			Json.appendString(line, job.source.entry.getLitTitle().trim());
+			Json.appendName(line, "author");
+			Json.appendString(line, job.source.entry.getLitAuthor().trim());
+		}
+		// The text is escaped as it is rendered, and the highlights found in the same pass
+		StringBuilder highlights = new StringBuilder();
+		Json.appendName(line, "text");
+		Json.appendRendered(line, highlights, job.passage::renderUpdatedText);
+		Json.appendName(line, "highlights").append(highlights);
+		job.line = line.append('}').toString();
+		event.finish("batch", job.passage.getOriginalText(), line.length(), job.passage.getReplacedCount());
+		// Nothing else needs the passage, so let it be collected while waiting to be written
+		job.passage = null;
+		job.plan = null;
+	}
+
+	/*
+	 * Writes the rendered lines on this thread until END arrives, printing the
+	 * throughput about once a second. Jobs that arrive early wait in a ring of
+	 * window slots until every job before them has been written or has failed.
+	 */
+	private long write(BlockingQueue<Job> input, long start) throws IOException, InterruptedException {
+		Writer out = outFile != null ? Files.newBufferedWriter(outFile, StandardCharsets.UTF_8)
+			: new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+		long written = 0;
+		long lastReport = start;
+		long lastWritten = 0;
+		Job[] waiting = new Job[window];
+		int nextId = 0;
+		try {
+			while (true) {
+				Job job = input.take();
+				if (job == END) {
+					break;
+				}
+				waiting[job.id % window] = job;
+				while (waiting[nextId % window] != null) {
+					Job next = waiting[nextId % window];
+					waiting[nextId % window] = null;
+					nextId++;
+					inFlight.release();
+					if (next.failed) {
+						continue;
+					}
+					out.write(next.line);
+					out.write('\n');
+					written++;
+				}
+				long now = System.nanoTime();
+				if (now - lastReport >= 1_000_000_000L) {
+					System.err.println(String.format("%d of %d written, %.0f per second", written, count,
+						(written - lastWritten) * 1e9 / (now - lastReport)));
+					lastReport = now;
+					lastWritten = written;
+				}
+			}
+		} finally {
+			out.flush();
+			if (outFile != null) {
+				out.close();
+			}
+		}
+		return written;
+	}
+}
@@ -0,0 +1,124 @@
+package madlibs;
+
+import java.util.Properties;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.POSTaggerAnnotator;
+import edu.stanford.nlp.pipeline.TokenizerAnnotator;
+import edu.stanford.nlp.pipeline.WordsToSentencesAnnotator;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * This class tags text with the Stanford NLP library. It holds a single
+ * pipeline that only tokenizes, splits sentences and tags parts of speech,
+ * and is meant to be created once and shared, since loading the part of
+ * speech model takes several seconds. The tokenizing and the tagging are
+ * timed separately in Metrics.
+ *
+ * The model is chosen with the madlibs.pos.model setting, which can be
+ * "left3words" (fast, the default), "bidirectional" (more accurate, but much
+ * slower, and requires the stanford-corenlp models-english jar), or the
+ * classpath location of any other tagger model.
+ *
+ */
+public class CoreNlpTagger implements Tagger {
+
+	public static final String LEFT3WORDS_MODEL =
+		"edu/stanford/nlp/models/pos-tagger/english-left3words/english-left3words-distsim.tagger";
+	public static final String BIDIRECTIONAL_MODEL =
+		"edu/stanford/nlp/models/pos-tagger/english-bidirectional/english-bidirectional-distsim.tagger";
+	public static final String MODEL_SETTING = "madlibs.pos.model";
+
+	// The shared tagger, using the model from the settings
+	private static CoreNlpTagger instance;
+
+	private final String model;
+	// Built the first time they are needed, since this loads the model
+	private AnnotationPipeline tokenizer;
+	private Annotator posTagger;
+
+	/**
+	 * Creates a new tagger for the supplied model. The model is not loaded until
+	 * the first text is tagged or warmUp is called.
+	 * @param model "left3words", "bidirectional" or the classpath location of a model
+	 */
+	public CoreNlpTagger(String model) {
+		if (model.equals("left3words")) {
+			this.model = LEFT3WORDS_MODEL;
+		}
+		else if (model.equals("bidirectional")) {
+			this.model = BIDIRECTIONAL_MODEL;
+		}
+		else {
+			this.model = model;
+		}
+	}
+
+	/**
+	 * @return The shared tagger, using the model given by the madlibs.pos.model setting
+	 */
+	public static synchronized CoreNlpTagger getInstance() {
+		if (instance == null) {
+			instance = new CoreNlpTagger(MadLibConfig.get(MODEL_SETTING, "left3words"));
+		}
+		return instance;
+	}
+
+	/**
+	 * Loads the model and tags a short sentence, so that the first real passage
+	 * does not have to wait for either.
+	 */
+	@Override
+	public void warmUp() {
+		tag("The quick brown fox was jumping over the lazy dogs.");
+	}
+
+	@Override
+	public String getVersion() {
+		return "corenlp-3.9.2/" + model.substring(model.lastIndexOf('/') + 1);
+	}
+
+	@Override
+	public TaggedText tag(String text) {
+		AnnotationPipeline pipeline = getPipeline();
+		Annotation annotation = new Annotation(text);
+		long startNanos = Metrics.startNanos();
+		long startBytes = Metrics.allocatedBytes();
+		pipeline.annotate(annotation);
+		Metrics.TOKENIZE.record(startNanos, startBytes);
+		startNanos = Metrics.startNanos();
+		startBytes = Metrics.allocatedBytes();
+		posTagger.annotate(annotation);
+		Metrics.TAG.record(startNanos, startBytes);
+		TaggedText taggedText = new TaggedText();
+		for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+			for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+				taggedText.add(token.originalText(), token.tag(), token.after());
+			}
+			taggedText.endSentence();
+		}
+		return taggedText;
+	}
+
+	/*
+	 * Returns the tokenizer, and makes sure the part of speech tagger is loaded
+	 * too. They are kept apart so that each can be timed.
+	 */
+	private synchronized AnnotationPipeline getPipeline() {
+		if (tokenizer == null) {
+			// These are the same settings that the simple Document class uses
+			Properties properties = new Properties();
+			properties.setProperty("tokenize.language", "en");
+			properties.setProperty("pos.model", model);
+			posTagger = new POSTaggerAnnotator("pos", properties);
+			tokenizer = new AnnotationPipeline();
+			tokenizer.addAnnotator(new TokenizerAnnotator(false, properties));
+			tokenizer.addAnnotator(new WordsToSentencesAnnotator(false));
+		}
+		return tokenizer;
+	}
+}
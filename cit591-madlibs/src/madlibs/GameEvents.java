@@ -0,0 +1,183 @@
+package madlibs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class holds the JDK Flight Recorder events of the game, so that a
+ * recording shows which passage and which step of a game was running next to
+ * the garbage collections, compilations and CPU samples of the JVM. Record
+ * with, for example:
+ *
+ * java -XX:StartFlightRecording=filename=game.jfr,settings=profile madlibs.MadLib
+ *
+ * and look for the Mad-Libs category in JDK Mission Control, or run
+ * jfr print --categories Mad-Libs game.jfr
+ *
+ * Every event is begun before its step and finished after it. When recording
+ * is off, finishing only checks a flag, so the events can stay in place.
+ * Passages are identified by the hash code of their original text, which is
+ * the same for every play of the same passage.
+ *
+ */
+public final class GameEvents {
+
+	private GameEvents() {
+	}
+
+	/**
+	 * @param originalText The original text of a passage
+	 * @return The id of the passage in events
+	 */
+	static int passageId(String originalText) {
+		return originalText.hashCode();
+	}
+
+	@Name("madlibs.PassageTagged")
+	@Label("Passage Tagged")
+	@Category("Mad-Libs")
+	@Description("A TaggedPassage was built from a text, including tagging it if it was not already tagged")
+	public static final class PassageTagged extends Event {
+		@Label("Passage")
+		int passage;
+		@Label("Characters")
+		int characters;
+		@Label("Tokens")
+		int tokens;
+		@Label("Sentences")
+		int sentences;
+		@Label("Tagged")
+		@Description("Whether the text was tagged, rather than already tagged, for example by the cache")
+		boolean tagged;
+
+		/**
+		 * Ends the event and records it, if recording.
+		 * @param taggedText The words of the passage
+		 * @param tagged Whether the duration includes tagging the text
+		 */
+		void finish(TaggedText taggedText, boolean tagged) {
+			end();
+			if (shouldCommit()) {
+				String text = taggedText.getText();
+				passage = passageId(text);
+				characters = text.length();
+				tokens = taggedText.size();
+				sentences = taggedText.getSentenceCount();
+				this.tagged = tagged;
+				commit();
+			}
+		}
+	}
+
+	@Name("madlibs.WordsSampled")
+	@Label("Words Sampled")
+	@Category("Mad-Libs")
+	@Description("A WeightedSampler chose the words of a part of speech to replace")
+	public static final class WordsSampled extends Event {
+		@Label("Part Of Speech")
+		String partOfSpeech;
+		@Label("Candidates")
+		@Description("The number of different words that could be chosen")
+		int candidates;
+		@Label("Occurrences")
+		@Description("How many times the candidates appear in the passage")
+		int occurrences;
+		@Label("Picks")
+		int picks;
+		@Label("Desired Fraction")
+		double desiredFraction;
+
+		/**
+		 * Ends the event and records it, if recording.
+		 * @param partOfSpeech The part of speech sampled, or null if unknown
+		 * @param candidates The number of rows that could be chosen
+		 * @param occurrences The number of indexes in all the rows
+		 * @param picks The number of rows chosen
+		 * @param desiredFraction The fraction of the indexes that was asked for
+		 */
+		void finish(PartOfSpeech partOfSpeech, int candidates, int occurrences, int picks, double desiredFraction) {
+			end();
+			if (shouldCommit()) {
+				this.partOfSpeech = partOfSpeech == null ? null : partOfSpeech.name();
+				this.candidates = candidates;
+				this.occurrences = occurrences;
+				this.picks = picks;
+				this.desiredFraction = desiredFraction;
+				commit();
+			}
+		}
+	}
+
+	@Name("madlibs.WordsReplaced")
+	@Label("Words Replaced")
+	@Category("Mad-Libs")
+	@Description("The player's words were put into a Passage")
+	public static final class WordsReplaced extends Event {
+		@Label("Passage")
+		int passage;
+		@Label("Words")
+		@Description("The number of replacement words supplied")
+		int words;
+		@Label("Occurrences")
+		@Description("The number of places in the passage that were replaced")
+		int occurrences;
+		@Label("Replaced Words")
+		@Description("How many words of the passage have been replaced so far")
+		int replacedWords;
+
+		/**
+		 * Ends the event and records it, if recording.
+		 * @param passage The passage the words were put into
+		 * @param words The number of replacement words
+		 * @param occurrences The number of places they were put
+		 */
+		void finish(Passage passage, int words, int occurrences) {
+			end();
+			if (shouldCommit()) {
+				this.passage = passageId(passage.getOriginalText());
+				this.words = words;
+				this.occurrences = occurrences;
+				replacedWords = passage.getReplacedCount();
+				commit();
+			}
+		}
+	}
+
+	@Name("madlibs.ResultRendered")
+	@Label("Result Rendered")
+	@Category("Mad-Libs")
+	@Description("The result of a game was rendered for the player")
+	public static final class ResultRendered extends Event {
+		@Label("Renderer")
+		@Description("window, batch or server")
+		String renderer;
+		@Label("Passage")
+		int passage;
+		@Label("Output")
+		@Description("The number of characters written, including any markup")
+		int characters;
+		@Label("Replaced Words")
+		int replacedWords;
+
+		/**
+		 * Ends the event and records it, if recording.
+		 * @param renderer Where the result was rendered: window, batch or server
+		 * @param originalText The original text of the passage
+		 * @param characters The number of characters written
+		 * @param replacedWords The number of words of the passage that were replaced
+		 */
+		void finish(String renderer, String originalText, int characters, int replacedWords) {
+			end();
+			if (shouldCommit()) {
+				this.renderer = renderer;
+				passage = passageId(originalText);
+				this.characters = characters;
+				this.replacedWords = replacedWords;
+				commit();
+			}
+		}
+	}
+}
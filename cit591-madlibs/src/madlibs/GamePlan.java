@@ -0,0 +1,112 @@
+package madlibs;
+
+import java.util.Random;
+
+/**
+ * This class holds the words a player will be asked to replace in one game:
+ * the sampled indexes for every PartOfSpeech, worked out up front from a single
+ * seed. The same passage and seed always give the same plan, so a whole game
+ * can be repeated.
+ *
+ * Plans are made with Passage.planGame, or while a long text is being read
+ * with ReservoirSampler.GamePlanner. The window, the server and the batch
+ * all play the parts of speech in the order of PartOfSpeech, skipping those
+ * the plan has no words for.
+ *
+ */
+public class GamePlan {
+
+	private final long seed;
+	// The sampled indexes for every PartOfSpeech, grouped by word. The rows are
+	// shared with the samplers and must not be modified.
+	private final int[][][] indexes;
+
+	/**
+	 * Samples every part of speech in one pass, with one random sequence
+	 * seeded from the supplied seed.
+	 * @param samplers A sampler for every PartOfSpeech, in the order of its ordinal
+	 * @param seed Seeds the sampling
+	 */
+	GamePlan(WeightedSampler[] samplers, long seed) {
+		this.seed = seed;
+		Random random = new Random(seed);
+		PartOfSpeech[] partsOfSpeech = PartOfSpeech.values();
+		indexes = new int[partsOfSpeech.length][][];
+		// All the parts of speech are sampled into the same rows
+		int[] rows = new int[Math.max(1, MadLib.MAX_WORDS_PER_PART_OF_SPEECH)];
+		for (PartOfSpeech pos : partsOfSpeech) {
+			WeightedSampler sampler = samplers[pos.ordinal()];
+			// One number for every part of speech, even one with no words, so
+			// that each is sampled the same way whatever the others contain
+			long posSeed = random.nextLong();
+			int count = sampler.sampleRows(pos.getDesiredPercent(), posSeed, MadLib.MAX_WORDS_PER_PART_OF_SPEECH, rows);
+			int[][] sampled = new int[count][];
+			for (int i = 0; i < count; i++) {
+				sampled[i] = sampler.getRow(rows[i]);
+			}
+			indexes[pos.ordinal()] = sampled;
+		}
+	}
+
+	/**
+	 * Creates a plan from indexes that have already been sampled.
+	 * @param indexes The indexes for every PartOfSpeech, in the order of its ordinal
+	 * @param seed The seed they were sampled with
+	 */
+	GamePlan(int[][][] indexes, long seed) {
+		this.seed = seed;
+		this.indexes = indexes;
+	}
+
+	/**
+	 * @return The seed the plan was made from
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param partOfSpeech A part of speech
+	 * @return The indexes of the words to replace, grouped so that every group
+	 * gets one replacement word. These must not be modified.
+	 */
+	public int[][] getIndexes(PartOfSpeech partOfSpeech) {
+		return indexes[partOfSpeech.ordinal()];
+	}
+
+	/**
+	 * @param partOfSpeech A part of speech
+	 * @return How many words the player has to supply for it
+	 */
+	public int getWordCount(PartOfSpeech partOfSpeech) {
+		return indexes[partOfSpeech.ordinal()].length;
+	}
+
+	/**
+	 * @return How many words the player has to supply in the whole game
+	 */
+	public int getTotalWordCount() {
+		int total = 0;
+		for (int[][] sampled : indexes) {
+			total += sampled.length;
+		}
+		return total;
+	}
+
+	/**
+	 * Finds the part of speech to ask for next.
+	 * @param previous The part of speech that was just answered, or null at
+	 * the start of the game
+	 * @return The next part of speech that has any words to replace, or null
+	 * if there are no more
+	 */
+	public PartOfSpeech nextPartOfSpeech(PartOfSpeech previous) {
+		PartOfSpeech[] partsOfSpeech = PartOfSpeech.values();
+		for (int i = previous == null ? 0 : previous.ordinal() + 1; i < partsOfSpeech.length; i++) {
+			if (indexes[i].length > 0) {
+				return partsOfSpeech[i];
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,62 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class GamePlanTest {
+
+	private static Passage passage() {
+		TaggedText taggedText = new TaggedText();
+		String[] words = {"The", "happy", "cats", "saw", "a", "dog", "and", "a", "cat", ",", "and", "the", "dog",
+			"barked", "loudly", "."};
+		String[] tags = {"DT", "JJ", "NNS", "VBD", "DT", "NN", "CC", "DT", "NN", ",", "CC", "DT", "NN", "VBD", "RB",
+			"."};
+		for (int i = 0; i < words.length; i++) {
+			taggedText.add(words[i], tags[i], i < words.length - 2 && !words[i + 1].equals(",") ? " " : "");
+		}
+		return new Passage(taggedText);
+	}
+
+	@Test
+	void sameAsSamplingEachPartOfSpeechTest() {
+		Passage passage = passage();
+		GamePlan plan = passage.planGame(42);
+		assertEquals(42, plan.getSeed());
+		// The plan takes one number from the seeded sequence for every part of speech, in order
+		Random random = new Random(42);
+		int total = 0;
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			WeightedSampler sampler = new WeightedSampler(passage.getPartOfSpeech(pos).getIndexGroups());
+			int[][] expected = sampler.sampleIndexes(pos.getDesiredPercent(), random.nextLong(),
+				MadLib.MAX_WORDS_PER_PART_OF_SPEECH);
+			assertArrayEquals(expected, plan.getIndexes(pos), pos.name());
+			assertEquals(expected.length, plan.getWordCount(pos));
+			total += expected.length;
+		}
+		assertEquals(total, plan.getTotalWordCount());
+		// The same seed gives the same game
+		GamePlan again = passage().planGame(42);
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			assertArrayEquals(plan.getIndexes(pos), again.getIndexes(pos));
+		}
+	}
+
+	@Test
+	void nextPartOfSpeechTest() {
+		GamePlan plan = passage().planGame(7);
+		// There are no -ed or -ing verbs, and every other part of speech has a word
+		assertEquals(PartOfSpeech.SINGULAR_NOUN, plan.nextPartOfSpeech(null));
+		PartOfSpeech pos = null;
+		int asked = 0;
+		while ((pos = plan.nextPartOfSpeech(pos)) != null) {
+			assertTrue(plan.getWordCount(pos) > 0);
+			asked++;
+		}
+		assertEquals(4, asked);
+		assertNull(plan.nextPartOfSpeech(PartOfSpeech.ADVERB));
+		assertEquals(0, plan.getWordCount(PartOfSpeech.ED_VERB));
+	}
+}
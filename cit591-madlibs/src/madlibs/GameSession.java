@@ -0,0 +1,173 @@
+package madlibs;
+
+import java.io.IOException;
+
+/**
+ * This class holds one game being played through MadLibServer: the passage,
+ * the indexes of the words the player has been asked to replace, and which
+ * parts of speech the player has answered so far. It follows the same steps
+ * as UserInterface, one PartOfSpeech at a time, but the player can answer
+ * them in any order.
+ *
+ * A session can be used from several request threads at once, so every
+ * method is synchronized.
+ *
+ */
+public class GameSession {
+
+	private final String id;
+	// The library entry the passage came from, or null for the player's own text
+	private final MenuEntry entry;
+	private final Passage passage;
+	// The words to ask for
+	private final GamePlan plan;
+	private final boolean[] answered;
+
+	/**
+	 * Starts a new game, planning the words to ask for with Passage.planGame.
+	 * @param id Identifies the session
+	 * @param entry The library entry of the passage, or null
+	 * @param passage The passage to play with. It belongs to this session from now on.
+	 * @param seed Seeds the sampling, so a game can be repeated
+	 */
+	public GameSession(String id, MenuEntry entry, Passage passage, long seed) {
+		this.id = id;
+		this.entry = entry;
+		this.passage = passage;
+		plan = passage.planGame(seed);
+		answered = new boolean[PartOfSpeech.values().length];
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			// Nothing to ask for if the passage has none of this part of speech
+			answered[pos.ordinal()] = plan.getWordCount(pos) == 0;
+		}
+	}
+
+	/**
+	 * @return Identifies the session
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return The library entry of the passage, or null for the player's own text
+	 */
+	public MenuEntry getEntry() {
+		return entry;
+	}
+
+	/**
+	 * @param partOfSpeech A part of speech
+	 * @return How many words the player has to supply for it
+	 */
+	public synchronized int getWordCount(PartOfSpeech partOfSpeech) {
+		return plan.getWordCount(partOfSpeech);
+	}
+
+	/**
+	 * @param partOfSpeech A part of speech
+	 * @return Whether the player has already supplied the words for it
+	 */
+	public synchronized boolean isAnswered(PartOfSpeech partOfSpeech) {
+		return answered[partOfSpeech.ordinal()];
+	}
+
+	/**
+	 * Replaces the sampled words of one part of speech. Answering the same part
+	 * of speech again replaces the words again.
+	 * @param partOfSpeech The part of speech the words are for
+	 * @param words One word for every word asked for
+	 * @throws IllegalArgumentException If the number of words is wrong
+	 */
+	public synchronized void submitWords(PartOfSpeech partOfSpeech, String[] words) {
+		int[][] wanted = plan.getIndexes(partOfSpeech);
+		if (words.length != wanted.length) {
+			throw new IllegalArgumentException("Expected " + wanted.length + " " + partOfSpeech.getDescription()
+				+ " but got " + words.length);
+		}
+		passage.replaceWords(words, wanted);
+		answered[partOfSpeech.ordinal()] = true;
+	}
+
+	/**
+	 * @return Whether the player has supplied all the words
+	 */
+	public synchronized boolean isComplete() {
+		for (boolean done : answered) {
+			if (!done) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The passage with the words supplied so far
+	 */
+	public synchronized String getUpdatedText() {
+		return passage.getUpdatedText();
+	}
+
+	/**
+	 * Writes the passage with the words supplied so far, as Passage.renderUpdatedText.
+	 * @param out Where to write the text
+	 * @param listener Told where the replaced words are, or null
+	 * @throws IOException If out can't be written to
+	 */
+	public synchronized void renderUpdatedText(Appendable out, Passage.HighlightListener listener)
+			throws IOException {
+		passage.renderUpdatedText(out, listener);
+	}
+
+	/**
+	 * Writes the original passage, as Passage.renderOriginalText.
+	 * @param out Where to write the text
+	 * @param listener Told where the replaced words are, or null
+	 * @throws IOException If out can't be written to
+	 */
+	public synchronized void renderOriginalText(Appendable out, Passage.HighlightListener listener)
+			throws IOException {
+		passage.renderOriginalText(out, listener);
+	}
+
+	/**
+	 * @return The original passage
+	 */
+	public synchronized String getOriginalText() {
+		return passage.getOriginalText();
+	}
+
+	/**
+	 * @return How many words of the passage have been replaced so far
+	 */
+	public synchronized int getReplacedCount() {
+		return passage.getReplacedCount();
+	}
+
+	/**
+	 * @return Where the replaced words are in the updated text, as in Passage
+	 */
+	public synchronized int[][] getIndexesOfReplacedWords() {
+		return passage.getIndexesOfReplacedWords();
+	}
+
+	/**
+	 * @return Where the replaced words are in the original text, as in Passage
+	 */
+	public synchronized int[][] getIndexesOfOriginalWords() {
+		return passage.getIndexesOfOriginalWords();
+	}
+
+	/**
+	 * @return The approximate number of bytes of memory used by the session.
+	 * The TaggedPassage of a library passage is shared by all its games, so it
+	 * is only counted for the player's own text.
+	 */
+	public synchronized long estimatedBytes() {
+		long bytes = passage.estimatedBytes() + 64 + 16L * PartOfSpeech.values().length * MadLib.MAX_WORDS_PER_PART_OF_SPEECH;
+		if (entry == null) {
+			bytes += passage.getTaggedPassage().estimatedBytes();
+		}
+		return bytes;
+	}
+}
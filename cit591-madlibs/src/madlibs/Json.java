@@ -0,0 +1,172 @@
+package madlibs;
+
+import java.io.IOException;
+
+/**
+ * Writes the few JSON values that the headless modes of the game produce.
+ * There is no JSON library on the classpath, and strings, numbers and arrays
+ * of ranges are all that is needed.
+ *
+ */
+final class Json {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Json() {
+	}
+
+	/**
+	 * Appends the supplied text as a quoted JSON string.
+	 * @param out Where to append the string
+	 * @param text The text to quote. Null is written as null.
+	 * @return out, to allow chaining
+	 */
+	static StringBuilder appendString(StringBuilder out, CharSequence text) {
+		if (text == null) {
+			return out.append("null");
+		}
+		out.append('"');
+		appendEscaped(out, text, 0, text.length());
+		return out.append('"');
+	}
+
+	private static void appendEscaped(StringBuilder out, CharSequence text, int start, int end) {
+		int plainStart = start;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			// The line and paragraph separators are valid JSON, but not valid JavaScript
+			if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+				continue;
+			}
+			// Copy the run of characters that needed no escaping in one go
+			out.append(text, plainStart, i);
+			plainStart = i + 1;
+			appendEscaped(out, c);
+		}
+		out.append(text, plainStart, end);
+	}
+
+	private static void appendEscaped(StringBuilder out, char c) {
+		switch (c) {
+		case '"':
+			out.append("\\\"");
+			break;
+		case '\\':
+			out.append("\\\\");
+			break;
+		case '\n':
+			out.append("\\n");
+			break;
+		case '\r':
+			out.append("\\r");
+			break;
+		case '\t':
+			out.append("\\t");
+			break;
+		default:
+			if (c >= 0x20 && c != '\u2028' && c != '\u2029') {
+				out.append(c);
+			}
+			else {
+				out.append("\\u").append(HEX[c >> 12 & 0xf]).append(HEX[c >> 8 & 0xf])
+					.append(HEX[c >> 4 & 0xf]).append(HEX[c & 0xf]);
+			}
+		}
+	}
+
+	/**
+	 * Returns an Appendable that escapes everything appended to it, so that
+	 * text can be rendered straight into a JSON string. The quotes around the
+	 * string are left to the caller.
+	 * @param out Where to append the escaped text
+	 * @return An Appendable that writes to out
+	 */
+	static Appendable escaping(StringBuilder out) {
+		return new Appendable() {
+			@Override
+			public Appendable append(CharSequence text) {
+				appendEscaped(out, text, 0, text.length());
+				return this;
+			}
+
+			@Override
+			public Appendable append(CharSequence text, int start, int end) {
+				appendEscaped(out, text, start, end);
+				return this;
+			}
+
+			@Override
+			public Appendable append(char c) {
+				appendEscaped(out, c);
+				return this;
+			}
+		};
+	}
+
+	/**
+	 * Renders text straight into a JSON string, such as Passage.renderUpdatedText.
+	 */
+	interface Renderer {
+		void render(Appendable out, Passage.HighlightListener listener) throws IOException;
+	}
+
+	/**
+	 * Appends rendered text as a JSON string, and the highlights reported while
+	 * rendering as an array of ranges, in one pass over the text.
+	 * @param out Where to append the string
+	 * @param ranges Where to append the array of ranges
+	 * @param renderer Renders the text
+	 * @return out, to allow chaining
+	 */
+	static StringBuilder appendRendered(StringBuilder out, StringBuilder ranges, Renderer renderer) {
+		ranges.append('[');
+		Passage.HighlightListener listener = (index, start, end) -> {
+			if (ranges.charAt(ranges.length() - 1) != '[') {
+				ranges.append(',');
+			}
+			ranges.append('[').append(start).append(',').append(end).append(']');
+		};
+		out.append('"');
+		try {
+			renderer.render(escaping(out), listener);
+		} catch (IOException e) {
+			// Only a StringBuilder is written to
+			throw new AssertionError(e);
+		}
+		ranges.append(']');
+		return out.append('"');
+	}
+
+	/**
+	 * Appends ranges, such as the indexes of replaced words, as an array of
+	 * two element arrays.
+	 * @param out Where to append the array
+	 * @param ranges An n x 2 array of start and end positions
+	 * @return out, to allow chaining
+	 */
+	static StringBuilder appendRanges(StringBuilder out, int[][] ranges) {
+		out.append('[');
+		for (int i = 0; i < ranges.length; i++) {
+			if (i > 0) {
+				out.append(',');
+			}
+			out.append('[').append(ranges[i][0]).append(',').append(ranges[i][1]).append(']');
+		}
+		return out.append(']');
+	}
+
+	/**
+	 * Appends a name and the separator that follows it, preceded by a comma
+	 * unless it is the first member of an object.
+	 * @param out Where to append the name
+	 * @param name The name of the member
+	 * @return out, to allow chaining
+	 */
+	static StringBuilder appendName(StringBuilder out, String name) {
+		char last = out.length() > 0 ? out.charAt(out.length() - 1) : '{';
+		if (last != '{' && last != '[') {
+			out.append(',');
+		}
+		return appendString(out, name).append(':');
+	}
+}
@@ -0,0 +1,39 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class JsonTest {
+
+	@Test
+	void appendStringTest() {
+		StringBuilder out = new StringBuilder();
+		Json.appendString(out, "'Now, my dears,' said \"old\" Mrs.\r\n\tRabbit\\\u0001\u2028");
+		assertEquals("\"'Now, my dears,' said \\\"old\\\" Mrs.\\r\\n\\tRabbit\\\\\\u0001\\u2028\"", out.toString());
+		assertEquals("null", Json.appendString(new StringBuilder(), null).toString());
+	}
+
+	@Test
+	void appendRenderedTest() {
+		StringBuilder out = new StringBuilder();
+		StringBuilder ranges = new StringBuilder();
+		Json.appendRendered(out, ranges, (text, listener) -> {
+			text.append("Say \"").append('h').append("ello\"\n", 0, 5);
+			listener.highlight(1, 5, 10);
+			listener.highlight(2, 11, 12);
+		});
+		assertEquals("\"Say \\\"hello\\\"\"", out.toString());
+		assertEquals("[[5,10],[11,12]]", ranges.toString());
+	}
+
+	@Test
+	void appendObjectTest() {
+		StringBuilder out = new StringBuilder("{");
+		Json.appendName(out, "id").append(7);
+		Json.appendName(out, "highlights");
+		Json.appendRanges(out, new int[][] {{6, 18}, {24, 33}});
+		out.append('}');
+		assertEquals("{\"id\":7,\"highlights\":[[6,18],[24,33]]}", out.toString());
+	}
+}
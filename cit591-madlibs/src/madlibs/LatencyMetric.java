@@ -0,0 +1,200 @@
+package madlibs;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records how long one step of the game takes and how much memory
+ * it allocates, every time it runs. The times are kept in a histogram of
+ * buckets that are about 6% wide, so percentiles are close without keeping
+ * every time. Recording never locks or allocates, so it can be left on.
+ *
+ * Use it through Metrics:
+ *
+ * long startNanos = Metrics.startNanos();
+ * long startBytes = Metrics.allocatedBytes();
+ * ...
+ * Metrics.REPLACE_WORDS.record(startNanos, startBytes);
+ *
+ */
+public class LatencyMetric implements LatencyMetricMBean {
+
+	// Values below this are counted exactly, and larger ones in 16 buckets per power of two
+	private static final int SUB_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+	private final LongAdder allocatedBytes = new LongAdder();
+
+	/**
+	 * Creates an empty metric.
+	 * @param name The name of the step, such as passage.replaceWords
+	 */
+	public LatencyMetric(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return The name of the step
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records one run of the step, which started at the supplied time.
+	 * @param startNanos System.nanoTime when the step started, from Metrics.startNanos
+	 * @param startBytes The bytes the thread had allocated when the step started,
+	 * from Metrics.allocatedBytes
+	 */
+	public void record(long startNanos, long startBytes) {
+		if (!Metrics.ENABLED) {
+			return;
+		}
+		recordNanos(System.nanoTime() - startNanos, Metrics.allocatedBytes() - startBytes);
+	}
+
+	/*
+	 * Records one run that took the supplied time and allocated the supplied bytes.
+	 */
+	void recordNanos(long nanos, long bytes) {
+		nanos = Math.max(0, nanos);
+		buckets.incrementAndGet(bucketFor(nanos));
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+		if (bytes > 0) {
+			allocatedBytes.add(bytes);
+		}
+	}
+
+	static int bucketFor(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		// The bits just below the highest one pick the bucket within the power of two
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	/*
+	 * The smallest value that falls into a bucket.
+	 */
+	static long bucketStart(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return (SUB_BUCKETS | subBucket) << shift;
+	}
+
+	/**
+	 * @param percentile Between 0 and 100
+	 * @return The time in nanoseconds that the percentile of runs took at most,
+	 * to within the width of a bucket, or 0 if nothing has been recorded
+	 */
+	public long getPercentileNanos(double percentile) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				// The middle of the bucket, but never more than the slowest run
+				long middle = i + 1 < BUCKETS ? (bucketStart(i) + bucketStart(i + 1) - 1) / 2 : bucketStart(i);
+				return Math.min(middle, maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		long runs = count.sum();
+		return runs == 0 ? 0 : totalNanos.sum() / 1e3 / runs;
+	}
+
+	@Override
+	public double getP50Micros() {
+		return getPercentileNanos(50) / 1e3;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return getPercentileNanos(99) / 1e3;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return maxNanos.get() / 1e3;
+	}
+
+	@Override
+	public long getAllocatedBytes() {
+		return allocatedBytes.sum();
+	}
+
+	@Override
+	public double getMeanAllocatedBytes() {
+		long runs = count.sum();
+		return runs == 0 ? 0 : (double) allocatedBytes.sum() / runs;
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+		allocatedBytes.reset();
+	}
+
+	/**
+	 * Appends the metric as a JSON object.
+	 * @param json Where to append the object
+	 * @return json, to allow chaining
+	 */
+	StringBuilder appendJson(StringBuilder json) {
+		json.append('{');
+		Json.appendName(json, "count").append(getCount());
+		Json.appendName(json, "meanMicros").append(round(getMeanMicros()));
+		Json.appendName(json, "p50Micros").append(round(getP50Micros()));
+		Json.appendName(json, "p99Micros").append(round(getP99Micros()));
+		Json.appendName(json, "maxMicros").append(round(getMaxMicros()));
+		Json.appendName(json, "allocatedBytes").append(getAllocatedBytes());
+		return json.append('}');
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 10) / 10.0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-22s %9d %10.1f %10.1f %10.1f %10.1f %12.0f", name, getCount(), getMeanMicros(),
+			getP50Micros(), getP99Micros(), getMaxMicros(), getMeanAllocatedBytes());
+	}
+}
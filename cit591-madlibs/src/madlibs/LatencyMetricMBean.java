@@ -0,0 +1,28 @@
+package madlibs;
+
+/**
+ * The attributes of a LatencyMetric that are published through JMX. Times are
+ * in microseconds and allocations in bytes.
+ *
+ */
+public interface LatencyMetricMBean {
+
+	long getCount();
+
+	double getMeanMicros();
+
+	double getP50Micros();
+
+	double getP99Micros();
+
+	double getMaxMicros();
+
+	long getAllocatedBytes();
+
+	double getMeanAllocatedBytes();
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	void reset();
+}
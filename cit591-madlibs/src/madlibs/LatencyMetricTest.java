@@ -0,0 +1,60 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyMetricTest {
+
+	@Test
+	void bucketTest() {
+		// Every value falls in a bucket that starts at or below it, and the next one starts above it
+		for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+			int bucket = LatencyMetric.bucketFor(value);
+			assertTrue(LatencyMetric.bucketStart(bucket) <= value, "value " + value);
+			if (value < Long.MAX_VALUE / 2) {
+				assertTrue(LatencyMetric.bucketStart(bucket + 1) > value, "value " + value);
+			}
+		}
+		assertEquals(15, LatencyMetric.bucketFor(15));
+		assertEquals(16, LatencyMetric.bucketFor(16));
+	}
+
+	@Test
+	void percentileTest() {
+		LatencyMetric metric = new LatencyMetric("test");
+		assertEquals(0, metric.getPercentileNanos(50));
+		// 98 fast runs of 1ms, and two slow ones of 100ms
+		for (int i = 0; i < 98; i++) {
+			metric.recordNanos(1_000_000, 0);
+		}
+		metric.recordNanos(100_000_000, 0);
+		metric.recordNanos(100_000_000, 0);
+		assertEquals(100, metric.getCount());
+		// Buckets are about 6% wide
+		assertEquals(1000, metric.getP50Micros(), 60);
+		assertEquals(100_000, metric.getP99Micros(), 6_000);
+		assertEquals(100_000, metric.getMaxMicros());
+		assertEquals((98 * 1000 + 2 * 100_000) / 100.0, metric.getMeanMicros(), 0.001);
+		assertTrue(metric.toString().startsWith("test"));
+
+		metric.reset();
+		assertEquals(0, metric.getCount());
+		assertEquals(0, metric.getMaxMicros());
+		assertEquals(0, metric.getP99Micros());
+	}
+
+	@Test
+	void allocationTest() {
+		LatencyMetric metric = new LatencyMetric("test");
+		long startNanos = Metrics.startNanos();
+		long startBytes = Metrics.allocatedBytes();
+		int[][] garbage = new int[100][1000];
+		metric.record(startNanos, startBytes);
+		assertEquals(1000, garbage[99].length);
+		if (startBytes > 0) {
+			// Only JVMs that can count allocations report them
+			assertTrue(metric.getAllocatedBytes() >= 400_000);
+		}
+	}
+}
@@ -0,0 +1,498 @@
+package madlibs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * This class is a lightweight Tagger that needs no statistical model. Known
+ * words get their most frequent tag from a lexicon file, and unknown words are
+ * tagged with a few suffix and capitalization rules. It is much less accurate
+ * than CoreNlpTagger, but tags a chapter in well under a millisecond, which
+ * is good enough for choosing words to replace in a game.
+ *
+ * The lexicon is a tab separated file with the word, its tag and the number of
+ * times the word was seen with that tag. It is read from lexicon.tsv in the
+ * working directory, or from the file named by the madlibs.lexicon setting,
+ * and can be rebuilt from any set of texts by running this class.
+ *
+ */
+public class LexiconTagger implements Tagger {
+
+	public static final String LEXICON_SETTING = "madlibs.lexicon";
+	public static final String DEFAULT_LEXICON = "lexicon.tsv";
+
+	// Abbreviations that keep their period, like the Stanford tokenizer does
+	private static final String[] ABBREVIATIONS = {"mr", "mrs", "ms", "dr", "st", "jr", "sr", "vs"};
+	// Suffixes that usually mark an adjective
+	private static final String[] ADJECTIVE_SUFFIXES = {
+		"ous", "ful", "ive", "able", "ible", "less", "ish", "ic", "al", "ary", "ent", "ant"};
+	// Common past participles that don't end in "ed", added to every lexicon
+	// that doesn't already have them. Like words ending in "ed", the word before
+	// decides whether they are past tense or participle.
+	private static final String[] IRREGULAR_PARTICIPLES = {
+		"arisen", "beaten", "begun", "beheld", "bent", "bitten", "blown", "bought", "broken", "brought",
+		"built", "caught", "chosen", "crept", "done", "drawn", "driven", "drunk", "dug", "eaten", "fallen",
+		"fed", "felt", "fled", "flown", "forbidden", "forgiven", "forgotten", "fought", "found", "frozen", "given",
+		"gone", "got", "gotten", "grown", "heard", "held", "hidden", "hung", "kept", "known", "laid", "led", "left",
+		"lent", "lost", "made", "meant", "met", "overheard", "paid", "ridden", "risen", "said", "seen",
+		"sent", "shaken", "shone", "shot", "shown", "slain", "slept", "sold", "sought", "spent", "spoken",
+		"spun", "stolen", "stood", "struck", "stuck", "sung", "sunk", "sworn", "swept", "swum", "taken", "taught",
+		"thought", "thrown", "told", "torn", "understood", "woken", "won", "worn", "written"};
+	// Endings of unknown words that are likely participles after an auxiliary verb
+	private static final String[] PARTICIPLE_SUFFIXES = {"en", "wn", "ght"};
+	// Words after which a verb ending in "ed" is a participle rather than past tense
+	private static final String[] AUXILIARIES = {
+		"have", "has", "had", "having", "be", "is", "am", "are", "was", "were", "been", "being", "get", "got"};
+
+	// The shared tagger, using the lexicon from the settings
+	private static LexiconTagger instance;
+
+	/*
+	 * The lexicon is an open addressing hash table with lower case words as keys
+	 * and indexes into the tagNames list as values. Lookups are done directly
+	 * on the characters of the text, so tagging a word does not allocate.
+	 */
+	private String[] keys;
+	private byte[] values;
+	// Marks the keys that are auxiliary verbs
+	private boolean[] auxiliaries;
+	private int mask;
+	private ArrayList<String> tagNames = new ArrayList<String>();
+	private String version;
+
+	/**
+	 * Creates a new tagger from a lexicon. Common irregular past participles
+	 * that the lexicon doesn't have are added to it.
+	 * @param lexicon Maps lower case words to their most frequent tag
+	 * @param version Identifies the lexicon, for the TaggedPassageCache
+	 */
+	public LexiconTagger(Map<String, String> lexicon, String version) {
+		this.version = version;
+		int capacity = Integer.highestOneBit(Math.max(16, (lexicon.size() + IRREGULAR_PARTICIPLES.length) * 2)) * 2;
+		keys = new String[capacity];
+		values = new byte[capacity];
+		auxiliaries = new boolean[capacity];
+		mask = capacity - 1;
+		HashMap<String, Integer> tagCodes = new HashMap<String, Integer>();
+		for (Map.Entry<String, String> entry : lexicon.entrySet()) {
+			put(entry.getKey().toLowerCase(), entry.getValue(), tagCodes);
+		}
+		for (String participle : IRREGULAR_PARTICIPLES) {
+			if (find(participle, 0, participle.length()) < 0) {
+				put(participle, "VBN", tagCodes);
+			}
+		}
+		for (String auxiliary : AUXILIARIES) {
+			int slot = find(auxiliary, 0, auxiliary.length());
+			if (slot >= 0) {
+				auxiliaries[slot] = true;
+			}
+		}
+	}
+
+	private void put(String word, String tag, HashMap<String, Integer> tagCodes) {
+		Integer code = tagCodes.get(tag);
+		if (code == null) {
+			code = tagNames.size();
+			tagCodes.put(tag, code);
+			tagNames.add(tag);
+		}
+		int slot = hash(word, 0, word.length()) & mask;
+		while (keys[slot] != null && !keys[slot].equals(word)) {
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = word;
+		values[slot] = (byte) (int) code;
+	}
+
+	/**
+	 * Reads a lexicon file, keeping the most frequent tag of every word.
+	 * @param lexiconFile A tab separated file of word, tag and count
+	 * @return A new LexiconTagger
+	 * @throws IOException If the file can't be read
+	 */
+	public static LexiconTagger load(Path lexiconFile) throws IOException {
+		HashMap<String, String> bestTags = new HashMap<String, String>();
+		HashMap<String, Integer> bestCounts = new HashMap<String, Integer>();
+		CRC32 checksum = new CRC32();
+		try (BufferedReader in = Files.newBufferedReader(lexiconFile, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				checksum.update(line.getBytes(StandardCharsets.UTF_8));
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] columns = line.split("\t");
+				int count = columns.length > 2 ? Integer.parseInt(columns[2].trim()) : 1;
+				String word = columns[0].toLowerCase();
+				if (!bestCounts.containsKey(word) || bestCounts.get(word) < count) {
+					bestTags.put(word, columns[1]);
+					bestCounts.put(word, count);
+				}
+			}
+		}
+		// The number changes whenever the rules do, so cached results are not reused
+		return new LexiconTagger(bestTags, "lexicon-2/" + Long.toHexString(checksum.getValue()));
+	}
+
+	/**
+	 * @return The shared tagger, using the lexicon given by the madlibs.lexicon setting
+	 */
+	public static synchronized LexiconTagger getInstance() {
+		if (instance == null) {
+			Path lexiconFile = Paths.get(MadLibConfig.get(LEXICON_SETTING, DEFAULT_LEXICON));
+			try {
+				instance = load(lexiconFile);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not read lexicon " + lexiconFile, e);
+			}
+		}
+		return instance;
+	}
+
+	@Override
+	public String getVersion() {
+		return version;
+	}
+
+	@Override
+	public TaggedText tag(String text) {
+		// Tokenizing and tagging are one pass here, so they are timed together
+		long startNanos = Metrics.startNanos();
+		long startBytes = Metrics.allocatedBytes();
+		TaggedText taggedText = new TaggedText();
+		int length = text.length();
+		int position = skipBlanks(text, 0);
+		// Information about the previous word, for the few rules that need context
+		boolean sentenceStart = true;
+		boolean sentenceEnding = false;
+		boolean afterAuxiliary = false;
+		int wordsInSentence = 0;
+		while (position < length) {
+			int end = scanToken(text, position);
+			int blanksEnd = skipBlanks(text, end);
+			// Split contractions the same way the Stanford tokenizer does
+			int split = contractionStart(text, position, end);
+			int tokenStart = position;
+			while (tokenStart < end) {
+				int tokenEnd = split > tokenStart ? split : end;
+				char first = text.charAt(tokenStart);
+				boolean closer = isCloser(first) && tokenEnd - tokenStart == 1;
+				// A sentence ends after its final punctuation and any closing quotes
+				if (sentenceEnding && !closer) {
+					taggedText.endSentence();
+					wordsInSentence = 0;
+					sentenceStart = true;
+					sentenceEnding = false;
+				}
+				int slot = Character.isLetter(first) ? find(text, tokenStart, tokenEnd) : -1;
+				String tag = tagToken(text, tokenStart, tokenEnd, slot, sentenceStart, afterAuxiliary);
+				taggedText.add(text, tokenStart, tokenEnd, tokenEnd == end ? blanksEnd : tokenEnd, tag);
+				wordsInSentence++;
+				if (tag.equals(".")) {
+					sentenceEnding = true;
+				}
+				if (Character.isLetterOrDigit(first)) {
+					sentenceStart = false;
+				}
+				afterAuxiliary = (slot >= 0 && auxiliaries[slot]) || (afterAuxiliary && tag.equals("RB"));
+				tokenStart = tokenEnd;
+			}
+			position = blanksEnd;
+		}
+		if (wordsInSentence > 0) {
+			taggedText.endSentence();
+		}
+		Metrics.LEXICON_TAG.record(startNanos, startBytes);
+		return taggedText;
+	}
+
+	/*
+	 * Returns the end of the token that starts at the supplied position. Words may
+	 * contain apostrophes and hyphens, numbers may contain periods and commas,
+	 * and runs of periods or dashes are kept together.
+	 */
+	private static int scanToken(String text, int start) {
+		int length = text.length();
+		char first = text.charAt(start);
+		int end = start + 1;
+		if (Character.isLetterOrDigit(first)) {
+			while (end < length) {
+				char c = text.charAt(end);
+				if (Character.isLetterOrDigit(c)) {
+					end++;
+				}
+				else if ((c == '\'' || c == '\u2019' || c == '-' || c == '.' || c == ',')
+						&& end + 1 < length && Character.isLetterOrDigit(text.charAt(end + 1))
+						&& (c != '.' && c != ',' || Character.isDigit(text.charAt(end - 1)))) {
+					end += 2;
+				}
+				else {
+					break;
+				}
+			}
+			if (end < length && text.charAt(end) == '.' && isAbbreviation(text, start, end)) {
+				end++;
+			}
+		}
+		else if (first == '.' || first == '-') {
+			while (end < length && text.charAt(end) == first) {
+				end++;
+			}
+		}
+		return end;
+	}
+
+	/*
+	 * Returns where the second half of a contraction like "don't" or "she's"
+	 * starts, or -1 if the word is not a contraction.
+	 */
+	private static int contractionStart(String text, int start, int end) {
+		int length = end - start;
+		if (length > 3 && endsWithIgnoreCase(text, end, "n't")) {
+			return end - 3;
+		}
+		for (int i = end - 1; i > start; i--) {
+			char c = text.charAt(i);
+			if (c == '\'' || c == '\u2019') {
+				int suffixLength = end - i - 1;
+				if (suffixLength == 1 && "smdSMD".indexOf(text.charAt(end - 1)) >= 0) {
+					return i;
+				}
+				if (suffixLength == 2 && (endsWithIgnoreCase(text, end, "ll")
+						|| endsWithIgnoreCase(text, end, "re") || endsWithIgnoreCase(text, end, "ve"))) {
+					return i;
+				}
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	private String tagToken(String text, int start, int end, int slot, boolean sentenceStart, boolean afterAuxiliary) {
+		char first = text.charAt(start);
+		if (!Character.isLetterOrDigit(first)) {
+			return punctuationTag(first, end - start);
+		}
+		if (Character.isDigit(first)) {
+			return "CD";
+		}
+		String tag;
+		if (slot >= 0) {
+			tag = tagNames.get(values[slot]);
+		}
+		else {
+			// Capitalized words that don't start a sentence are usually names
+			if (Character.isUpperCase(first) && !sentenceStart) {
+				return "NNP";
+			}
+			tag = suffixTag(text, start, end);
+			// Irregular participles have no suffix, but follow "had", "was" and so on
+			if (afterAuxiliary && tag.equals("NN")) {
+				for (String suffix : PARTICIPLE_SUFFIXES) {
+					if (end - start > suffix.length() + 2 && endsWithIgnoreCase(text, end, suffix)) {
+						return "VBN";
+					}
+				}
+			}
+		}
+		// Past tense and participle look the same, so the word before decides
+		if (tag.equals("VBD") || tag.equals("VBN")) {
+			return afterAuxiliary ? "VBN" : "VBD";
+		}
+		return tag;
+	}
+
+	private static String suffixTag(String text, int start, int end) {
+		int length = end - start;
+		if (length > 4 && endsWithIgnoreCase(text, end, "ing")) {
+			return "VBG";
+		}
+		if (length > 3 && endsWithIgnoreCase(text, end, "ed")) {
+			return "VBD";
+		}
+		if (length > 3 && endsWithIgnoreCase(text, end, "ly")) {
+			return "RB";
+		}
+		for (String suffix : ADJECTIVE_SUFFIXES) {
+			if (length > suffix.length() + 2 && endsWithIgnoreCase(text, end, suffix)) {
+				return "JJ";
+			}
+		}
+		if (length > 3 && endsWithIgnoreCase(text, end, "s") && !endsWithIgnoreCase(text, end, "ss")
+				&& !endsWithIgnoreCase(text, end, "us") && !endsWithIgnoreCase(text, end, "is")) {
+			return "NNS";
+		}
+		return "NN";
+	}
+
+	private static String punctuationTag(char c, int length) {
+		switch (c) {
+		case '.':
+			return length > 1 ? ":" : ".";
+		case '!':
+		case '?':
+			return ".";
+		case ',':
+			return ",";
+		case ';':
+		case ':':
+		case '-':
+		case '\u2013':
+		case '\u2014':
+			return ":";
+		case '(':
+		case '[':
+		case '{':
+			return "-LRB-";
+		case ')':
+		case ']':
+		case '}':
+			return "-RRB-";
+		case '"':
+		case '\u201c':
+		case '\u2018':
+		case '`':
+			return "``";
+		case '\u201d':
+		case '\u2019':
+		case '\'':
+			return "''";
+		case '$':
+			return "$";
+		case '#':
+			return "#";
+		default:
+			return "SYM";
+		}
+	}
+
+	private static boolean isCloser(char c) {
+		return c == '"' || c == '\'' || c == '\u201d' || c == '\u2019' || c == ')' || c == ']';
+	}
+
+	private static boolean isAbbreviation(String text, int start, int end) {
+		for (String abbreviation : ABBREVIATIONS) {
+			if (abbreviation.length() == end - start && text.regionMatches(true, start, abbreviation, 0, end - start)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean endsWithIgnoreCase(String text, int end, String suffix) {
+		return text.regionMatches(true, end - suffix.length(), suffix, 0, suffix.length());
+	}
+
+	private static int skipBlanks(String text, int position) {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+		return position;
+	}
+
+	/*
+	 * Finds the slot of the word between start and end, ignoring case.
+	 * Returns -1 if the word is not in the lexicon.
+	 */
+	private int find(String text, int start, int end) {
+		int slot = hash(text, start, end) & mask;
+		while (keys[slot] != null) {
+			String key = keys[slot];
+			if (key.length() == end - start && text.regionMatches(true, start, key, 0, key.length())) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private static int hash(String text, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+		}
+		// Spread the bits, since only the low ones are used
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Counts how often every word that starts with a letter is seen with every
+	 * tag, as main does to build a lexicon file.
+	 * @param taggedTexts Texts tagged by a more accurate tagger
+	 * @return The count of every tag of every lower case word, sorted so the
+	 * file is easy to read and to compare
+	 */
+	static TreeMap<String, TreeMap<String, Integer>> countTags(List<TaggedText> taggedTexts) {
+		TreeMap<String, TreeMap<String, Integer>> counts = new TreeMap<String, TreeMap<String, Integer>>();
+		for (TaggedText taggedText : taggedTexts) {
+			for (int j = 0; j < taggedText.size(); j++) {
+				String word = taggedText.getWord(j).toLowerCase();
+				if (!Character.isLetter(word.charAt(0))) {
+					continue;
+				}
+				counts.computeIfAbsent(word, key -> new TreeMap<String, Integer>())
+					.merge(taggedText.getTag(j), 1, Integer::sum);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Keeps the most frequent tag of every word, the way load does.
+	 * @param counts The result of countTags
+	 * @return A lexicon for the constructor
+	 */
+	static Map<String, String> mostFrequentTags(TreeMap<String, TreeMap<String, Integer>> counts) {
+		HashMap<String, String> bestTags = new HashMap<String, String>();
+		for (Map.Entry<String, TreeMap<String, Integer>> word : counts.entrySet()) {
+			int bestCount = 0;
+			for (Map.Entry<String, Integer> tag : word.getValue().entrySet()) {
+				if (tag.getValue() > bestCount) {
+					bestTags.put(word.getKey(), tag.getKey());
+					bestCount = tag.getValue();
+				}
+			}
+		}
+		return bestTags;
+	}
+
+	/**
+	 * Builds a lexicon file by tagging texts with CoreNlpTagger and counting how
+	 * often every word is seen with every tag.
+	 * @param args The lexicon file to write, followed by the texts to tag
+	 * @throws IOException If a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: LexiconTagger <lexicon.tsv> <text files...>");
+			return;
+		}
+		CoreNlpTagger tagger = CoreNlpTagger.getInstance();
+		ArrayList<TaggedText> taggedTexts = new ArrayList<TaggedText>();
+		for (int i = 1; i < args.length; i++) {
+			String text = new String(Files.readAllBytes(Paths.get(args[i])), StandardCharsets.UTF_8);
+			taggedTexts.add(tagger.tag(text));
+		}
+		TreeMap<String, TreeMap<String, Integer>> counts = countTags(taggedTexts);
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8))) {
+			out.println("# word\ttag\tcount, built by LexiconTagger from " + (args.length - 1) + " texts");
+			for (Map.Entry<String, TreeMap<String, Integer>> word : counts.entrySet()) {
+				for (Map.Entry<String, Integer> tag : word.getValue().entrySet()) {
+					out.println(word.getKey() + "\t" + tag.getKey() + "\t" + tag.getValue());
+				}
+			}
+		}
+	}
+}
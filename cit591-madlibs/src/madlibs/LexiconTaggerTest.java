@@ -0,0 +1,131 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+class LexiconTaggerTest {
+	static final String text = "Peter didn't see the rabbits. They were hopping quickly\n" +
+			"through Mr. McGregor's enormous garden.";
+
+	private LexiconTagger tagger() {
+		HashMap<String, String> lexicon = new HashMap<String, String>();
+		lexicon.put("peter", "NNP");
+		lexicon.put("did", "VBD");
+		lexicon.put("see", "VB");
+		lexicon.put("the", "DT");
+		lexicon.put("they", "PRP");
+		lexicon.put("were", "VBD");
+		lexicon.put("through", "IN");
+		return new LexiconTagger(lexicon, "test");
+	}
+
+	@Test
+	void reconstructTextTest() {
+		TaggedText taggedText = tagger().tag(text);
+		StringBuilder rebuilt = new StringBuilder();
+		for (int i = 0; i < taggedText.size(); i++) {
+			rebuilt.append(taggedText.getWord(i)).append(taggedText.getTrailingBlanks(i));
+		}
+		assertEquals(text, rebuilt.toString());
+		assertEquals(2, taggedText.getSentenceCount());
+	}
+
+	@Test
+	void splitContractionsTest() {
+		TaggedText taggedText = tagger().tag(text);
+		assertEquals("did", taggedText.getWord(1));
+		assertEquals("n't", taggedText.getWord(2));
+		assertEquals("Mr.", taggedText.getWord(12));
+		assertEquals("McGregor", taggedText.getWord(13));
+		assertEquals("'s", taggedText.getWord(14));
+	}
+
+	@Test
+	void tagTest() {
+		TaggedText taggedText = tagger().tag(text);
+		// Known words come from the lexicon
+		assertEquals("NNP", taggedText.getTag(0));
+		assertEquals("DT", taggedText.getTag(4));
+		// Unknown words are tagged by their suffix or capitalization
+		assertEquals("NNS", taggedText.getTag(5));
+		assertEquals("VBG", taggedText.getTag(9));
+		assertEquals("RB", taggedText.getTag(10));
+		assertEquals("NNP", taggedText.getTag(13));
+		assertEquals("JJ", taggedText.getTag(15));
+		assertEquals("NN", taggedText.getTag(16));
+	}
+
+	@Test
+	void heldOutTest() throws IOException {
+		// Tag every library text with a lexicon built from the other texts,
+		// so the words it has never seen are tagged by the rules
+		String[] fileNames = {"children1.txt", "children2.txt", "children3.txt",
+			"classic1.txt", "classic2.txt", "classic3.txt"};
+		CoreNlpTagger coreNlp = CoreNlpTagger.getInstance();
+		ArrayList<String> texts = new ArrayList<String>();
+		ArrayList<TaggedText> expected = new ArrayList<TaggedText>();
+		for (String fileName : fileNames) {
+			String text = new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8);
+			texts.add(text);
+			expected.add(coreNlp.tag(text));
+		}
+		int aligned = 0;
+		int agree = 0;
+		int edVerbs = 0;
+		int edVerbsFound = 0;
+		for (int f = 0; f < fileNames.length; f++) {
+			ArrayList<TaggedText> others = new ArrayList<TaggedText>(expected);
+			others.remove(f);
+			LexiconTagger heldOut = new LexiconTagger(
+				LexiconTagger.mostFrequentTags(LexiconTagger.countTags(others)), "held-out");
+			TaggedText reference = expected.get(f);
+			TaggedText actual = heldOut.tag(texts.get(f));
+			int[] referenceStarts = starts(reference);
+			int[] actualStarts = starts(actual);
+			int j = 0;
+			for (int i = 0; i < reference.size(); i++) {
+				while (j < actual.size() && actualStarts[j] < referenceStarts[i]) {
+					j++;
+				}
+				if (j == actual.size() || actualStarts[j] != referenceStarts[i]
+						|| !actual.getWord(j).equals(reference.getWord(i))) {
+					continue;
+				}
+				PartOfSpeech referencePos = PartOfSpeech.fromPennTag(reference.getTag(i));
+				PartOfSpeech actualPos = PartOfSpeech.fromPennTag(actual.getTag(j));
+				aligned++;
+				if (referencePos == actualPos) {
+					agree++;
+				}
+				if (referencePos == PartOfSpeech.ED_VERB) {
+					edVerbs++;
+					if (actualPos == PartOfSpeech.ED_VERB) {
+						edVerbsFound++;
+					}
+				}
+			}
+		}
+		// Measured at 88.4% and 68.6%, so a change to the rules that loses
+		// more than a point or so fails here
+		assertTrue(agree >= 0.87 * aligned, "agreement " + agree + "/" + aligned);
+		assertTrue(edVerbsFound >= 0.66 * edVerbs, "ED_VERB recall " + edVerbsFound + "/" + edVerbs);
+	}
+
+	private static int[] starts(TaggedText taggedText) {
+		int[] starts = new int[taggedText.size()];
+		int start = 0;
+		for (int i = 0; i < taggedText.size(); i++) {
+			starts[i] = start;
+			start += taggedText.getWord(i).length() + taggedText.getTrailingBlanks(i).length();
+		}
+		return starts;
+	}
+}
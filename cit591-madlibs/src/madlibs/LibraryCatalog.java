@@ -0,0 +1,248 @@
+package madlibs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class reads and writes catalog.tsv, the list of passages in the
+ * library. It replaces index.csv, which MadLib still reads if there is no
+ * catalog.
+ *
+ * The catalog is a tab separated file whose first line names the columns:
+ * file, title, author and genre, then the statistics of the passage: tokens,
+ * sentences and the number of words of every PartOfSpeech. Lines starting
+ * with # are comments. Columns are found by name, and a passage whose
+ * statistics are left empty, for example one just added by hand, is listed
+ * without them.
+ *
+ * Running this class fills in the statistics of every passage by tagging it.
+ * Menus, filters and capacity plans can then use them without reading the
+ * texts at all.
+ *
+ */
+public class LibraryCatalog {
+
+	// The default location, relative to the working directory like index.csv
+	public static final String DEFAULT_FILE = "catalog.tsv";
+
+	private static final String[] NAME_COLUMNS = {"file", "title", "author", "genre"};
+
+	private LibraryCatalog() {
+	}
+
+	/**
+	 * Reads a catalog.
+	 * @param file The catalog to read
+	 * @return An entry for every passage, in the order of the file
+	 * @throws IOException If the file can't be read, or a line doesn't fit the header
+	 */
+	public static List<MenuEntry> read(Path file) throws IOException {
+		ArrayList<MenuEntry> entries = new ArrayList<MenuEntry>();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			HashMap<String, Integer> columns = null;
+			String line;
+			int lineNumber = 0;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] values = line.split("\t", -1);
+				if (columns == null) {
+					columns = new HashMap<String, Integer>();
+					for (int i = 0; i < values.length; i++) {
+						columns.put(values[i].trim(), i);
+					}
+					for (String name : NAME_COLUMNS) {
+						if (!columns.containsKey(name)) {
+							throw new IOException(file + " has no " + name + " column");
+						}
+					}
+					continue;
+				}
+				if (values.length != columns.size()) {
+					throw new IOException(file + " line " + lineNumber + ": expected " + columns.size()
+						+ " columns but found " + values.length);
+				}
+				try {
+					entries.add(parse(values, columns));
+				} catch (NumberFormatException e) {
+					throw new IOException(file + " line " + lineNumber + ": " + e.getMessage());
+				}
+			}
+		}
+		return entries;
+	}
+
+	private static MenuEntry parse(String[] values, HashMap<String, Integer> columns) {
+		String fileName = values[columns.get("file")].trim();
+		String title = values[columns.get("title")].trim();
+		String author = values[columns.get("author")].trim();
+		String genre = values[columns.get("genre")].trim();
+		String tokens = value(values, columns, "tokens");
+		String sentences = value(values, columns, "sentences");
+		PartOfSpeech[] partsOfSpeech = PartOfSpeech.values();
+		int[] counts = new int[partsOfSpeech.length];
+		boolean complete = !tokens.isEmpty() && !sentences.isEmpty();
+		for (PartOfSpeech pos : partsOfSpeech) {
+			String count = value(values, columns, pos.name());
+			if (count.isEmpty()) {
+				complete = false;
+			}
+			else {
+				counts[pos.ordinal()] = Integer.parseInt(count);
+			}
+		}
+		if (!complete) {
+			return new MenuEntry(title, author, fileName, genre);
+		}
+		return new MenuEntry(title, author, fileName, genre, Integer.parseInt(tokens), Integer.parseInt(sentences),
+			counts);
+	}
+
+	private static String value(String[] values, HashMap<String, Integer> columns, String name) {
+		Integer column = columns.get(name);
+		return column == null ? "" : values[column].trim();
+	}
+
+	/**
+	 * Writes a catalog. The file is replaced in one step, so a reader never
+	 * sees half of it.
+	 * @param file Where to write the catalog
+	 * @param entries The passages, with or without statistics
+	 * @param comment A comment for the top of the file, such as the tagger the
+	 * statistics came from, or null
+	 * @throws IOException If the file can't be written
+	 * @throws IllegalArgumentException If a title, author, file name or genre
+	 * contains a tab or a line break
+	 */
+	public static void write(Path file, List<MenuEntry> entries, String comment) throws IOException {
+		StringBuilder text = new StringBuilder();
+		text.append("# The passages of the Literature Mad-Libs library, separated by tabs.\n");
+		text.append("# Run madlibs.LibraryCatalog to fill in the statistics after adding a passage.\n");
+		if (comment != null) {
+			text.append("# ").append(comment).append('\n');
+		}
+		text.append(String.join("\t", NAME_COLUMNS)).append("\ttokens\tsentences");
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			text.append('\t').append(pos.name());
+		}
+		text.append('\n');
+		for (MenuEntry entry : entries) {
+			appendField(text, entry.getLitFileName()).append('\t');
+			appendField(text, entry.getLitTitle().trim()).append('\t');
+			appendField(text, entry.getLitAuthor().trim()).append('\t');
+			appendField(text, entry.getLitGenre()).append('\t');
+			if (entry.hasStatistics()) {
+				text.append(entry.getTokenCount()).append('\t').append(entry.getSentenceCount());
+				for (PartOfSpeech pos : PartOfSpeech.values()) {
+					text.append('\t').append(entry.getPartOfSpeechCount(pos));
+				}
+			}
+			else {
+				text.append('\t');
+				for (int i = 0; i < PartOfSpeech.values().length; i++) {
+					text.append('\t');
+				}
+			}
+			text.append('\n');
+		}
+
+		Path directory = file.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(directory, "catalog", ".tmp");
+		try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			out.append(text);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static StringBuilder appendField(StringBuilder out, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\t' || c == '\n' || c == '\r') {
+				throw new IllegalArgumentException("A catalog field can't contain tabs or line breaks: " + value);
+			}
+		}
+		return out.append(value);
+	}
+
+	/**
+	 * Works out the statistics of a passage.
+	 * @param entry The entry of the passage
+	 * @param taggedText The tagged text of the passage
+	 * @return A copy of the entry with the statistics
+	 */
+	public static MenuEntry withStatistics(MenuEntry entry, TaggedText taggedText) {
+		int[] counts = new int[PartOfSpeech.values().length];
+		for (int i = 0; i < taggedText.size(); i++) {
+			PartOfSpeech pos = PartOfSpeech.fromPennTag(taggedText.getTag(i));
+			if (pos != null) {
+				counts[pos.ordinal()]++;
+			}
+		}
+		return new MenuEntry(entry.getLitTitle(), entry.getLitAuthor(), entry.getLitFileName(), entry.getLitGenre(),
+			taggedText.size(), taggedText.getSentenceCount(), counts);
+	}
+
+	/**
+	 * Picks the passages that have at least a number of words of a part of
+	 * speech, using only the statistics in the catalog.
+	 * @param entries The passages to choose from
+	 * @param partOfSpeech The part of speech to count
+	 * @param minimum How many words of it a passage needs
+	 * @return The passages that qualify. Passages without statistics never do.
+	 */
+	public static List<MenuEntry> withAtLeast(List<MenuEntry> entries, PartOfSpeech partOfSpeech, int minimum) {
+		ArrayList<MenuEntry> matches = new ArrayList<MenuEntry>();
+		for (MenuEntry entry : entries) {
+			if (entry.hasStatistics() && entry.getPartOfSpeechCount(partOfSpeech) >= minimum) {
+				matches.add(entry);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Builds catalog.tsv, or the file given as the only argument, with the
+	 * statistics of every passage. The passages are those of the existing
+	 * catalog, or of index.csv the first time. They are tagged with the
+	 * default Tagger, through the TaggedPassageCache.
+	 * @param args Optionally, the catalog to build
+	 * @throws IOException If a passage or the list of passages can't be read
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args.length > 0 ? args[0] : DEFAULT_FILE);
+		List<MenuEntry> entries;
+		if (Files.exists(file)) {
+			entries = read(file);
+		}
+		else {
+			MadLib madLib = new MadLib();
+			madLib.makeMenuFromIndex();
+			entries = new ArrayList<MenuEntry>(madLib.getClassicsMenu());
+			entries.addAll(madLib.getChildrensMenu());
+		}
+		TaggedPassageCache cache = new TaggedPassageCache(Tagger.getDefault());
+		// Straight from the .txt files, in case the packed library is out of date
+		PassageContentCache passages = new PassageContentCache(Paths.get(""), null);
+		ArrayList<MenuEntry> built = new ArrayList<MenuEntry>();
+		for (MenuEntry entry : entries) {
+			String text = passages.get(entry.getLitFileName());
+			MenuEntry withStatistics = withStatistics(entry, cache.getOrTag(text));
+			built.add(withStatistics);
+			System.out.println(entry.getLitFileName() + ": " + withStatistics.getTokenCount() + " tokens, "
+				+ withStatistics.getSentenceCount() + " sentences");
+		}
+		write(file, built, "Statistics from tagger " + cache.getTagger().getVersion());
+		System.out.println("Wrote " + built.size() + " passages to " + file);
+	}
+}
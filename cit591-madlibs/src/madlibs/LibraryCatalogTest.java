@@ -0,0 +1,71 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LibraryCatalogTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void writeAndReadTest() throws IOException {
+		TaggedText taggedText = LexiconTagger.getInstance().tag("The quick rabbits ran. They jumped quickly!");
+		MenuEntry rabbits = LibraryCatalog.withStatistics(
+			new MenuEntry("Rabbits, Quick and Slow", "A. Author", "rabbits.txt", "childrens"), taggedText);
+		MenuEntry unknown = new MenuEntry("Untagged", "Nobody", "new.txt", "classic");
+		Path file = directory.resolve("catalog.tsv");
+		LibraryCatalog.write(file, Arrays.asList(rabbits, unknown), "Made by a test");
+
+		List<MenuEntry> entries = LibraryCatalog.read(file);
+		assertEquals(2, entries.size());
+		MenuEntry read = entries.get(0);
+		// Commas are fine in a tab separated file
+		assertEquals("Rabbits, Quick and Slow", read.getLitTitle());
+		assertEquals("A. Author", read.getLitAuthor());
+		assertEquals("rabbits.txt", read.getLitFileName());
+		assertEquals("childrens", read.getLitGenre());
+		assertTrue(read.hasStatistics());
+		assertEquals(taggedText.size(), read.getTokenCount());
+		assertEquals(2, read.getSentenceCount());
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			assertEquals(rabbits.getPartOfSpeechCount(pos), read.getPartOfSpeechCount(pos));
+		}
+		assertEquals(1, read.getPartOfSpeechCount(PartOfSpeech.PLURAL_NOUN));
+		assertFalse(entries.get(1).hasStatistics());
+		assertEquals(-1, entries.get(1).getTokenCount());
+
+		assertEquals(Arrays.asList(read),
+			LibraryCatalog.withAtLeast(entries, PartOfSpeech.PLURAL_NOUN, 1));
+		assertTrue(LibraryCatalog.withAtLeast(entries, PartOfSpeech.PLURAL_NOUN, 2).isEmpty());
+
+		assertThrows(IllegalArgumentException.class, () -> LibraryCatalog.write(file,
+			Arrays.asList(new MenuEntry("Tab\there", "Nobody", "tab.txt", "classic")), null));
+	}
+
+	@Test
+	void columnsByNameTest() throws IOException {
+		// Columns in another order, some missing, and one the catalog doesn't know
+		Path file = directory.resolve("catalog.tsv");
+		Files.write(file, ("# A hand made catalog\n"
+			+ "genre\tfile\tnotes\tauthor\ttitle\n"
+			+ "classic\told.txt\tshort\tSomeone\tAn Old Story\n").getBytes(StandardCharsets.UTF_8));
+		List<MenuEntry> entries = LibraryCatalog.read(file);
+		assertEquals(1, entries.size());
+		assertEquals("old.txt", entries.get(0).getLitFileName());
+		assertEquals("An Old Story", entries.get(0).getLitTitle());
+		assertFalse(entries.get(0).hasStatistics());
+
+		Files.write(file, "file\ttitle\tauthor\tgenre\nonly.txt\tToo few\n".getBytes(StandardCharsets.UTF_8));
+		assertThrows(IOException.class, () -> LibraryCatalog.read(file));
+	}
+}
@@ -2,7 +2,12 @@ package madlibs;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 import javax.swing.JFrame;
@@ -19,6 +24,7 @@ import javax.swing.SwingUtilities;
 public class MadLib {
      private ArrayList<MenuEntry> classicsMenu;
      private ArrayList<MenuEntry> childrensMenu;
+     private TaggingService taggingService;
      /*
       * This global constant is used to determine the maximum number of words that
       * the user will be prompted for each part of speech
@@ -41,6 +47,10 @@ public class MadLib {
           // and
           // opening the graphical user interface.
 
+          // Loads the part of speech model in the background while the menu and window
+          // are being built
+          taggingService = new TaggingService();
+          taggingService.warmUp();
           makeMenu();
           openUserInterface();
      }
@@ -55,9 +65,68 @@ public class MadLib {
       * children's literature. This method is designed to automatically expand if
       * additional pieces of literature are added to the library.
       * 
+      * If there is a catalog.tsv (see LibraryCatalog), the menu entries are taken
+      * from there instead, along with their statistics and genre. Otherwise, if the
+      * library has been packed into library.pack (see PackedCorpus), they are taken
+      * from the packed library.
+      * 
+      * The passages are then read into the PassageContentCache in the background,
+      * so that they can be shown as soon as they are chosen.
+      * 
       */
      public void makeMenu() {
-          File indexFile = new File("index.csv");
+          PackedCorpus library = PackedCorpus.getLibrary();
+          List<MenuEntry> entries = readCatalog();
+          if (entries == null && library != null) {
+               entries = library.getEntries();
+          }
+          if (entries == null) {
+               makeMenuFromIndex();
+          } else {
+               for (MenuEntry entry : entries) {
+                    if (entry.getLitGenre().equals("childrens")) {
+                         childrensMenu.add(entry);
+                    } else if (entry.getLitGenre().equals("classic")) {
+                         classicsMenu.add(entry);
+                    }
+               }
+          }
+
+          ArrayList<String> fileNames = new ArrayList<String>();
+          for (MenuEntry entry : childrensMenu) {
+               fileNames.add(entry.getLitFileName());
+          }
+          for (MenuEntry entry : classicsMenu) {
+               fileNames.add(entry.getLitFileName());
+          }
+          PassageContentCache.getInstance().preload(fileNames);
+     }
+
+     /**
+      * readCatalog method reads the entries of catalog.tsv in the working directory.
+      * 
+      * @return The entries, or null if there is no catalog or it can't be read
+      */
+     private static List<MenuEntry> readCatalog() {
+          Path catalog = Paths.get(LibraryCatalog.DEFAULT_FILE);
+          if (!Files.exists(catalog)) {
+               return null;
+          }
+          try {
+               return LibraryCatalog.read(catalog);
+          } catch (IOException e) {
+               System.out.println("Could not read " + catalog + ", using " + PackedCorpus.INDEX_FILE
+                         + " instead: " + e.getMessage());
+               return null;
+          }
+     }
+
+     /**
+      * makeMenuFromIndex method creates the Mad-Lib game menu from index.csv, as
+      * described for makeMenu, ignoring any packed library.
+      */
+     public void makeMenuFromIndex() {
+          File indexFile = new File(PackedCorpus.INDEX_FILE);
           try {
                Scanner in = new Scanner(indexFile, "utf-8");
                while (in.hasNextLine()) {
@@ -97,7 +166,8 @@ public class MadLib {
                public void run() {
 
                     JFrame window = new JFrame("Literature Mad-Libs Game");
-                    window.setContentPane(new UserInterface(childrensMenu, classicsMenu));
+                    window.setContentPane(taggingService == null ? new UserInterface(childrensMenu, classicsMenu)
+                              : new UserInterface(childrensMenu, classicsMenu, taggingService));
                     // .setSize sets the frame size -- without it the frame would be tiny
                     window.setSize(1100, 600);
                     // .setDefaultCloseOperation exits the program when the window is closed
@@ -116,11 +186,30 @@ public class MadLib {
       * selects from the Mad-Lib menu, reads the file and returns a string containing
       * the passage.
       * 
+      * The passage is taken from the PassageContentCache, which reads it from the
+      * packed library, if there is one, or from the file the first time.
+      * 
       * @param litFileName
       * @return originalText
       * 
       */
      public String litReader(String litFileName) {
+          try {
+               return PassageContentCache.getInstance().get(litFileName);
+          } catch (IOException e) {
+               System.out.println("Literature passage file could not be found.  Game ended");
+               System.exit(0);
+               return null;
+          }
+     }
+
+     /**
+      * readPassageFile method reads the passage straight from its .txt file.
+      * 
+      * @param litFileName
+      * @return originalText
+      */
+     public String readPassageFile(String litFileName) {
           String originalText = null;
           File litFile = new File(litFileName);
 
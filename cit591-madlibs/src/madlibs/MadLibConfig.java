@@ -0,0 +1,70 @@
+package madlibs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * MadLibConfig class reads the optional settings of the game from a file named
+ * madlibs.properties in the working directory, next to index.csv. Any setting
+ * can also be overridden on the command line with -Dname=value.
+ *
+ * @author Team 42 - Ross Beck-MacNeil, Paul Lysander, and Brenda Moss
+ */
+public class MadLibConfig {
+
+     public static final String CONFIG_FILE_NAME = "madlibs.properties";
+
+     private static Properties fileProperties;
+
+     /**
+      * get method returns the value of a setting. System properties take priority
+      * over madlibs.properties.
+      *
+      * @param name         The name of the setting
+      * @param defaultValue The value to use when the setting is missing
+      * @return The value of the setting
+      */
+     public static String get(String name, String defaultValue) {
+          String value = System.getProperty(name);
+          if (value == null) {
+               value = loadFile().getProperty(name);
+          }
+          return value == null ? defaultValue.trim() : value.trim();
+     }
+
+     /**
+      * getInt method returns the value of a numeric setting.
+      *
+      * @param name         The name of the setting
+      * @param defaultValue The value to use when the setting is missing
+      * @return The value of the setting
+      */
+     public static int getInt(String name, int defaultValue) {
+          String value = get(name, Integer.toString(defaultValue));
+          try {
+               return Integer.parseInt(value);
+          } catch (NumberFormatException e) {
+               System.out.println("Invalid value for " + name + ": " + value + ", using " + defaultValue);
+               return defaultValue;
+          }
+     }
+
+     // The file is read once, the first time any setting is requested
+     private static synchronized Properties loadFile() {
+          if (fileProperties == null) {
+               fileProperties = new Properties();
+               File configFile = new File(CONFIG_FILE_NAME);
+               if (configFile.exists()) {
+                    try (InputStream in = new FileInputStream(configFile)) {
+                         fileProperties.load(in);
+                    } catch (IOException e) {
+                         System.out.println("Could not read " + CONFIG_FILE_NAME + ": " + e.getMessage());
+                    }
+               }
+          }
+          return fileProperties;
+     }
+}
@@ -0,0 +1,465 @@
+package madlibs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * MadLibServer lets many players play at once through HTTP, using the HTTP
+ * server that comes with the JDK. The endpoints follow the same steps as
+ * UserInterface:
+ *
+ * GET /catalog lists the passages in the library, with their statistics when the
+ * catalog has them. partOfSpeech=ADVERB&amp;min=5 lists only the passages with at
+ * least five adverbs.
+ * POST /games starts a game, with file=name for a library passage or
+ * text=... for the player's own text, and optionally seed=n. Library passages
+ * are tagged once and kept in the TaggedPassageCache. The player's own text is
+ * tagged for every game and never stored.
+ * GET /games/{id}/prompts lists how many words are needed for every part of speech.
+ * POST /games/{id}/words supplies them, for example SINGULAR_NOUN=cat&amp;SINGULAR_NOUN=hat.
+ * GET /games/{id}/result returns the updated text and where the replaced words are.
+ * DELETE /games/{id} ends the game.
+ * GET /stats returns the counters of the SessionStore, and the latency
+ * Metrics under "metrics".
+ *
+ * Request bodies are form encoded and responses are JSON. Games are objects in
+ * memory, not threads, so thousands can be open at once. They are kept in a
+ * SessionStore, which drops the least recently used games when they take up
+ * more than madlibs.server.sessionMegabytes, and games that have been idle for
+ * longer than madlibs.server.idleMinutes. Requests run on a
+ * virtual thread each when the JDK has them (Java 21 and later), and on a
+ * small pool of threads otherwise.
+ *
+ */
+public class MadLibServer {
+
+	public static final String PORT_SETTING = "madlibs.server.port";
+	public static final String SESSION_MEGABYTES_SETTING = "madlibs.server.sessionMegabytes";
+	public static final String IDLE_MINUTES_SETTING = "madlibs.server.idleMinutes";
+	// Large enough for a chapter of the player's own text
+	private static final int MAX_BODY_BYTES = 1 << 20;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final TaggedPassageCache cache;
+	private final List<MenuEntry> catalog = new ArrayList<MenuEntry>();
+	private final SessionStore sessions;
+	// Drops idle games, even if nobody asks for them again
+	private final ScheduledExecutorService sweeper;
+	private final SecureRandom random = new SecureRandom();
+
+	/*
+	 * A request that can't be handled, along with the HTTP status to reply with.
+	 */
+	private static class RequestException extends Exception {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		RequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Creates a new server for the passages in the library, with a SessionStore
+	 * sized by the settings. It does not accept requests until it is started.
+	 * @param port The port to listen on, or 0 for any free port
+	 * @param cache Tags the passages
+	 * @throws IOException If the port can't be opened
+	 */
+	public MadLibServer(int port, TaggedPassageCache cache) throws IOException {
+		this(port, cache, new SessionStore(MadLibConfig.getInt(SESSION_MEGABYTES_SETTING, 256) * 1024L * 1024L,
+			MadLibConfig.getInt(IDLE_MINUTES_SETTING, 30) * 60_000L));
+	}
+
+	/**
+	 * Creates a new server for the passages in the library. It does not accept
+	 * requests until it is started.
+	 * @param port The port to listen on, or 0 for any free port
+	 * @param cache Tags the passages
+	 * @param sessions Holds the games in progress
+	 * @throws IOException If the port can't be opened
+	 */
+	public MadLibServer(int port, TaggedPassageCache cache, SessionStore sessions) throws IOException {
+		this.cache = cache;
+		this.sessions = sessions;
+		MadLib madLib = new MadLib();
+		madLib.makeMenu();
+		catalog.addAll(madLib.getChildrensMenu());
+		catalog.addAll(madLib.getClassicsMenu());
+
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.createContext("/catalog", exchange -> handle(exchange, this::catalog));
+		server.createContext("/games", exchange -> handle(exchange, this::games));
+		server.createContext("/stats", exchange -> handle(exchange, this::stats));
+		sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "madlibs-session-sweeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/*
+	 * Returns a virtual thread per task executor if this JDK has one. It is
+	 * looked up by reflection, since the game is built for older versions.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			// Requests are short, so a few threads per processor keep up
+			return Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors(), runnable -> {
+				Thread thread = new Thread(runnable, "madlibs-http");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	public void start() {
+		server.start();
+		sweeper.scheduleWithFixedDelay(sessions::sweep, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Stops accepting requests and waits up to a second for running ones.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+		sweeper.shutdownNow();
+	}
+
+	/**
+	 * @return The port the server is listening on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return The games in progress
+	 */
+	public SessionStore getSessions() {
+		return sessions;
+	}
+
+	private interface Handler {
+		String handle(HttpExchange exchange) throws IOException, RequestException;
+	}
+
+	private void handle(HttpExchange exchange, Handler handler) throws IOException {
+		int status = 200;
+		String body;
+		try {
+			body = handler.handle(exchange);
+		} catch (RequestException e) {
+			status = e.status;
+			body = error(e.getMessage());
+		} catch (RuntimeException e) {
+			status = 500;
+			body = error(e.toString());
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static String error(String message) {
+		StringBuilder json = new StringBuilder("{");
+		Json.appendName(json, "error");
+		return Json.appendString(json, message).append('}').toString();
+	}
+
+	private String catalog(HttpExchange exchange) throws IOException, RequestException {
+		requireMethod(exchange, "GET");
+		Map<String, List<String>> query = readForm(exchange);
+		List<MenuEntry> entries = catalog;
+		String partOfSpeech = first(query, "partOfSpeech");
+		if (partOfSpeech != null) {
+			try {
+				String minimum = first(query, "min");
+				entries = LibraryCatalog.withAtLeast(catalog, PartOfSpeech.valueOf(partOfSpeech),
+					minimum == null ? 1 : Integer.parseInt(minimum));
+			} catch (IllegalArgumentException e) {
+				throw new RequestException(400, "Expected a part of speech and a number: " + e.getMessage());
+			}
+		}
+		StringBuilder json = new StringBuilder("[");
+		for (MenuEntry entry : entries) {
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			json.append('{');
+			Json.appendName(json, "file");
+			Json.appendString(json, entry.getLitFileName());
+			Json.appendName(json, "title");
+			Json.appendString(json, entry.getLitTitle().trim());
+			Json.appendName(json, "author");
+			Json.appendString(json, entry.getLitAuthor().trim());
+			Json.appendName(json, "genre");
+			Json.appendString(json, entry.getLitGenre());
+			if (entry.hasStatistics()) {
+				Json.appendName(json, "tokens").append(entry.getTokenCount());
+				Json.appendName(json, "sentences").append(entry.getSentenceCount());
+				Json.appendName(json, "counts").append('{');
+				for (PartOfSpeech pos : PartOfSpeech.values()) {
+					Json.appendName(json, pos.name()).append(entry.getPartOfSpeechCount(pos));
+				}
+				json.append('}');
+			}
+			json.append('}');
+		}
+		return json.append(']').toString();
+	}
+
+	private String games(HttpExchange exchange) throws IOException, RequestException {
+		// The path is /games, /games/{id} or /games/{id}/{action}
+		String[] parts = exchange.getRequestURI().getPath().split("/");
+		if (parts.length <= 2) {
+			requireMethod(exchange, "POST");
+			return startGame(readForm(exchange));
+		}
+		String id = parts[2];
+		GameSession session = sessions.get(id);
+		if (session == null) {
+			throw new RequestException(404, "No game " + id);
+		}
+		String action = parts.length > 3 ? parts[3] : "";
+		switch (action) {
+		case "":
+			requireMethod(exchange, "DELETE");
+			sessions.remove(id);
+			return "{}";
+		case "prompts":
+			requireMethod(exchange, "GET");
+			return prompts(session);
+		case "words":
+			requireMethod(exchange, "POST");
+			return submitWords(session, readForm(exchange));
+		case "result":
+			requireMethod(exchange, "GET");
+			return result(session);
+		default:
+			throw new RequestException(404, "Unknown action " + action);
+		}
+	}
+
+	private String stats(HttpExchange exchange) throws RequestException {
+		requireMethod(exchange, "GET");
+		StringBuilder json = new StringBuilder(sessions.toJson());
+		// Reopen the object to add the metrics
+		json.setLength(json.length() - 1);
+		Json.appendName(json, "metrics").append(Metrics.toJson());
+		return json.append('}').toString();
+	}
+
+	private String startGame(Map<String, List<String>> form) throws RequestException {
+		String fileName = first(form, "file");
+		String text = first(form, "text");
+		MenuEntry entry = null;
+		if (fileName != null) {
+			for (MenuEntry candidate : catalog) {
+				if (candidate.getLitFileName().equals(fileName)) {
+					entry = candidate;
+				}
+			}
+			if (entry == null) {
+				throw new RequestException(404, "No passage " + fileName);
+			}
+			try {
+				text = PassageContentCache.getInstance().get(fileName);
+			} catch (IOException e) {
+				throw new RequestException(500, "Could not read " + fileName + ": " + e.getMessage());
+			}
+		}
+		else if (text == null || text.trim().isEmpty()) {
+			throw new RequestException(400, "Supply either file or text");
+		}
+		long seed = random.nextLong();
+		String seedValue = first(form, "seed");
+		if (seedValue != null) {
+			try {
+				seed = Long.parseLong(seedValue);
+			} catch (NumberFormatException e) {
+				throw new RequestException(400, "Not a number: " + seedValue);
+			}
+		}
+		// Only library passages go in the cache. Any client can send its own
+		// text, and storing those would let clients fill the disk.
+		TaggedPassage taggedPassage = entry != null ? cache.getPassage(text)
+			: new TaggedPassage(cache.getTagger().tag(text));
+		String id = newId();
+		GameSession session = new GameSession(id, entry, new Passage(taggedPassage), seed);
+		if (!sessions.put(session)) {
+			throw new RequestException(413, "The text is too long to play");
+		}
+		return prompts(session);
+	}
+
+	private String newId() {
+		byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		StringBuilder id = new StringBuilder();
+		for (byte b : bytes) {
+			id.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return id.toString();
+	}
+
+	private String prompts(GameSession session) {
+		StringBuilder json = new StringBuilder("{");
+		Json.appendName(json, "id");
+		Json.appendString(json, session.getId());
+		Json.appendName(json, "prompts").append('[');
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			if (session.getWordCount(pos) == 0) {
+				continue;
+			}
+			if (json.charAt(json.length() - 1) != '[') {
+				json.append(',');
+			}
+			json.append('{');
+			Json.appendName(json, "partOfSpeech");
+			Json.appendString(json, pos.name());
+			Json.appendName(json, "description");
+			Json.appendString(json, pos.getDescription());
+			Json.appendName(json, "count").append(session.getWordCount(pos));
+			Json.appendName(json, "answered").append(session.isAnswered(pos));
+			json.append('}');
+		}
+		json.append(']');
+		Json.appendName(json, "complete").append(session.isComplete());
+		return json.append('}').toString();
+	}
+
+	private String submitWords(GameSession session, Map<String, List<String>> form) throws RequestException {
+		// Check everything first, so a bad request changes nothing
+		HashMap<PartOfSpeech, String[]> answers = new HashMap<PartOfSpeech, String[]>();
+		for (Map.Entry<String, List<String>> field : form.entrySet()) {
+			PartOfSpeech pos;
+			try {
+				pos = PartOfSpeech.valueOf(field.getKey());
+			} catch (IllegalArgumentException e) {
+				throw new RequestException(400, "Unknown part of speech " + field.getKey());
+			}
+			String[] words = field.getValue().toArray(new String[0]);
+			if (words.length != session.getWordCount(pos)) {
+				throw new RequestException(400, "Expected " + session.getWordCount(pos) + " words for " + pos
+					+ " but got " + words.length);
+			}
+			answers.put(pos, words);
+		}
+		for (Map.Entry<PartOfSpeech, String[]> answer : answers.entrySet()) {
+			session.submitWords(answer.getKey(), answer.getValue());
+		}
+		// The replacement words take up memory too, and can make the game too big to keep
+		if (!sessions.update(session)) {
+			throw new RequestException(413, "The game has grown too big to keep");
+		}
+		return prompts(session);
+	}
+
+	private String result(GameSession session) {
+		GameEvents.ResultRendered event = new GameEvents.ResultRendered();
+		event.begin();
+		StringBuilder json = new StringBuilder("{");
+		Json.appendName(json, "id");
+		Json.appendString(json, session.getId());
+		Json.appendName(json, "complete").append(session.isComplete());
+		// The highlights are collected while the text is written
+		StringBuilder highlights = new StringBuilder();
+		Json.appendName(json, "text");
+		Json.appendRendered(json, highlights, session::renderUpdatedText);
+		Json.appendName(json, "highlights").append(highlights);
+		highlights.setLength(0);
+		Json.appendName(json, "originalText");
+		Json.appendRendered(json, highlights, session::renderOriginalText);
+		Json.appendName(json, "originalHighlights").append(highlights);
+		json.append('}');
+		event.finish("server", session.getOriginalText(), json.length(), session.getReplacedCount());
+		return json.toString();
+	}
+
+	private static void requireMethod(HttpExchange exchange, String method) throws RequestException {
+		if (!exchange.getRequestMethod().equals(method)) {
+			throw new RequestException(405, "Use " + method + " for " + exchange.getRequestURI().getPath());
+		}
+	}
+
+	/*
+	 * Reads a form encoded body. Fields can be repeated, and keep their order.
+	 */
+	private static Map<String, List<String>> readForm(HttpExchange exchange) throws IOException, RequestException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				body.write(buffer, 0, read);
+				if (body.size() > MAX_BODY_BYTES) {
+					throw new RequestException(413, "Request is larger than " + MAX_BODY_BYTES + " bytes");
+				}
+			}
+		}
+		LinkedHashMap<String, List<String>> form = new LinkedHashMap<String, List<String>>();
+		String query = exchange.getRequestURI().getRawQuery();
+		String encoded = new String(body.toByteArray(), StandardCharsets.UTF_8);
+		if (query != null) {
+			encoded = encoded.isEmpty() ? query : query + "&" + encoded;
+		}
+		for (String pair : encoded.split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			try {
+				form.computeIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), key -> new ArrayList<String>())
+					.add(URLDecoder.decode(value, StandardCharsets.UTF_8));
+			} catch (IllegalArgumentException e) {
+				throw new RequestException(400, "Badly encoded form field " + name);
+			}
+		}
+		return form;
+	}
+
+	private static String first(Map<String, List<String>> form, String name) {
+		List<String> values = form.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : MadLibConfig.getInt(PORT_SETTING, 8080);
+		TaggedPassageCache cache = new TaggedPassageCache(Tagger.getDefault());
+		cache.getTagger().warmUp();
+		MadLibServer server = new MadLibServer(port, cache);
+		server.start();
+		System.out.println("Literature Mad-Libs server listening on port " + server.getPort());
+	}
+}
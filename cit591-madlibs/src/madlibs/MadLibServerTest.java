@@ -0,0 +1,113 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MadLibServerTest {
+	static final String text = "Peter didn't see the rabbits. They were hopping quickly\n" +
+			"through Mr. McGregor's enormous garden.";
+
+	@TempDir
+	Path directory;
+	private MadLibServer server;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = new MadLibServer(0, new TaggedPassageCache(directory, LexiconTagger.getInstance()));
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop();
+	}
+
+	private String request(String method, String path, String form, int expectedStatus) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+			.openConnection();
+		connection.setRequestMethod(method);
+		if (form != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(form.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		assertEquals(expectedStatus, connection.getResponseCode());
+		try (InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	void catalogTest() throws IOException {
+		String catalog = request("GET", "/catalog", null, 200);
+		assertTrue(catalog.contains("\"file\":\"children1.txt\""));
+		assertTrue(catalog.contains("\"title\":\"The Tale of Peter Rabbit\""));
+		assertTrue(catalog.contains("\"counts\":{\"SINGULAR_NOUN\":"));
+		// Romeo & Juliet has no -ed verbs in the catalog
+		String filtered = request("GET", "/catalog?partOfSpeech=ED_VERB&min=1", null, 200);
+		assertTrue(filtered.contains("children1.txt"));
+		assertFalse(filtered.contains("classic2.txt"));
+		request("GET", "/catalog?partOfSpeech=VERB", null, 400);
+	}
+
+	@Test
+	void playGameTest() throws IOException {
+		String started = request("POST", "/games", "seed=42&text=" + java.net.URLEncoder.encode(text, "UTF-8"), 200);
+		Matcher id = Pattern.compile("\"id\":\"([0-9a-f]+)\"").matcher(started);
+		assertTrue(id.find());
+		assertTrue(started.contains("\"complete\":false"));
+		assertEquals(1, server.getSessions().size());
+		// The player's own text is not written to the tag cache
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(0, files.count());
+		}
+
+		// Answer every prompt with the right number of words
+		StringBuilder form = new StringBuilder();
+		Matcher prompt = Pattern.compile("\"partOfSpeech\":\"(\\w+)\",\"description\":\"[^\"]*\",\"count\":(\\d+)")
+			.matcher(started);
+		while (prompt.find()) {
+			for (int i = 0; i < Integer.parseInt(prompt.group(2)); i++) {
+				form.append(form.length() > 0 ? "&" : "").append(prompt.group(1)).append("=zebra");
+			}
+		}
+		String answered = request("POST", "/games/" + id.group(1) + "/words", form.toString(), 200);
+		assertTrue(answered.contains("\"complete\":true"));
+
+		String result = request("GET", "/games/" + id.group(1) + "/result", null, 200);
+		assertTrue(result.contains("zebra"));
+		assertTrue(result.contains("\"originalText\":\"Peter didn't see the rabbits."));
+
+		request("DELETE", "/games/" + id.group(1), null, 200);
+		request("GET", "/games/" + id.group(1) + "/result", null, 404);
+	}
+
+	@Test
+	void badRequestsTest() throws IOException {
+		request("POST", "/games", "file=nothing.txt", 404);
+		request("POST", "/games", "", 400);
+		request("GET", "/games", null, 405);
+		String started = request("POST", "/games", "file=children1.txt", 200);
+		Matcher id = Pattern.compile("\"id\":\"([0-9a-f]+)\"").matcher(started);
+		assertTrue(id.find());
+		request("POST", "/games/" + id.group(1) + "/words", "NOT_A_PART_OF_SPEECH=cat", 400);
+	}
+}
@@ -2,6 +2,8 @@ package madlibs;
 
 /**
  * MenuEntry class defines the parameters associated with each literary entry on the menu.  
+ * Entries read from the catalog (see LibraryCatalog) also carry statistics about the
+ * passage, so that it can be described without reading or tagging its text.
  * 
  * @author Team 42 - Ross Beck-MacNeil, Paul Lysander, and Brenda Moss  
  */
@@ -12,6 +14,10 @@ public class MenuEntry {
     String litAuthor;
     String litFileName;
     String litGenre;
+    // The statistics are -1, or null, when they are not known
+    int tokenCount = -1;
+    int sentenceCount = -1;
+    int[] partOfSpeechCounts;
     
     public MenuEntry(String litTitle, String litAuthor, String litFileName, String litGenre) {
         this.litTitle = litTitle;
@@ -21,6 +27,24 @@ public class MenuEntry {
         
     }
 
+    /**
+     * This constructor is the same as above, but also records statistics about the passage.
+     * @param tokenCount The number of words and punctuation marks in the passage
+     * @param sentenceCount The number of sentences in the passage
+     * @param partOfSpeechCounts How many words there are of every PartOfSpeech, in the
+     * order of PartOfSpeech.values()
+     */
+    public MenuEntry(String litTitle, String litAuthor, String litFileName, String litGenre,
+            int tokenCount, int sentenceCount, int[] partOfSpeechCounts) {
+        this(litTitle, litAuthor, litFileName, litGenre);
+        if (partOfSpeechCounts.length != PartOfSpeech.values().length) {
+            throw new IllegalArgumentException("Expected a count for every part of speech");
+        }
+        this.tokenCount = tokenCount;
+        this.sentenceCount = sentenceCount;
+        this.partOfSpeechCounts = partOfSpeechCounts.clone();
+    }
+
     public String getLitTitle() {
         return litTitle;
     }
@@ -36,5 +60,34 @@ public class MenuEntry {
     public String getLitGenre() {
         return litGenre;
     }
+
+    /**
+     * @return Whether the statistics of the passage are known
+     */
+    public boolean hasStatistics() {
+        return partOfSpeechCounts != null;
+    }
+
+    /**
+     * @return The number of words and punctuation marks in the passage, or -1 if not known
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @return The number of sentences in the passage, or -1 if not known
+     */
+    public int getSentenceCount() {
+        return sentenceCount;
+    }
+
+    /**
+     * @param partOfSpeech A part of speech
+     * @return How many words of that part of speech the passage has, or -1 if not known
+     */
+    public int getPartOfSpeechCount(PartOfSpeech partOfSpeech) {
+        return partOfSpeechCounts == null ? -1 : partOfSpeechCounts[partOfSpeech.ordinal()];
+    }
     
 }
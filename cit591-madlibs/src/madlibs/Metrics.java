@@ -0,0 +1,138 @@
+package madlibs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class holds the latency metrics of the steps of a game: tagging,
+ * indexing, sampling words, replacing them and rendering the result. They are
+ * published as JMX MBeans named madlibs:type=Metrics,name=..., so jconsole or
+ * any other JMX client can watch them, and the server adds them to /stats.
+ *
+ * Each metric also counts the bytes the step allocated, as reported by the
+ * JVM for the current thread. If the JVM can't report them they stay 0.
+ *
+ * The settings madlibs.metrics=false turns recording off, and
+ * madlibs.metrics.dumpOnExit=true prints all the metrics when the program ends.
+ *
+ */
+public class Metrics {
+
+	public static final String ENABLED_SETTING = "madlibs.metrics";
+	public static final String DUMP_ON_EXIT_SETTING = "madlibs.metrics.dumpOnExit";
+
+	static final boolean ENABLED = Boolean.parseBoolean(MadLibConfig.get(ENABLED_SETTING, "true"));
+
+	// Tokenizing and splitting sentences, then tagging parts of speech, by CoreNlpTagger
+	public static final LatencyMetric TOKENIZE = new LatencyMetric("tagger.tokenize");
+	public static final LatencyMetric TAG = new LatencyMetric("tagger.pos");
+	// LexiconTagger does both in one pass
+	public static final LatencyMetric LEXICON_TAG = new LatencyMetric("tagger.lexicon");
+	// Building the part of speech index and samplers of a TaggedPassage
+	public static final LatencyMetric INDEX = new LatencyMetric("passage.index");
+	public static final LatencyMetric SAMPLE = new LatencyMetric("sampler.sample");
+	public static final LatencyMetric REPLACE_WORDS = new LatencyMetric("passage.replaceWords");
+	public static final LatencyMetric RENDER = new LatencyMetric("passage.render");
+	public static final LatencyMetric HIGHLIGHTS = new LatencyMetric("passage.highlights");
+
+	private static final List<LatencyMetric> ALL = Collections.unmodifiableList(Arrays.asList(TOKENIZE, TAG,
+		LEXICON_TAG, INDEX, SAMPLE, REPLACE_WORDS, RENDER, HIGHLIGHTS));
+
+	private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+
+	static {
+		if (ENABLED) {
+			register();
+			if (Boolean.parseBoolean(MadLibConfig.get(DUMP_ON_EXIT_SETTING, "false"))) {
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(report()),
+					"madlibs-metrics-dump"));
+			}
+		}
+	}
+
+	private Metrics() {
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+			if (allocations.isThreadAllocatedMemorySupported()) {
+				allocations.setThreadAllocatedMemoryEnabled(true);
+				return allocations;
+			}
+		}
+		return null;
+	}
+
+	private static void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (LatencyMetric metric : ALL) {
+			try {
+				ObjectName name = new ObjectName("madlibs:type=Metrics,name=" + metric.getName());
+				if (!server.isRegistered(name)) {
+					server.registerMBean(metric, name);
+				}
+			} catch (JMException e) {
+				System.err.println("Could not publish metric " + metric.getName() + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * @return The time a step starts, to pass to LatencyMetric.record, or 0 if
+	 * metrics are off
+	 */
+	public static long startNanos() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * @return How many bytes the current thread has allocated so far, to pass
+	 * to LatencyMetric.record, or 0 if metrics are off or the JVM can't tell
+	 */
+	public static long allocatedBytes() {
+		if (!ENABLED || ALLOCATIONS == null) {
+			return 0;
+		}
+		return ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return All the metrics
+	 */
+	public static List<LatencyMetric> getAll() {
+		return ALL;
+	}
+
+	/**
+	 * @return All the metrics as a JSON object, keyed by name
+	 */
+	public static String toJson() {
+		StringBuilder json = new StringBuilder("{");
+		for (LatencyMetric metric : ALL) {
+			Json.appendName(json, metric.getName());
+			metric.appendJson(json);
+		}
+		return json.append('}').toString();
+	}
+
+	/**
+	 * @return All the metrics as a table, one line each
+	 */
+	public static String report() {
+		StringBuilder report = new StringBuilder(String.format("%-22s %9s %10s %10s %10s %10s %12s%n", "metric",
+			"count", "mean us", "p50 us", "p99 us", "max us", "bytes/call"));
+		for (LatencyMetric metric : ALL) {
+			report.append(metric).append(System.lineSeparator());
+		}
+		return report.toString();
+	}
+}
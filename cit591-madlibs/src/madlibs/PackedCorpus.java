@@ -0,0 +1,361 @@
+package madlibs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class holds the whole library of passages in a single file. The file
+ * starts with an index of every passage: its title, author, file name and
+ * genre, where its text is, and the size and modification time of the .txt
+ * file it was packed from. The text of all the passages follows as UTF-16
+ * characters.
+ *
+ * The file is memory mapped when it is opened, and only the index is read.
+ * The text of a passage is a view of the mapped file, so getting it costs
+ * neither a system call nor a copy until its characters are actually used.
+ *
+ * Build the file from catalog.tsv, or index.csv if there is no catalog, by
+ * running this class from the project directory. MadLib uses it instead of the
+ * .txt files whenever it is at least as new as the list of passages. A passage
+ * whose .txt file has been changed since it was packed is read from the file,
+ * until the library is packed again.
+ *
+ */
+public class PackedCorpus {
+
+	// Identifies the files written by this class
+	private static final int MAGIC = 0x4d4c504b;
+	// Increase whenever the layout of the file changes
+	private static final int FORMAT_VERSION = 2;
+	// Four empty strings, the offset and length, and the source size and time
+	private static final int ENTRY_SIZE = 4 * 2 + 2 * 4 + 2 * 8;
+	// Stands for a passage that was not packed from a file
+	private static final long NO_SOURCE = -1;
+	// The default location, relative to the working directory like index.csv
+	public static final String DEFAULT_FILE = "library.pack";
+	public static final String INDEX_FILE = "index.csv";
+
+	// The library in the working directory, opened the first time it is needed
+	private static PackedCorpus library;
+	private static boolean libraryOpened = false;
+
+	private final List<MenuEntry> entries;
+	private final HashMap<String, Integer> entriesByFileName;
+	private final int[] offsets;
+	private final int[] lengths;
+	// The size and modification time of the file every passage was packed from
+	private final long[] sourceSizes;
+	private final long[] sourceModified;
+	// The text of all the passages, straight from the mapped file
+	private final CharBuffer text;
+
+	private PackedCorpus(List<MenuEntry> entries, int[] offsets, int[] lengths, long[] sourceSizes,
+			long[] sourceModified, CharBuffer text) {
+		this.entries = Collections.unmodifiableList(entries);
+		this.offsets = offsets;
+		this.lengths = lengths;
+		this.sourceSizes = sourceSizes;
+		this.sourceModified = sourceModified;
+		this.text = text;
+		entriesByFileName = new HashMap<String, Integer>();
+		for (int i = 0; i < entries.size(); i++) {
+			entriesByFileName.put(entries.get(i).getLitFileName(), i);
+		}
+	}
+
+	/**
+	 * Opens a packed corpus file.
+	 * @param file The file written by write
+	 * @return The corpus, which stays usable after the file is closed
+	 * @throws IOException If the file can't be read or is not a packed corpus
+	 */
+	public static PackedCorpus open(Path file) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.remaining() < 20 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+			throw new IOException(file + " is not a packed corpus");
+		}
+		int count = buffer.getInt();
+		int textStart = buffer.getInt();
+		int textLength = buffer.getInt();
+		// Every entry takes at least ENTRY_SIZE bytes, so a damaged count can't
+		// allocate more than the file holds
+		if (count < 0 || count > buffer.remaining() / ENTRY_SIZE
+				|| textStart < buffer.position() || textStart > buffer.limit() || textLength < 0) {
+			throw new IOException(file + " is damaged");
+		}
+		ArrayList<MenuEntry> entries = new ArrayList<MenuEntry>(count);
+		int[] offsets = new int[count];
+		int[] lengths = new int[count];
+		long[] sourceSizes = new long[count];
+		long[] sourceModified = new long[count];
+		for (int i = 0; i < count; i++) {
+			String title = readString(buffer, file);
+			String author = readString(buffer, file);
+			String fileName = readString(buffer, file);
+			String genre = readString(buffer, file);
+			if (buffer.remaining() < ENTRY_SIZE - 8) {
+				throw new IOException(file + " is damaged");
+			}
+			entries.add(new MenuEntry(title, author, fileName, genre));
+			offsets[i] = buffer.getInt();
+			lengths[i] = buffer.getInt();
+			sourceSizes[i] = buffer.getLong();
+			sourceModified[i] = buffer.getLong();
+			if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] > textLength - lengths[i]) {
+				throw new IOException(file + " is damaged");
+			}
+		}
+		buffer.position(textStart);
+		CharBuffer text = buffer.asCharBuffer();
+		if (text.remaining() < textLength) {
+			throw new IOException(file + " is damaged");
+		}
+		text.limit(textLength);
+		return new PackedCorpus(entries, offsets, lengths, sourceSizes, sourceModified, text);
+	}
+
+	/**
+	 * Opens the library in the working directory, the first time it is called.
+	 * @return The library, or null if there is no packed library or it is older
+	 * than catalog.tsv or index.csv, in which case the .txt files should be read
+	 * instead. Passages that are not isCurrent should be read from their files
+	 * too.
+	 */
+	public static synchronized PackedCorpus getLibrary() {
+		if (!libraryOpened) {
+			libraryOpened = true;
+			Path file = Paths.get(DEFAULT_FILE);
+			Path index = Paths.get(LibraryCatalog.DEFAULT_FILE);
+			if (!Files.exists(index)) {
+				index = Paths.get(INDEX_FILE);
+			}
+			try {
+				if (Files.exists(file) && (!Files.exists(index)
+						|| Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(index)) >= 0)) {
+					library = open(file);
+				}
+			} catch (IOException e) {
+				System.out.println("Could not open " + file + ", reading the passage files instead: " + e.getMessage());
+			}
+		}
+		return library;
+	}
+
+	/**
+	 * @return The number of passages in the corpus
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The menu entries of all the passages, in the order they were
+	 * written. The list can't be modified.
+	 */
+	public List<MenuEntry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @param litFileName The file name that the passage was packed from
+	 * @return Whether the corpus contains the passage
+	 */
+	public boolean contains(String litFileName) {
+		return entriesByFileName.containsKey(litFileName);
+	}
+
+	/**
+	 * Checks that a passage has not been changed since it was packed, by
+	 * comparing the size and modification time of its .txt file with those
+	 * recorded when it was packed.
+	 * @param litFileName The file name that the passage was packed from
+	 * @param directory The directory the passage files are in
+	 * @return Whether the packed text can be used. False if the corpus does not
+	 * contain the passage or its file has changed, true if the file is gone or
+	 * the passage was not packed from a file.
+	 */
+	public boolean isCurrent(String litFileName, Path directory) {
+		Integer index = entriesByFileName.get(litFileName);
+		if (index == null) {
+			return false;
+		}
+		if (sourceSizes[index] == NO_SOURCE) {
+			return true;
+		}
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(directory.resolve(litFileName),
+				BasicFileAttributes.class);
+			return attributes.size() == sourceSizes[index]
+				&& attributes.lastModifiedTime().toMillis() == sourceModified[index];
+		} catch (IOException e) {
+			// Without the file, the packed text is all there is
+			return true;
+		}
+	}
+
+	/**
+	 * @param index The position of the passage in getEntries
+	 * @return A read only view of the text of the passage. No characters are
+	 * copied until they are read.
+	 */
+	public CharSequence getText(int index) {
+		CharBuffer view = text.duplicate();
+		view.position(offsets[index]);
+		view.limit(offsets[index] + lengths[index]);
+		return view.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * @param litFileName The file name that the passage was packed from
+	 * @return A read only view of the text of the passage
+	 * @throws IllegalArgumentException If the corpus does not contain the passage
+	 */
+	public CharSequence getText(String litFileName) {
+		Integer index = entriesByFileName.get(litFileName);
+		if (index == null) {
+			throw new IllegalArgumentException("No passage named " + litFileName);
+		}
+		return getText(index);
+	}
+
+	/**
+	 * Writes a packed corpus file of passages that were not read from files,
+	 * so they are never checked by isCurrent.
+	 * @param file Where to write the corpus
+	 * @param entries The passages to include
+	 * @param texts The text of every passage, in the same order as the entries
+	 * @throws IOException If the file can't be written
+	 */
+	public static void write(Path file, List<MenuEntry> entries, List<? extends CharSequence> texts)
+			throws IOException {
+		write(file, entries, texts, null);
+	}
+
+	/**
+	 * Writes a packed corpus file. The file is replaced in one step, so a
+	 * reader never sees half of it.
+	 * @param file Where to write the corpus
+	 * @param entries The passages to include
+	 * @param texts The text of every passage, in the same order as the entries
+	 * @param directory The directory the passage files were read from, whose
+	 * sizes and modification times are recorded for isCurrent, or null
+	 * @throws IOException If the file can't be written, or a passage file can't
+	 * be looked at
+	 */
+	public static void write(Path file, List<MenuEntry> entries, List<? extends CharSequence> texts,
+			Path directory) throws IOException {
+		if (entries.size() != texts.size()) {
+			throw new IllegalArgumentException("Need one text for every entry");
+		}
+		ByteArrayOutputStream index = new ByteArrayOutputStream();
+		DataOutputStream indexOut = new DataOutputStream(index);
+		int offset = 0;
+		for (int i = 0; i < entries.size(); i++) {
+			MenuEntry entry = entries.get(i);
+			writeString(indexOut, entry.getLitTitle());
+			writeString(indexOut, entry.getLitAuthor());
+			writeString(indexOut, entry.getLitFileName());
+			writeString(indexOut, entry.getLitGenre());
+			indexOut.writeInt(offset);
+			indexOut.writeInt(texts.get(i).length());
+			if (directory == null) {
+				indexOut.writeLong(NO_SOURCE);
+				indexOut.writeLong(NO_SOURCE);
+			}
+			else {
+				BasicFileAttributes attributes = Files.readAttributes(directory.resolve(entry.getLitFileName()),
+					BasicFileAttributes.class);
+				indexOut.writeLong(attributes.size());
+				indexOut.writeLong(attributes.lastModifiedTime().toMillis());
+			}
+			offset += texts.get(i).length();
+		}
+
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "library", ".tmp");
+		try (OutputStream stream = Files.newOutputStream(temp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(entries.size());
+			// The header is five ints long
+			out.writeInt(20 + index.size());
+			out.writeInt(offset);
+			index.writeTo(out);
+			for (CharSequence text : texts) {
+				out.writeChars(text.toString());
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Strings in the index are a length followed by UTF-16 characters, the
+	 * same as the text, so they can be read straight from the buffer.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value.length() > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Too long for the index: " + value.substring(0, 40) + "...");
+		}
+		out.writeShort(value.length());
+		out.writeChars(value);
+	}
+
+	private static String readString(ByteBuffer buffer, Path file) throws IOException {
+		int length = buffer.remaining() < 2 ? -1 : buffer.getShort();
+		if (length < 0 || buffer.remaining() < length * 2) {
+			throw new IOException(file + " is damaged");
+		}
+		char[] chars = new char[length];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = buffer.getChar();
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Packs the passages listed in catalog.tsv, or index.csv if there is no
+	 * catalog, into library.pack.
+	 * @param args Optionally, the file to write instead of library.pack
+	 * @throws IOException If a passage can't be read or the file can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args.length > 0 ? args[0] : DEFAULT_FILE);
+		MadLib madLib = new MadLib();
+		List<MenuEntry> entries;
+		Path catalog = Paths.get(LibraryCatalog.DEFAULT_FILE);
+		if (Files.exists(catalog)) {
+			entries = LibraryCatalog.read(catalog);
+		}
+		else {
+			madLib.makeMenuFromIndex();
+			entries = new ArrayList<MenuEntry>(madLib.getChildrensMenu());
+			entries.addAll(madLib.getClassicsMenu());
+		}
+		ArrayList<String> texts = new ArrayList<String>();
+		for (MenuEntry entry : entries) {
+			texts.add(madLib.readPassageFile(entry.getLitFileName()));
+		}
+		write(file, entries, texts, Paths.get(""));
+		System.out.println("Packed " + entries.size() + " passages into " + file);
+	}
+}
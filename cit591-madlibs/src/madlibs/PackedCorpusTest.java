@@ -0,0 +1,105 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PackedCorpusTest {
+	static final List<MenuEntry> entries = Arrays.asList(
+		new MenuEntry("The Tale of Peter Rabbit", "Beatrix Potter", "children1.txt", "childrens"),
+		new MenuEntry("Romeo & Juliet", "William Shakespeare", "classic2.txt", "classic"));
+	static final List<String> texts = Arrays.asList(
+		"Once upon a time there were four little Rabbits.",
+		"But soft, what light through yonder window breaks?\r\nIt is the east, and Juliet is the sun!\u2019");
+
+	@Test
+	void roundTripTest(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("library.pack");
+		PackedCorpus.write(file, entries, texts);
+		PackedCorpus corpus = PackedCorpus.open(file);
+		assertEquals(2, corpus.size());
+		for (int i = 0; i < entries.size(); i++) {
+			MenuEntry entry = corpus.getEntries().get(i);
+			assertEquals(entries.get(i).getLitTitle(), entry.getLitTitle());
+			assertEquals(entries.get(i).getLitAuthor(), entry.getLitAuthor());
+			assertEquals(entries.get(i).getLitFileName(), entry.getLitFileName());
+			assertEquals(entries.get(i).getLitGenre(), entry.getLitGenre());
+			assertEquals(texts.get(i), corpus.getText(i).toString());
+		}
+		CharSequence text = corpus.getText("classic2.txt");
+		assertEquals('B', text.charAt(0));
+		assertEquals("yonder", text.subSequence(29, 35).toString());
+		assertTrue(corpus.contains("children1.txt"));
+		assertFalse(corpus.contains("children2.txt"));
+	}
+
+	@Test
+	void changedSourceTest(@TempDir Path directory) throws IOException {
+		for (int i = 0; i < entries.size(); i++) {
+			Path source = directory.resolve(entries.get(i).getLitFileName());
+			Files.write(source, texts.get(i).getBytes("UTF-8"));
+			Files.setLastModifiedTime(source, FileTime.fromMillis(1000000));
+		}
+		Path file = directory.resolve("library.pack");
+		PackedCorpus.write(file, entries, texts, directory);
+		PackedCorpus corpus = PackedCorpus.open(file);
+		assertTrue(corpus.isCurrent("children1.txt", directory));
+		assertTrue(corpus.isCurrent("classic2.txt", directory));
+		assertFalse(corpus.isCurrent("children2.txt", directory));
+
+		// Edited after packing, even if the size happens to stay the same
+		Files.write(directory.resolve("children1.txt"), texts.get(0).toUpperCase().getBytes("UTF-8"));
+		assertFalse(corpus.isCurrent("children1.txt", directory));
+		// Only in the pack now
+		Files.delete(directory.resolve("classic2.txt"));
+		assertTrue(corpus.isCurrent("classic2.txt", directory));
+		// Not packed from files, so nothing to compare with
+		PackedCorpus.write(file, entries, texts);
+		assertTrue(PackedCorpus.open(file).isCurrent("children1.txt", directory));
+	}
+
+	@Test
+	void notACorpusTest(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("index.csv");
+		Files.write(file, "The Tale of Peter Rabbit, Beatrix Potter, children1.txt".getBytes("UTF-8"));
+		assertThrows(IOException.class, () -> PackedCorpus.open(file));
+	}
+
+	@Test
+	void damagedCorpusTest(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("library.pack");
+		PackedCorpus.write(file, entries, texts);
+		byte[] bytes = Files.readAllBytes(file);
+		Path damaged = directory.resolve("damaged.pack");
+		for (int length = 0; length < bytes.length; length++) {
+			Files.write(damaged, Arrays.copyOf(bytes, length));
+			assertThrows(IOException.class, () -> PackedCorpus.open(damaged), "truncated to " + length);
+		}
+		// A changed byte may still leave a readable corpus, but never one that
+		// fails with anything other than an IOException
+		for (int i = 0; i < bytes.length; i++) {
+			for (int value : new int[] {0x00, 0x7f, 0x80, 0xff}) {
+				byte[] changed = bytes.clone();
+				changed[i] = (byte) value;
+				Files.write(damaged, changed);
+				try {
+					PackedCorpus corpus = PackedCorpus.open(damaged);
+					for (int j = 0; j < corpus.size(); j++) {
+						corpus.getText(j).toString();
+					}
+				}
+				catch (IOException e) {
+					// Expected for most of the header
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package madlibs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class tags long texts on several threads at once. The text is cut into
+ * segments of whole sentences, the segments are tagged in parallel by another
+ * Tagger, and the results are joined back together in their original order.
+ * Short texts, such as the passages in the library, are passed straight to the
+ * other Tagger.
+ *
+ * Part of speech tagging only looks at one sentence at a time, so the tags are
+ * the same as tagging the whole text at once, apart from the rare segment that
+ * is cut after an abbreviation such as "Mr.". Because of that rare segment the
+ * version is the other Tagger's with the segment length added, so the cache
+ * never mixes passages tagged whole with passages tagged in pieces.
+ *
+ * The number of threads is set with madlibs.tagger.threads, and defaults to
+ * the number of processors.
+ *
+ */
+public class ParallelTagger implements Tagger {
+
+	public static final String THREADS_SETTING = "madlibs.tagger.threads";
+	// Library passages are shorter than two segments, so they are never split
+	public static final int DEFAULT_SEGMENT_LENGTH = 4096;
+
+	// The shared pool, and one ParallelTagger for every Tagger it has wrapped
+	private static ForkJoinPool sharedPool;
+	private static final HashMap<Tagger, ParallelTagger> instances = new HashMap<Tagger, ParallelTagger>();
+
+	private final Tagger tagger;
+	private final ForkJoinPool pool;
+	private final int segmentLength;
+
+	/**
+	 * Creates a new ParallelTagger.
+	 * @param tagger Tags every segment. It must be safe to use from several threads.
+	 * @param pool The threads that tag the segments
+	 * @param segmentLength The smallest number of characters in a segment
+	 */
+	public ParallelTagger(Tagger tagger, ForkJoinPool pool, int segmentLength) {
+		if (segmentLength < 1) {
+			throw new IllegalArgumentException("Segment length must be positive: " + segmentLength);
+		}
+		this.tagger = tagger;
+		this.pool = pool;
+		this.segmentLength = segmentLength;
+	}
+
+	/**
+	 * @param tagger Tags every segment. It must be safe to use from several threads.
+	 * @return The shared ParallelTagger for the supplied Tagger, using the
+	 * number of threads from the madlibs.tagger.threads setting
+	 */
+	public static synchronized ParallelTagger getInstance(Tagger tagger) {
+		ParallelTagger instance = instances.get(tagger);
+		if (instance == null) {
+			if (sharedPool == null) {
+				sharedPool = new ForkJoinPool(getThreadCount());
+			}
+			instance = new ParallelTagger(tagger, sharedPool, DEFAULT_SEGMENT_LENGTH);
+			instances.put(tagger, instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * @return The number of threads given by the madlibs.tagger.threads setting
+	 */
+	public static int getThreadCount() {
+		return Math.max(1, MadLibConfig.getInt(THREADS_SETTING, Runtime.getRuntime().availableProcessors()));
+	}
+
+	@Override
+	public TaggedText tag(String text) {
+		List<String> segments = split(text);
+		if (segments.size() <= 1) {
+			return tagger.tag(text);
+		}
+		List<Callable<TaggedText>> jobs = new ArrayList<Callable<TaggedText>>(segments.size());
+		for (String segment : segments) {
+			jobs.add(() -> tagger.tag(segment));
+		}
+		TaggedText taggedText = new TaggedText();
+		try {
+			// The futures come back in the same order as the segments
+			for (Future<TaggedText> result : pool.invokeAll(jobs)) {
+				taggedText.append(result.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while tagging", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		return taggedText;
+	}
+
+	/*
+	 * Cuts the text into segments at the first sentence boundary after every
+	 * segmentLength characters. The last segment is never shorter than that.
+	 */
+	List<String> split(String text) {
+		ArrayList<String> segments = new ArrayList<String>();
+		int start = 0;
+		while (start < text.length()) {
+			int cut = -1;
+			if (text.length() - start >= 2 * segmentLength) {
+				cut = PassageReader.findSentenceBoundary(text, start + segmentLength);
+			}
+			if (cut < 0) {
+				cut = text.length();
+			}
+			segments.add(text.substring(start, cut));
+			start = cut;
+		}
+		return segments;
+	}
+
+	@Override
+	public String getVersion() {
+		return tagger.getVersion() + "/parallel-" + segmentLength;
+	}
+
+	@Override
+	public void warmUp() {
+		tagger.warmUp();
+	}
+}
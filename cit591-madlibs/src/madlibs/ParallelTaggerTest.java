@@ -0,0 +1,70 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class ParallelTaggerTest {
+	static final String text = "Peter didn't see the rabbits. They were hopping quickly\n" +
+			"through the enormous garden!\n\nChapter 2\n\n" +
+			"Where was the gate? Peter ran and ran.  He was hungry. ";
+
+	private LexiconTagger tagger() {
+		HashMap<String, String> lexicon = new HashMap<String, String>();
+		lexicon.put("peter", "NNP");
+		lexicon.put("did", "VBD");
+		lexicon.put("see", "VB");
+		lexicon.put("the", "DT");
+		lexicon.put("they", "PRP");
+		lexicon.put("were", "VBD");
+		lexicon.put("through", "IN");
+		return new LexiconTagger(lexicon, "test");
+	}
+
+	@Test
+	void splitTest() {
+		ParallelTagger parallel = new ParallelTagger(tagger(), ForkJoinPool.commonPool(), 10);
+		List<String> segments = parallel.split(text);
+		assertEquals(5, segments.size());
+		assertEquals("Peter didn't see the rabbits. ", segments.get(0));
+		assertEquals(text, String.join("", segments));
+		// Too short to be worth splitting
+		assertEquals(1, parallel.split("Peter ran. He ate.").size());
+	}
+
+	@Test
+	void sameAsSingleThreadTest() {
+		LexiconTagger tagger = tagger();
+		StringBuilder book = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			book.append(text);
+		}
+		TaggedText expected = tagger.tag(book.toString());
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			TaggedText actual = new ParallelTagger(tagger, pool, 100).tag(book.toString());
+			assertEquals(expected.getText(), actual.getText());
+			assertEquals(expected.size(), actual.size());
+			assertEquals(expected.getSentenceCount(), actual.getSentenceCount());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.getStart(i), actual.getStart(i));
+				assertEquals(expected.getEnd(i), actual.getEnd(i));
+				assertEquals(expected.getTag(i), actual.getTag(i));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void versionTest() {
+		LexiconTagger tagger = tagger();
+		assertEquals("test/parallel-10", new ParallelTagger(tagger, ForkJoinPool.commonPool(), 10).getVersion());
+		assertNotEquals(new ParallelTagger(tagger, ForkJoinPool.commonPool(), 10).getVersion(),
+			new ParallelTagger(tagger, ForkJoinPool.commonPool(), 20).getVersion());
+	}
+}
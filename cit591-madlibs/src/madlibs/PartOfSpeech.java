@@ -34,4 +34,30 @@ public enum PartOfSpeech {
 	public double getDesiredPercent() {
 		return desiredPercent;
 	}
+	/**
+	 * Finds the part of speech that a Penn Treebank tag belongs to.
+	 * @param posTag A Penn Treebank tag, such as "NNS"
+	 * @return The matching part of speech, or null if words with this tag are
+	 * never replaced
+	 */
+	public static PartOfSpeech fromPennTag(String posTag) {
+		switch (posTag) {
+		case "NN":
+		case "NNP":
+			return SINGULAR_NOUN;
+		case "NNS":
+		case "NNPS":
+			return PLURAL_NOUN;
+		case "JJ":
+			return ADJECTIVE;
+		case "RB":
+			return ADVERB;
+		case "VBG":
+			return ING_VERB;
+		case "VBN":
+			return ED_VERB;
+		default:
+			return null;
+		}
+	}
 }
@@ -0,0 +1,591 @@
+package madlibs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * This class is an inverted index over the whole library. For every
+ * PartOfSpeech and word, in lower case, it lists the passages that use the
+ * word as that part of speech and the positions of the word in each of them,
+ * as token indexes in the TaggedText.
+ *
+ * Every list of postings is kept as bytes: the difference from the previous
+ * passage id, the number of positions, and the differences between positions,
+ * each as a variable length integer. A typical posting takes two or three
+ * bytes. A passage whose text changes gets a new id, so new postings are
+ * always appended at the end of a list.
+ *
+ * The index is saved in pos-index.bin. Running this class brings it up to
+ * date with the catalog, tagging only the passages that are new or changed,
+ * and can then answer a query from the command line.
+ *
+ */
+public class PartOfSpeechIndex {
+
+	// Identifies the files written by this class
+	private static final int MAGIC = 0x4d4c5049;
+	// Increase whenever the layout of the file changes
+	private static final int FORMAT_VERSION = 1;
+	// The default location, relative to the working directory like catalog.tsv
+	public static final String DEFAULT_FILE = "pos-index.bin";
+
+	private static final PartOfSpeech[] PARTS_OF_SPEECH = PartOfSpeech.values();
+
+	private String taggerVersion = "";
+	// Indexed by passage id. Passages that have been removed or changed leave a null.
+	private ArrayList<IndexedPassage> passages = new ArrayList<IndexedPassage>();
+	private HashMap<String, Integer> idsByFileName = new HashMap<String, Integer>();
+	// The postings of every word, one map for each part of speech
+	private ArrayList<HashMap<String, Postings>> terms = new ArrayList<HashMap<String, Postings>>();
+
+	/*
+	 * What the index knows about one passage, which answers questions about
+	 * whole passages without looking at any postings.
+	 */
+	private static class IndexedPassage {
+		final String fileName;
+		// Tells whether the text has changed since the passage was indexed
+		final long textHash;
+		final int tokenCount;
+		final int[] counts;
+
+		IndexedPassage(String fileName, long textHash, int tokenCount, int[] counts) {
+			this.fileName = fileName;
+			this.textHash = textHash;
+			this.tokenCount = tokenCount;
+			this.counts = counts;
+		}
+	}
+
+	/*
+	 * The compressed postings of one word. The last passage id is kept so that
+	 * more postings can be appended without reading the list.
+	 */
+	private static class Postings {
+		byte[] bytes = new byte[8];
+		int length = 0;
+		int lastPassage = -1;
+		int passageCount = 0;
+
+		void add(int passage, int[] positions) {
+			writeVarInt(passage - lastPassage);
+			writeVarInt(positions.length);
+			int previous = 0;
+			for (int i = 0; i < positions.length; i++) {
+				writeVarInt(positions[i] - previous);
+				previous = positions[i];
+			}
+			lastPassage = passage;
+			passageCount++;
+		}
+
+		private void writeVarInt(int value) {
+			if (length + 5 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+			}
+			while ((value & ~0x7f) != 0) {
+				bytes[length++] = (byte) (value & 0x7f | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+	}
+
+	/*
+	 * Walks through a list of postings. next moves to the next passage, and
+	 * its positions are only decoded if they are asked for.
+	 */
+	private static class PostingsReader {
+		private final Postings postings;
+		private int offset = 0;
+		private int remainingPositions = 0;
+		int passage = -1;
+		int positionCount;
+
+		PostingsReader(Postings postings) {
+			this.postings = postings;
+		}
+
+		boolean next() {
+			// Skip the positions of the current passage, if they weren't read
+			while (remainingPositions > 0) {
+				readVarInt();
+				remainingPositions--;
+			}
+			if (offset >= postings.length) {
+				return false;
+			}
+			passage += readVarInt();
+			positionCount = readVarInt();
+			remainingPositions = positionCount;
+			return true;
+		}
+
+		int[] positions() {
+			int[] positions = new int[remainingPositions];
+			int position = 0;
+			for (int i = 0; i < positions.length; i++) {
+				position += readVarInt();
+				positions[i] = position;
+			}
+			remainingPositions = 0;
+			return positions;
+		}
+
+		private int readVarInt() {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = postings.bytes[offset++];
+				value |= (b & 0x7f) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Where one word appears in one passage, as returned by getPostings.
+	 */
+	public static class Posting {
+		private final String fileName;
+		private final int[] positions;
+
+		Posting(String fileName, int[] positions) {
+			this.fileName = fileName;
+			this.positions = positions;
+		}
+
+		/**
+		 * @return The file name of the passage
+		 */
+		public String getFileName() {
+			return fileName;
+		}
+
+		/**
+		 * @return The token indexes of the word in the passage, in order
+		 */
+		public int[] getPositions() {
+			return positions;
+		}
+	}
+
+	/**
+	 * Creates an empty index.
+	 */
+	public PartOfSpeechIndex() {
+		for (int i = 0; i < PARTS_OF_SPEECH.length; i++) {
+			terms.add(new HashMap<String, Postings>());
+		}
+	}
+
+	/**
+	 * Brings the index up to date with the library. Passages that are no
+	 * longer in the library, or whose text has changed, are removed, and new
+	 * and changed passages are tagged and added. Nothing else is tagged
+	 * again, unless the tagger has changed.
+	 * @param texts The text of every passage in the library, by file name
+	 * @param taggerVersion Identifies the tagger, as Tagger.getVersion
+	 * @param tagger Tags a text
+	 * @return The number of passages that were removed or tagged and added,
+	 * counting a changed passage twice
+	 */
+	public int update(Map<String, String> texts, String taggerVersion, Function<String, TaggedText> tagger) {
+		if (!taggerVersion.equals(this.taggerVersion)) {
+			// Every tag may be different, so start again
+			passages.clear();
+			idsByFileName.clear();
+			for (HashMap<String, Postings> map : terms) {
+				map.clear();
+			}
+			this.taggerVersion = taggerVersion;
+		}
+
+		HashSet<Integer> removed = new HashSet<Integer>();
+		for (int id = 0; id < passages.size(); id++) {
+			IndexedPassage passage = passages.get(id);
+			if (passage == null) {
+				continue;
+			}
+			String text = texts.get(passage.fileName);
+			if (text == null || hash(text) != passage.textHash) {
+				removed.add(id);
+				passages.set(id, null);
+				idsByFileName.remove(passage.fileName);
+			}
+		}
+		if (!removed.isEmpty()) {
+			removePostings(removed);
+		}
+
+		int changes = removed.size();
+		for (Map.Entry<String, String> text : texts.entrySet()) {
+			if (!idsByFileName.containsKey(text.getKey())) {
+				add(text.getKey(), text.getValue(), tagger.apply(text.getValue()));
+				changes++;
+			}
+		}
+		return changes;
+	}
+
+	/*
+	 * Rewrites every list of postings without the removed passages.
+	 */
+	private void removePostings(Set<Integer> removed) {
+		for (HashMap<String, Postings> map : terms) {
+			map.replaceAll((word, postings) -> {
+				Postings kept = new Postings();
+				PostingsReader reader = new PostingsReader(postings);
+				while (reader.next()) {
+					if (!removed.contains(reader.passage)) {
+						kept.add(reader.passage, reader.positions());
+					}
+				}
+				return kept;
+			});
+			map.values().removeIf(postings -> postings.passageCount == 0);
+		}
+	}
+
+	private void add(String fileName, String text, TaggedText taggedText) {
+		int id = passages.size();
+		int[] counts = new int[PARTS_OF_SPEECH.length];
+		// The positions of every word of this passage, before they are compressed
+		ArrayList<HashMap<String, int[]>> positions = new ArrayList<HashMap<String, int[]>>();
+		for (int i = 0; i < PARTS_OF_SPEECH.length; i++) {
+			positions.add(new HashMap<String, int[]>());
+		}
+		for (int index = 0; index < taggedText.size(); index++) {
+			PartOfSpeech pos = PartOfSpeech.fromPennTag(taggedText.getTag(index));
+			if (pos == null) {
+				continue;
+			}
+			counts[pos.ordinal()]++;
+			String word = taggedText.getWord(index).toLowerCase(Locale.ROOT);
+			// The first element is the number of positions that follow
+			positions.get(pos.ordinal()).merge(word, new int[] {1, index}, (old, one) -> {
+				if (old[0] + 1 == old.length) {
+					old = Arrays.copyOf(old, old.length * 2);
+				}
+				old[++old[0]] = one[1];
+				return old;
+			});
+		}
+		for (int i = 0; i < PARTS_OF_SPEECH.length; i++) {
+			for (Map.Entry<String, int[]> word : positions.get(i).entrySet()) {
+				int[] wordPositions = word.getValue();
+				terms.get(i).computeIfAbsent(word.getKey(), key -> new Postings())
+					.add(id, Arrays.copyOfRange(wordPositions, 1, wordPositions[0] + 1));
+			}
+		}
+		passages.add(new IndexedPassage(fileName, hash(text), taggedText.size(), counts));
+		idsByFileName.put(fileName, id);
+	}
+
+	/*
+	 * A 64 bit FNV-1a hash of the characters, which is enough to notice that
+	 * a passage has been edited.
+	 */
+	private static long hash(String text) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return The number of passages in the index
+	 */
+	public int size() {
+		return idsByFileName.size();
+	}
+
+	/**
+	 * @param partOfSpeech A part of speech
+	 * @return The number of different words used as that part of speech
+	 */
+	public int getWordCount(PartOfSpeech partOfSpeech) {
+		return terms.get(partOfSpeech.ordinal()).size();
+	}
+
+	/**
+	 * @return The tagger that the index was built with
+	 */
+	public String getTaggerVersion() {
+		return taggerVersion;
+	}
+
+	/**
+	 * Finds every use of a word as a part of speech.
+	 * @param partOfSpeech The part of speech
+	 * @param word The word, in any case
+	 * @return Where the word is used, one Posting for every passage
+	 */
+	public List<Posting> getPostings(PartOfSpeech partOfSpeech, String word) {
+		ArrayList<Posting> result = new ArrayList<Posting>();
+		Postings postings = terms.get(partOfSpeech.ordinal()).get(word.toLowerCase(Locale.ROOT));
+		if (postings != null) {
+			PostingsReader reader = new PostingsReader(postings);
+			while (reader.next()) {
+				result.add(new Posting(passages.get(reader.passage).fileName, reader.positions()));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the passages that use a word as one part of speech and a related
+	 * word as another. For example, with PLURAL_NOUN, SINGULAR_NOUN and
+	 * singularOf, the passages that use a plural noun also in the singular.
+	 * @param first The part of speech of the first word
+	 * @param second The part of speech of the related word
+	 * @param related Turns a word into the related word, such as
+	 * UnaryOperator.identity() for the same word used both ways
+	 * @return The words used as the first part of speech, by the file name of
+	 * the passage, in the order the passages were added
+	 */
+	public Map<String, List<String>> findRelatedWords(PartOfSpeech first, PartOfSpeech second,
+			UnaryOperator<String> related) {
+		HashMap<String, Postings> secondTerms = terms.get(second.ordinal());
+		// Collected by passage id, so the result comes out in order
+		HashMap<Integer, List<String>> wordsByPassage = new HashMap<Integer, List<String>>();
+		for (Map.Entry<String, Postings> term : terms.get(first.ordinal()).entrySet()) {
+			Postings other = secondTerms.get(related.apply(term.getKey()));
+			if (other == null) {
+				continue;
+			}
+			// Both lists are in passage order, so they are merged in one pass
+			PostingsReader a = new PostingsReader(term.getValue());
+			PostingsReader b = new PostingsReader(other);
+			boolean moreA = a.next();
+			boolean moreB = b.next();
+			while (moreA && moreB) {
+				if (a.passage < b.passage) {
+					moreA = a.next();
+				}
+				else if (a.passage > b.passage) {
+					moreB = b.next();
+				}
+				else {
+					wordsByPassage.computeIfAbsent(a.passage, id -> new ArrayList<String>()).add(term.getKey());
+					moreA = a.next();
+					moreB = b.next();
+				}
+			}
+		}
+		LinkedHashMap<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+		for (int id = 0; id < passages.size(); id++) {
+			List<String> words = wordsByPassage.get(id);
+			if (words != null) {
+				words.sort(null);
+				result.put(passages.get(id).fileName, words);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Ranks the passages by how many of their tokens are a part of speech.
+	 * Only the counts kept for every passage are used.
+	 * @param partOfSpeech The part of speech
+	 * @param limit The most passages to return
+	 * @return The file names of the passages, densest first
+	 */
+	public List<String> topByDensity(PartOfSpeech partOfSpeech, int limit) {
+		ArrayList<IndexedPassage> ranked = new ArrayList<IndexedPassage>();
+		for (IndexedPassage passage : passages) {
+			if (passage != null && passage.tokenCount > 0) {
+				ranked.add(passage);
+			}
+		}
+		int pos = partOfSpeech.ordinal();
+		ranked.sort((a, b) -> Double.compare((double) b.counts[pos] / b.tokenCount,
+			(double) a.counts[pos] / a.tokenCount));
+		ArrayList<String> fileNames = new ArrayList<String>();
+		for (int i = 0; i < Math.min(limit, ranked.size()); i++) {
+			fileNames.add(ranked.get(i).fileName);
+		}
+		return fileNames;
+	}
+
+	/**
+	 * Guesses the singular of an English plural noun, for findRelatedWords.
+	 * Irregular plurals, such as mice, are left as they are.
+	 * @param plural A plural noun in lower case
+	 * @return The singular
+	 */
+	public static String singularOf(String plural) {
+		if (plural.endsWith("ies") && plural.length() > 4) {
+			return plural.substring(0, plural.length() - 3) + "y";
+		}
+		if (plural.endsWith("ches") || plural.endsWith("shes") || plural.endsWith("sses")
+				|| plural.endsWith("xes") || plural.endsWith("zes")) {
+			return plural.substring(0, plural.length() - 2);
+		}
+		if (plural.endsWith("s") && !plural.endsWith("ss") && plural.length() > 2) {
+			return plural.substring(0, plural.length() - 1);
+		}
+		return plural;
+	}
+
+	/**
+	 * Reads an index written by write.
+	 * @param file The file to read
+	 * @return The index
+	 * @throws IOException If the file can't be read or is not an index
+	 */
+	public static PartOfSpeechIndex read(Path file) throws IOException {
+		try (InputStream stream = Files.newInputStream(file);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				throw new IOException(file + " is not a part of speech index");
+			}
+			PartOfSpeechIndex index = new PartOfSpeechIndex();
+			index.taggerVersion = in.readUTF();
+			int passageCount = in.readInt();
+			for (int id = 0; id < passageCount; id++) {
+				if (!in.readBoolean()) {
+					index.passages.add(null);
+					continue;
+				}
+				String fileName = in.readUTF();
+				long textHash = in.readLong();
+				int tokenCount = in.readInt();
+				int[] counts = new int[PARTS_OF_SPEECH.length];
+				for (int i = 0; i < counts.length; i++) {
+					counts[i] = in.readInt();
+				}
+				index.passages.add(new IndexedPassage(fileName, textHash, tokenCount, counts));
+				index.idsByFileName.put(fileName, id);
+			}
+			for (int i = 0; i < PARTS_OF_SPEECH.length; i++) {
+				int termCount = in.readInt();
+				HashMap<String, Postings> map = index.terms.get(i);
+				for (int t = 0; t < termCount; t++) {
+					String word = in.readUTF();
+					Postings postings = new Postings();
+					postings.lastPassage = in.readInt();
+					postings.passageCount = in.readInt();
+					postings.length = in.readInt();
+					postings.bytes = new byte[postings.length];
+					in.readFully(postings.bytes);
+					map.put(word, postings);
+				}
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Writes the index. The file is replaced in one step, so a reader never
+	 * sees half of it.
+	 * @param file Where to write the index
+	 * @throws IOException If the file can't be written
+	 */
+	public void write(Path file) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(directory, "pos-index", ".tmp");
+		try (OutputStream stream = Files.newOutputStream(temp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(taggerVersion);
+			out.writeInt(passages.size());
+			for (IndexedPassage passage : passages) {
+				out.writeBoolean(passage != null);
+				if (passage != null) {
+					out.writeUTF(passage.fileName);
+					out.writeLong(passage.textHash);
+					out.writeInt(passage.tokenCount);
+					for (int count : passage.counts) {
+						out.writeInt(count);
+					}
+				}
+			}
+			for (HashMap<String, Postings> map : terms) {
+				out.writeInt(map.size());
+				for (Map.Entry<String, Postings> term : map.entrySet()) {
+					Postings postings = term.getValue();
+					out.writeUTF(term.getKey());
+					out.writeInt(postings.lastPassage);
+					out.writeInt(postings.passageCount);
+					out.writeInt(postings.length);
+					out.write(postings.bytes, 0, postings.length);
+				}
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Brings pos-index.bin up to date with the passages on the menu, then
+	 * answers a query if one is given:
+	 * top PART_OF_SPEECH [n] lists the passages densest in a part of speech,
+	 * plural-as-singular lists the plural nouns also used in the singular,
+	 * word PART_OF_SPEECH word lists where a word is used.
+	 * @param args The query, if any
+	 * @throws IOException If a passage or the index can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(DEFAULT_FILE);
+		PartOfSpeechIndex index = Files.exists(file) ? read(file) : new PartOfSpeechIndex();
+		MadLib madLib = new MadLib();
+		madLib.makeMenu();
+		ArrayList<MenuEntry> entries = new ArrayList<MenuEntry>(madLib.getChildrensMenu());
+		entries.addAll(madLib.getClassicsMenu());
+		LinkedHashMap<String, String> texts = new LinkedHashMap<String, String>();
+		for (MenuEntry entry : entries) {
+			texts.put(entry.getLitFileName(), PassageContentCache.getInstance().get(entry.getLitFileName()));
+		}
+		TaggedPassageCache cache = new TaggedPassageCache(Tagger.getDefault());
+		int changes = index.update(texts, cache.getTagger().getVersion(), cache::getOrTag);
+		if (changes > 0 || !Files.exists(file)) {
+			index.write(file);
+		}
+		System.out.println(index.size() + " passages in " + file + ", " + changes + " added or removed");
+
+		long start = System.nanoTime();
+		Object answer = null;
+		if (args.length >= 2 && args[0].equals("top")) {
+			answer = index.topByDensity(PartOfSpeech.valueOf(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : 5);
+		}
+		else if (args.length >= 1 && args[0].equals("plural-as-singular")) {
+			answer = index.findRelatedWords(PartOfSpeech.PLURAL_NOUN, PartOfSpeech.SINGULAR_NOUN,
+				PartOfSpeechIndex::singularOf);
+		}
+		else if (args.length >= 3 && args[0].equals("word")) {
+			StringBuilder uses = new StringBuilder();
+			for (Posting posting : index.getPostings(PartOfSpeech.valueOf(args[1]), args[2])) {
+				uses.append(posting.getFileName()).append(' ').append(Arrays.toString(posting.getPositions())).append('\n');
+			}
+			answer = uses;
+		}
+		if (answer != null) {
+			System.out.println(answer);
+			System.out.println(String.format("Answered in %.1f microseconds", (System.nanoTime() - start) / 1e3));
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PartOfSpeechIndexTest {
+
+	@TempDir
+	Path directory;
+
+	private int tagged = 0;
+	private final Function<String, TaggedText> tagger = text -> {
+		tagged++;
+		return LexiconTagger.getInstance().tag(text);
+	};
+
+	private LinkedHashMap<String, String> library() {
+		LinkedHashMap<String, String> texts = new LinkedHashMap<String, String>();
+		texts.put("rabbits.txt", "The rabbits ran to the garden. One rabbit hid under a big cabbage.");
+		texts.put("cats.txt", "A cat sat quietly. The cat slowly watched the happy dogs.");
+		texts.put("fox.txt", "The clever fox jumped over the lazy dogs and the sleepy dog.");
+		return texts;
+	}
+
+	@Test
+	void queryTest() {
+		PartOfSpeechIndex index = new PartOfSpeechIndex();
+		assertEquals(3, index.update(library(), "lexicon", tagger));
+		assertEquals(3, index.size());
+
+		List<PartOfSpeechIndex.Posting> cats = index.getPostings(PartOfSpeech.SINGULAR_NOUN, "Cat");
+		assertEquals(1, cats.size());
+		assertEquals("cats.txt", cats.get(0).getFileName());
+		assertArrayEquals(new int[] {1, 6}, cats.get(0).getPositions());
+		assertEquals(2, index.getPostings(PartOfSpeech.PLURAL_NOUN, "dogs").size());
+		assertTrue(index.getPostings(PartOfSpeech.ADVERB, "dogs").isEmpty());
+
+		Map<String, List<String>> plurals = index.findRelatedWords(PartOfSpeech.PLURAL_NOUN,
+			PartOfSpeech.SINGULAR_NOUN, PartOfSpeechIndex::singularOf);
+		assertEquals(Arrays.asList("rabbits.txt", "fox.txt"), Arrays.asList(plurals.keySet().toArray()));
+		assertEquals(Arrays.asList("rabbits"), plurals.get("rabbits.txt"));
+		assertTrue(index.findRelatedWords(PartOfSpeech.PLURAL_NOUN, PartOfSpeech.SINGULAR_NOUN,
+			UnaryOperator.identity()).isEmpty());
+
+		assertEquals(Arrays.asList("cats.txt"), index.topByDensity(PartOfSpeech.ADVERB, 1));
+		assertEquals(3, index.topByDensity(PartOfSpeech.ADJECTIVE, 10).size());
+	}
+
+	@Test
+	void updateTest() throws IOException {
+		PartOfSpeechIndex index = new PartOfSpeechIndex();
+		LinkedHashMap<String, String> texts = library();
+		index.update(texts, "lexicon", tagger);
+		tagged = 0;
+		// Nothing has changed
+		assertEquals(0, index.update(texts, "lexicon", tagger));
+
+		// Only the changed passage is tagged again
+		texts.put("cats.txt", "A dog sat quietly.");
+		texts.remove("fox.txt");
+		assertEquals(3, index.update(texts, "lexicon", tagger));
+		assertEquals(1, tagged);
+		assertEquals(2, index.size());
+		assertTrue(index.getPostings(PartOfSpeech.SINGULAR_NOUN, "cat").isEmpty());
+		assertEquals(0, index.getPostings(PartOfSpeech.PLURAL_NOUN, "dogs").size());
+		assertEquals("cats.txt", index.getPostings(PartOfSpeech.SINGULAR_NOUN, "dog").get(0).getFileName());
+
+		// What was written is read back the same
+		Path file = directory.resolve("index.bin");
+		index.write(file);
+		PartOfSpeechIndex read = PartOfSpeechIndex.read(file);
+		assertEquals(2, read.size());
+		assertEquals("lexicon", read.getTaggerVersion());
+		for (PartOfSpeech pos : PartOfSpeech.values()) {
+			assertEquals(index.getWordCount(pos), read.getWordCount(pos));
+		}
+		assertArrayEquals(index.getPostings(PartOfSpeech.SINGULAR_NOUN, "rabbit").get(0).getPositions(),
+			read.getPostings(PartOfSpeech.SINGULAR_NOUN, "rabbit").get(0).getPositions());
+		tagged = 0;
+		assertEquals(0, read.update(texts, "lexicon", tagger));
+		// A different tagger means starting again
+		assertEquals(2, read.update(texts, "another", tagger));
+		assertEquals(2, tagged);
+	}
+
+	@Test
+	void singularOfTest() {
+		assertEquals("rabbit", PartOfSpeechIndex.singularOf("rabbits"));
+		assertEquals("berry", PartOfSpeechIndex.singularOf("berries"));
+		assertEquals("bench", PartOfSpeechIndex.singularOf("benches"));
+		assertEquals("glass", PartOfSpeechIndex.singularOf("glass"));
+		assertEquals("mice", PartOfSpeechIndex.singularOf("mice"));
+	}
+}
@@ -1,7 +1,7 @@
 package madlibs;
 
+import java.io.IOException;
 import java.util.*;
-import edu.stanford.nlp.simple.*;
 
 /**
  * This class represents a passage of text in a suitable format for playing a
@@ -10,203 +10,103 @@ import edu.stanford.nlp.simple.*;
  * along with the indexes where modified words appear in the passage
  * so that they can be highlighted. 
  *
+ * The tagged text and the parts of speech are kept in a TaggedPassage, which
+ * never changes and can be shared. A Passage is one play of it, and only
+ * records the words that have been replaced, so playing the same text again,
+ * or in several games at once, doesn't tag or copy it again.
+ *
  */
 public class Passage {
 	
 	// INSTANCE VARIABLES //
 	///////////////////////
-	// For storing the words as individual strings
-	private ArrayList<Word> originalWords;
-	private ArrayList<Word> modifiedWords;
-	
-	/* These different PartOfSpeechTrackers store the indexes in the original text
-	 * where the the respective part of speech can be found.
+	// The part of the passage that is shared by every play
+	private final TaggedPassage base;
+	// The words of the original text, stored in columns
+	private final TaggedText taggedText;
+	// The original text, from the first word onwards
+	private final String originalText;
+	// The indexes of the words that have been overridden by the user, in
+	// order, and the word supplied for each. It is capitalized as it is
+	// rendered, so it keeps the same length. A play only takes up memory for
+	// the words it replaces, however long the passage is.
+	private int[] replacedIndexes = new int[0];
+	private String[] replacements = new String[0];
+	private int replacedCount = 0;
+	/* A Fenwick tree with an entry for every replaced word, in the same order,
+	 * holding how much longer the replacement is than the original word. The
+	 * prefix sum of the replaced words before a word is how far that word has
+	 * moved in the updated text, so positions are found without walking the
+	 * passage.
 	 */
-	private PartOfSpeechTracker singularNouns;
-	private PartOfSpeechTracker pluralNouns;
-	private PartOfSpeechTracker adverbs;
-	private PartOfSpeechTracker adjectives;
-	private PartOfSpeechTracker ingVerbs;
-	private PartOfSpeechTracker edVerbs;
+	private int[] shifts = new int[1];
 	
 	/**
-	 * For storing important information about a word, such as the actual word,
-	 * trailing white spaces, and the total length (including trailing whitespace). 
-	 *
-	 */
-	private class Word {
-		// The actual word, as a string
-		private String text;
-		// The blank spaces (including new lines) that comes after this word
-		private String trailingBlanks;
-		// Has the the text of this word been overridden by the user?
-		private boolean replaced = false;
-		// Track if the original word was capitalized, so the replaced word can also be
-		private boolean capitalized = false;
-		/**
-		 * Constructs a new Word object from the supplied parameters.
-		 * @param word The actual text of the word
-		 * @param posTag The part of speech as this word, using the tag from Penn Treebank
-		 * @param trailingBlanks The white space characters that follow this word
-		 * @param sentenceIndex The position of this word in its sentence.
-		 * 
-		 */
-		Word (String text, String posTag, String trailingBlanks) {
-			this.text = text;
-			this.trailingBlanks = trailingBlanks;
-			if (Character.isUpperCase(text.charAt(0))) {
-				capitalized = true;
-			}
-		}
-		
-		private void setReplaced(boolean replaced) {
-			this.replaced = replaced;
-		}
-		
-		private boolean isReplaced() {
-			return replaced;
-		}
-		
-		@Override
-		public String toString() {
-			// If the original word was capitalized, then always capitalize the word
-			if (capitalized) {
-				return text.substring(0, 1).toUpperCase() + text.substring(1) + trailingBlanks;
-			}
-			else {
-				return text + trailingBlanks;
-			}
-		}
-		
-		/*
-		 * Get the length of this word, no including the blank spaces.
-		 */
-		private int length() {
-			return toString().length();
-		}
-		
-		/**
-		 * Update the actual string part of the word with the new string
-		 * @param text
-		 */
-		private void setText(String text) {
-			this.text = text;
-		}
-		
+	 * Receives the position of every replaced word while a passage is rendered,
+	 * so that the words can be highlighted without a second pass.
+	 */
+	public interface HighlightListener {
 		/**
-		 * Get the text of the word, not including blank spaces
+		 * @param index The index of the word in the passage
+		 * @param start Where the word starts in the rendered text
+		 * @param end Where the word ends in the rendered text
 		 */
-		private String getText() {
-			return text;
-		}
-		
+		void highlight(int index, int start, int end);
 	}
 	
-	// For tracking the indexes of the different parts of speech
-	class PartOfSpeechTracker {
-		// Keys are the string of original words, values are indexes where this word can be found.
-		// Keys do not correspond to current word, if replacement had been done
-		private HashMap<String, ArrayList<Integer>> indexLookup;
-		
-		PartOfSpeechTracker() {
-			indexLookup = new HashMap<String, ArrayList<Integer>>();
-		}
-		
-		private void add(String word, int index) {
-			if(!indexLookup.containsKey(word)) {
-				indexLookup.put(word, new ArrayList<Integer>());
-			}
-			indexLookup.get(word).add(index);
-		}
-		
-		/**
-		 * Return the indexes where the corresponding parts of speech can be
-		 * found in the passage as a flat Integer array.
-		 * @return An 1d Integer array of the indexes that belong to this
-		 * part of speech, sorted.
-		 */
-		public Integer[] toFlatArray() {
-			ArrayList<Integer> allIndexes = new ArrayList<Integer>();
-			for (String word : indexLookup.keySet()) {
-				ArrayList<Integer> theseIndexes = indexLookup.get(word);
-				for (Integer index : theseIndexes) {
-					allIndexes.add(index);
-				}
-			}
-			Collections.sort(allIndexes);
-			return allIndexes.toArray(new Integer[allIndexes.size()]);
-		}
-		/**
-		 * Return the indexes where the corresponding parts of speech can be
-		 * found in the passage as a 2d Integer array.
-		 * @return A 2d Integer array of the indexes that belong to this 
-		 * part of speech.
-		 */
-		public Integer[][] toNestedArray() {
-			Integer[][] allIndexes = new Integer[indexLookup.values().size()][];
-			int i = 0;
-			for (ArrayList<Integer> indexes : indexLookup.values()) {
-				allIndexes[i] = indexes.toArray(new Integer[indexes.size()]);
-				i++;
-			}
-			return allIndexes;
-		}
-		
+	/** Constructs a new Passage object from the supplied text, using the
+	 * default Tagger.
+	 * 
+	 * @param originalText The text of the passage
+	 */
+	Passage (String originalText) {
+		this(new TaggedPassage(originalText));
 	}
 	
 	/** Constructs a new Passage object from the supplied text.
 	 * 
 	 * @param originalText The text of the passage
+	 * @param tagger Used to split the text into words and tag their parts of speech
 	 */
-	Passage (String originalText) {
-		
-		originalWords = new ArrayList<Word>();
-		modifiedWords = new ArrayList<Word>();
-		
-		singularNouns = new PartOfSpeechTracker();
-		pluralNouns = new PartOfSpeechTracker();
-		adverbs = new PartOfSpeechTracker();
-		adjectives = new PartOfSpeechTracker();
-		edVerbs = new PartOfSpeechTracker();
-		ingVerbs = new PartOfSpeechTracker();
-		
-		// The Document class is from the Stanford NLP library
-		Document document = new Document(originalText);
-		
-		// We want to keep track of the index of the word within the overall passage
-		int passageIndex = 0;
-		for (Sentence sentence: document.sentences()) {
-			for (int i = 0; i < sentence.length(); i++) {
-				String word = sentence.originalText(i);
-				String posTag = sentence.posTag(i);
-				String trailingBlanks = sentence.after(i);
-				// Adding a separate word object to both original and updated word
-				// lists so can modify a Word object in one list without affecting
-				// the other
-				originalWords.add(new Word(word, posTag, trailingBlanks));
-				modifiedWords.add(new Word(word, posTag, trailingBlanks));
-				// Add this word to the appropriate PartOfSpeechTracker
-				if (posTag.equals("NN") || posTag.equals("NNP")) {
-					singularNouns.add(word, passageIndex);
-				}
-				else if (posTag.equals("NNS") || posTag.equals("NNPS")) {
-					pluralNouns.add(word, passageIndex);
-				}
-				else if (posTag.equals("JJ")) {
-					adjectives.add(word, passageIndex);
-				}
-				else if (posTag.equals("RB")) {
-					adverbs.add(word, passageIndex);
-				}
-				else if (posTag.equals("VBG")) {
-					ingVerbs.add(word, passageIndex);
-				}
-				else if (posTag.equals("VBN")) {
-					edVerbs.add(word, passageIndex);
-				};
-				passageIndex++;
-			};
-		}
+	Passage (String originalText, Tagger tagger) {
+		this(new TaggedPassage(originalText, tagger));
+	}
+	
+	/** Constructs a new Passage object from text that has already been tagged,
+	 * for example from the TaggedPassageCache.
+	 * 
+	 * @param taggedText The words of the passage along with their tags
+	 */
+	Passage (TaggedText taggedText) {
+		this(new TaggedPassage(taggedText));
+	}
+	
+	/** Constructs a new play of a passage that has already been tagged. Only
+	 * the words replaced in this play take up any more memory.
+	 * 
+	 * @param base The tagged passage, which may be shared with other plays
+	 */
+	Passage (TaggedPassage base) {
+		this.base = base;
+		taggedText = base.getTaggedText();
+		originalText = base.getOriginalText();
+	}
+	
+	/**
+	 * Splits the supplied text into words and tags every word with its part of
+	 * speech, using the default Tagger.
+	 * @param originalText The text to tag
+	 * @return The words of the text along with their tags
+	 */
+	public static TaggedText tag(String originalText) {
+		return Tagger.getDefault().tag(originalText);
+	}
+	
+	/**
+	 * @return The tagged passage this is a play of
+	 */
+	public TaggedPassage getTaggedPassage() {
+		return base;
 	}
 	
 	/**
@@ -214,50 +114,161 @@ public class Passage {
 	 * @return The original, unmodified, text.
 	 */
 	public String getOriginalText() {
-		return reconstructText(originalWords);
+		return originalText;
 	}
 	
-	// Strings together the string representations Word objects into a cohesive
-	// string
-	private String reconstructText(ArrayList<Word> deconstructedText) {
-		StringBuilder updatedText = new StringBuilder();
-		for (Word word : deconstructedText) {
-			updatedText.append(word.toString());
+	/**
+	 * @return The modified text with the user supplied words, if any have been supplied
+	 */
+	public String getUpdatedText() {
+		StringBuilder updatedText = new StringBuilder(getUpdatedLength());
+		try {
+			renderUpdatedText(updatedText, null);
+		} catch (IOException e) {
+			// A StringBuilder never throws
+			throw new AssertionError(e);
 		}
 		return updatedText.toString();
 	}
 	
 	/**
-	 * @return The modified text with the user supplied words, if any have been supplied
+	 * @return The length of the modified text
 	 */
-	public String getUpdatedText() {
-		return reconstructText(modifiedWords);
+	public int getUpdatedLength() {
+		return originalText.length() + shiftBefore(size());
 	}
 	
 	/**
-	 * @return Gets the indexes of within the supplied ArrayList of Words of the
-	 * words that have been replaced. This is a 2-dimensional integer array,
-	 * n x 2, where n is the the number of words that have been replaced. The
-	 * first element of every row gives the place where the word starts in the
-	 * passage, and the second element give the place where the word ends.
-	 */
-	private int[][] getIndexesOfReplacements(ArrayList<Word> individualWords) {
-		Integer index = 0;
-		ArrayList<Integer[]> indexesList = new ArrayList<Integer[]>();
-		for (Word word : individualWords) {
-			if (word.isReplaced()) {
-				indexesList.add(new Integer[] {index, index + word.getText().length()});
+	 * Writes the modified text, without building it as a string first. A
+	 * Writer, a StringBuilder or a CharBuffer can all be written to.
+	 * @param out Where to write the text
+	 * @param listener Told where every replaced word is in the modified text as
+	 * it is written, or null
+	 * @throws IOException If out can't be written to
+	 */
+	public void renderUpdatedText(Appendable out, HighlightListener listener) throws IOException {
+		renderUpdatedText(out, 0, size(), listener);
+	}
+	
+	/**
+	 * Writes part of the modified text, from the start of one word up to the
+	 * start of another, so that a long passage can be shown a page at a time.
+	 * @param out Where to write the text
+	 * @param fromIndex The index of the first word to write
+	 * @param toIndex The index of the word to stop before, or size() to write
+	 * to the end of the passage
+	 * @param listener Told where every replaced word in the range is in the
+	 * whole modified text as it is written, or null
+	 * @throws IOException If out can't be written to
+	 */
+	public void renderUpdatedText(Appendable out, int fromIndex, int toIndex, HighlightListener listener)
+			throws IOException {
+		long startNanos = Metrics.startNanos();
+		long startBytes = Metrics.allocatedBytes();
+		// Copy the original text between the replaced words
+		int position = rangeStart(fromIndex);
+		int written = position + shiftBefore(fromIndex);
+		for (int slot = slotOf(fromIndex); slot < replacedCount && replacedIndexes[slot] < toIndex; slot++) {
+			int index = replacedIndexes[slot];
+			int start = taggedText.getStart(index);
+			out.append(originalText, position, start);
+			written += start - position;
+			String word = replacements[slot];
+			if (base.isCapitalized(index) && !word.isEmpty()) {
+				// If the original word was capitalized, then always capitalize the word
+				out.append(Character.toUpperCase(word.charAt(0)));
+				out.append(word, 1, word.length());
+			}
+			else {
+				out.append(word);
 			}
-			// The length method includes the trailing blank spaces.
-			index += word.length();
+			if (listener != null) {
+				listener.highlight(index, written, written + word.length());
+			}
+			written += word.length();
+			position = taggedText.getEnd(index);
 		}
-		// We will return an array, since it is a bit more straightforward to work with
-		int[][] indexes = new int[indexesList.size()][2];
-		for (int i = 0; i < indexesList.size(); i++) {
-			indexes[i][0] = indexesList.get(i)[0];
-			indexes[i][1] = indexesList.get(i)[1];
+		out.append(originalText, position, rangeStart(toIndex));
+		Metrics.RENDER.record(startNanos, startBytes);
+	}
+	
+	/**
+	 * Writes the original text, telling the listener where the words that have
+	 * been replaced are.
+	 * @param out Where to write the text
+	 * @param listener Told where every replaced word is in the original text as
+	 * it is written, or null
+	 * @throws IOException If out can't be written to
+	 */
+	public void renderOriginalText(Appendable out, HighlightListener listener) throws IOException {
+		renderOriginalText(out, 0, size(), listener);
+	}
+	
+	/**
+	 * Writes part of the original text, from the start of one word up to the
+	 * start of another.
+	 * @param out Where to write the text
+	 * @param fromIndex The index of the first word to write
+	 * @param toIndex The index of the word to stop before, or size() to write
+	 * to the end of the passage
+	 * @param listener Told where every replaced word in the range is in the
+	 * whole original text as it is written, or null
+	 * @throws IOException If out can't be written to
+	 */
+	public void renderOriginalText(Appendable out, int fromIndex, int toIndex, HighlightListener listener)
+			throws IOException {
+		int position = rangeStart(fromIndex);
+		for (int slot = slotOf(fromIndex); slot < replacedCount && replacedIndexes[slot] < toIndex; slot++) {
+			int index = replacedIndexes[slot];
+			int end = taggedText.getEnd(index);
+			out.append(originalText, position, end);
+			if (listener != null) {
+				listener.highlight(index, taggedText.getStart(index), end);
+			}
+			position = end;
 		}
-		return indexes;
+		out.append(originalText, position, rangeStart(toIndex));
+	}
+	
+	/*
+	 * Where the text of a range starting at the word at index begins. The first
+	 * range starts at the beginning of the text and the last one runs to the end.
+	 */
+	private int rangeStart(int index) {
+		if (index >= size()) {
+			return originalText.length();
+		}
+		return index == 0 ? 0 : taggedText.getStart(index);
+	}
+	
+	/**
+	 * Finds the word at a position in the original text, for example to split a
+	 * long passage into pages.
+	 * @param offset A position in the original text
+	 * @return The index of the first word that ends after the position, or size()
+	 * if there is none
+	 */
+	public int indexOfWordAt(int offset) {
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (taggedText.getEnd(middle) <= offset) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * @param index The index of a word in the passage
+	 * @return Where the word starts in the original text
+	 */
+	public int getOriginalStart(int index) {
+		return taggedText.getStart(index);
 	}
 	
 	/**
@@ -268,7 +279,18 @@ public class Passage {
 	 * the second element give the place where the word ends.
 	 */
 	public int[][] getIndexesOfReplacedWords() {
-		return getIndexesOfReplacements(modifiedWords);
+		long startNanos = Metrics.startNanos();
+		long startBytes = Metrics.allocatedBytes();
+		int[][] indexes = new int[replacedCount][2];
+		int shift = 0;
+		for (int i = 0; i < replacedCount; i++) {
+			int index = replacedIndexes[i];
+			indexes[i][0] = taggedText.getStart(index) + shift;
+			indexes[i][1] = indexes[i][0] + replacements[i].length();
+			shift += replacements[i].length() - (taggedText.getEnd(index) - taggedText.getStart(index));
+		}
+		Metrics.HIGHLIGHTS.record(startNanos, startBytes);
+		return indexes;
 	}
 	
 	/**
@@ -279,8 +301,66 @@ public class Passage {
 	 * the second element give the place where the word ends.
 	 */
 	public int[][] getIndexesOfOriginalWords() {
-		return getIndexesOfReplacements(originalWords);
+		long startNanos = Metrics.startNanos();
+		long startBytes = Metrics.allocatedBytes();
+		int[][] indexes = new int[replacedCount][2];
+		for (int i = 0; i < replacedCount; i++) {
+			indexes[i][0] = taggedText.getStart(replacedIndexes[i]);
+			indexes[i][1] = taggedText.getEnd(replacedIndexes[i]);
+		}
+		Metrics.HIGHLIGHTS.record(startNanos, startBytes);
+		return indexes;
 	}
+	
+	/**
+	 * @param index The index of a word in the passage
+	 * @return Where the word, or its replacement, starts in the modified text
+	 */
+	public int getUpdatedStart(int index) {
+		return taggedText.getStart(index) + shiftBefore(index);
+	}
+	
+	/*
+	 * Adds up the shifts of all the replaced words before the one at index
+	 */
+	private int shiftBefore(int index) {
+		int shift = 0;
+		for (int i = slotOf(index); i > 0; i -= i & -i) {
+			shift += shifts[i];
+		}
+		return shift;
+	}
+	
+	/*
+	 * The number of replaced words before the word at index, which is also
+	 * where that word is, or would go, in replacedIndexes.
+	 */
+	private int slotOf(int index) {
+		int low = 0;
+		int high = replacedCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (replacedIndexes[middle] < index) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * @param index The index of a word in the passage
+	 * @return Where the word, or its replacement, ends in the modified text
+	 */
+	public int getUpdatedEnd(int index) {
+		int slot = slotOf(index);
+		int length = slot < replacedCount && replacedIndexes[slot] == index ? replacements[slot].length()
+				: taggedText.getEnd(index) - taggedText.getStart(index);
+		return getUpdatedStart(index) + length;
+	}
+	
 	/**
 	 * Updates the words at the specified indexes with the supplied words.
 	 * @param replacementWords The new words that will overwrite the original words
@@ -289,42 +369,169 @@ public class Passage {
 	 * same word at the same time.
 	 */
 	public void replaceWords(String[] replacementWords, Integer[][] indexes) {
+		int[][] unboxed = new int[indexes.length][];
 		for (int i = 0; i < indexes.length; i++) {
+			unboxed[i] = new int[indexes[i].length];
 			for (int j = 0; j < indexes[i].length; j++) {
-				Word wordToUpdate = modifiedWords.get(indexes[i][j]);
-				wordToUpdate.setText(replacementWords[i]);
-				wordToUpdate.setReplaced(true);
-				// Also mark in original text if word has been replaced, so can
-				// get indexes for highlighting
-				originalWords.get(indexes[i][j]).setReplaced(true);
+				unboxed[i][j] = indexes[i][j];
+			}
+		}
+		replaceWords(replacementWords, unboxed);
+	}
+	
+	/**
+	 * Updates the words at the specified indexes with the supplied words.
+	 * @param replacementWords The new words that will overwrite the original words
+	 * @param indexes The indexes of the original words that should be replaced,
+	 * grouped the same way as the replacement words.
+	 */
+	public void replaceWords(String[] replacementWords, int[][] indexes) {
+		GameEvents.WordsReplaced event = new GameEvents.WordsReplaced();
+		event.begin();
+		long startNanos = Metrics.startNanos();
+		long startBytes = Metrics.allocatedBytes();
+		int occurrences = 0;
+		for (int[] group : indexes) {
+			occurrences += group.length;
+		}
+		// Words that were already replaced are changed in place. The others are
+		// sorted by index, then by the order they were given in, and merged in
+		// all at once, so the tree of shifts is only rebuilt once.
+		long[] added = new long[occurrences];
+		String[] addedWords = new String[occurrences];
+		int addedCount = 0;
+		for (int i = 0; i < indexes.length; i++) {
+			for (int index : indexes[i]) {
+				if (index < 0 || index >= size()) {
+					throw new IndexOutOfBoundsException("No word " + index + " in a passage of " + size());
+				}
+				int slot = slotOf(index);
+				if (slot < replacedCount && replacedIndexes[slot] == index) {
+					replaceAt(slot, replacementWords[i]);
+				}
+				else {
+					added[addedCount] = (long) index << 32 | addedCount;
+					addedWords[addedCount] = replacementWords[i];
+					addedCount++;
+				}
+			}
+		}
+		if (addedCount > 0) {
+			merge(added, addedWords, addedCount);
+		}
+		Metrics.REPLACE_WORDS.record(startNanos, startBytes);
+		event.finish(this, indexes.length, occurrences);
+	}
+	
+	private void replaceAt(int slot, String replacementWord) {
+		// Every word after this one moves by the change in length
+		int change = replacementWord.length() - replacements[slot].length();
+		replacements[slot] = replacementWord;
+		for (int i = slot + 1; i <= replacedCount; i += i & -i) {
+			shifts[i] += change;
+		}
+	}
+	
+	/*
+	 * Merges newly replaced words, sorted as in replaceWords, into the replaced
+	 * words, and builds the tree of shifts again. A word given more than once
+	 * gets the last replacement given for it.
+	 */
+	private void merge(long[] added, String[] addedWords, int addedCount) {
+		Arrays.sort(added, 0, addedCount);
+		int[] mergedIndexes = new int[replacedCount + addedCount];
+		String[] mergedWords = new String[mergedIndexes.length];
+		int count = 0;
+		int old = 0;
+		for (int a = 0; a < addedCount; a++) {
+			int index = (int) (added[a] >>> 32);
+			String word = addedWords[(int) added[a]];
+			while (old < replacedCount && replacedIndexes[old] < index) {
+				mergedIndexes[count] = replacedIndexes[old];
+				mergedWords[count++] = replacements[old++];
+			}
+			if (count > 0 && mergedIndexes[count - 1] == index) {
+				mergedWords[count - 1] = word;
+			}
+			else {
+				mergedIndexes[count] = index;
+				mergedWords[count++] = word;
+			}
+		}
+		while (old < replacedCount) {
+			mergedIndexes[count] = replacedIndexes[old];
+			mergedWords[count++] = replacements[old++];
+		}
+		replacedIndexes = count == mergedIndexes.length ? mergedIndexes : Arrays.copyOf(mergedIndexes, count);
+		replacements = count == mergedWords.length ? mergedWords : Arrays.copyOf(mergedWords, count);
+		replacedCount = count;
+		// Each entry is added to the next entry that covers it, in one pass
+		shifts = new int[count + 1];
+		for (int i = 1; i <= count; i++) {
+			int index = replacedIndexes[i - 1];
+			shifts[i] += replacements[i - 1].length() - (taggedText.getEnd(index) - taggedText.getStart(index));
+			int parent = i + (i & -i);
+			if (parent <= count) {
+				shifts[parent] += shifts[i];
 			}
 		}
 	}
 	
+	/**
+	 * @param index The index of a word in the passage
+	 * @return Whether the word has been replaced by the player
+	 */
+	public boolean isReplaced(int index) {
+		int slot = slotOf(index);
+		return slot < replacedCount && replacedIndexes[slot] == index;
+	}
+	
+	/**
+	 * @return How many words of the passage have been replaced by the player
+	 */
+	public int getReplacedCount() {
+		return replacedCount;
+	}
+	
+	/**
+	 * @return The number of words in the passage
+	 */
+	public int size() {
+		return base.size();
+	}
+	
+	/**
+	 * @return The approximate number of bytes of memory used by this play of
+	 * the passage, not counting the TaggedPassage, which may be shared.
+	 */
+	public long estimatedBytes() {
+		// The replaced indexes, the replacements, the shifts and every replacement string
+		long bytes = 40 + 16 + 4L * replacedIndexes.length + 16 + 4L * replacements.length + 16 + 4L * shifts.length;
+		for (String word : replacements) {
+			bytes += 40 + 2 * word.length();
+		}
+		return bytes;
+	}
+	
 	/**
 	 * Returns the requested PartOfSpeechTracker object.
 	 * @param partOfSpeech A valid part of speech from the PartOfSpeech Enum
 	 * @return A PartOfSpeechTracker objects that contains the indexes for the
 	 * specified PartOfSpeech
 	 */
-	public PartOfSpeechTracker getPartOfSpeech(PartOfSpeech partOfSpeech) {
-		switch(partOfSpeech) {
-		case SINGULAR_NOUN:
-			return singularNouns;
-		case PLURAL_NOUN:
-			return pluralNouns;
-		case ADJECTIVE:
-			return adjectives;
-		case ADVERB:
-			return adverbs;
-		case ED_VERB:
-			return edVerbs;
-		case ING_VERB:
-			return ingVerbs;
-		// This should never happen...
-		default:
-			throw new IllegalArgumentException("Invalid part of speech");
-		}
+	public TaggedPassage.PartOfSpeechTracker getPartOfSpeech(PartOfSpeech partOfSpeech) {
+		return base.getPartOfSpeech(partOfSpeech);
+	}
+	
+	/**
+	 * Works out which words the player will be asked to replace, for every
+	 * part of speech at once. The samplers are shared by every play of the
+	 * same TaggedPassage.
+	 * @param seed Seeds the sampling, so the same seed gives the same game
+	 * @return The plan of the game
+	 */
+	public GamePlan planGame(long seed) {
+		return base.planGame(seed);
 	}
 
 }
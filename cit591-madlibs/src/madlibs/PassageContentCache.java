@@ -0,0 +1,170 @@
+package madlibs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class keeps the text of the library passages in memory, so that the
+ * menu can show a passage the moment it is chosen. Entries are keyed by file
+ * name and remember when their file was last modified. A passage is read again
+ * if its file, or the packed library it came from, has changed since. A packed
+ * passage whose file has been changed after packing is read from the file.
+ *
+ * MadLib.makeMenu preloads every passage on a background thread. Lookups of a
+ * passage that is already in memory never wait for that thread, or for another
+ * passage being read.
+ *
+ */
+public class PassageContentCache {
+
+	private static PassageContentCache instance;
+
+	private final Path directory;
+	private final PackedCorpus library;
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final ExecutorService executor;
+
+	private static class Entry {
+		final String text;
+		final long modified;
+
+		Entry(String text, long modified) {
+			this.text = text;
+			this.modified = modified;
+		}
+	}
+
+	/**
+	 * @return The cache for the library in the working directory, which is
+	 * shared by the whole game
+	 */
+	public static synchronized PassageContentCache getInstance() {
+		if (instance == null) {
+			instance = new PassageContentCache(Paths.get(""), PackedCorpus.getLibrary());
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates an empty cache.
+	 * @param directory The directory the passage files are in
+	 * @param library Passages to take from the packed library instead of their
+	 * files, or null to always read the files
+	 */
+	PassageContentCache(Path directory, PackedCorpus library) {
+		this.directory = directory;
+		this.library = library;
+		executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "madlibs-passage-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Returns the text of a passage, reading it only if it is not in memory
+	 * or its file has changed.
+	 * @param fileName The file name of the passage, as in MenuEntry
+	 * @return The text of the passage
+	 * @throws IOException If the passage can't be read, for example because
+	 * the file does not exist
+	 */
+	public String get(String fileName) throws IOException {
+		boolean packed = library != null && library.isCurrent(fileName, directory);
+		Path file = packed ? directory.resolve(PackedCorpus.DEFAULT_FILE) : directory.resolve(fileName);
+		long modified = Files.getLastModifiedTime(file).toMillis();
+		Entry entry = entries.get(fileName);
+		if (entry != null && entry.modified == modified) {
+			return entry.text;
+		}
+		return load(fileName, file, packed, modified);
+	}
+
+	/*
+	 * Only one passage is read at a time, so that a passage asked for while
+	 * it is being preloaded is not read twice.
+	 */
+	private synchronized String load(String fileName, Path file, boolean packed, long modified) throws IOException {
+		Entry entry = entries.get(fileName);
+		if (entry != null && entry.modified == modified) {
+			return entry.text;
+		}
+		String text = packed ? library.getText(fileName).toString() : readText(file);
+		entries.put(fileName, new Entry(text, modified));
+		return text;
+	}
+
+	/*
+	 * Reads the file the same way as MadLib.readPassageFile, which leaves out
+	 * the line break at the end of the file.
+	 */
+	private static String readText(Path file) throws IOException {
+		String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		int end = text.length();
+		if (end > 0 && text.charAt(end - 1) == '\n') {
+			end--;
+		}
+		if (end > 0 && text.charAt(end - 1) == '\r') {
+			end--;
+		}
+		return text.substring(0, end);
+	}
+
+	/**
+	 * Returns the text of a passage without looking at the disk, so that it
+	 * can be shown at once. It may be out of date, which get will find out.
+	 * @param fileName The file name of the passage
+	 * @return The text of the passage, or null if it has not been read yet
+	 */
+	public String peek(String fileName) {
+		Entry entry = entries.get(fileName);
+		return entry == null ? null : entry.text;
+	}
+
+	/**
+	 * Does the same as get on a background thread.
+	 * @param fileName The file name of the passage
+	 * @return Completes with the text of the passage, or with the IOException
+	 * if it can't be read
+	 */
+	public CompletableFuture<String> getAsync(String fileName) {
+		CompletableFuture<String> result = new CompletableFuture<String>();
+		executor.execute(() -> {
+			try {
+				result.complete(get(fileName));
+			} catch (IOException | RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Reads passages into memory on a background thread, one after another.
+	 * Passages that can't be read are skipped, and are reported when they are
+	 * asked for.
+	 * @param fileNames The file names of the passages
+	 * @return Completes once every passage has been tried
+	 */
+	public CompletableFuture<Void> preload(Collection<String> fileNames) {
+		ArrayList<String> toLoad = new ArrayList<String>(fileNames);
+		return CompletableFuture.runAsync(() -> {
+			for (String fileName : toLoad) {
+				try {
+					get(fileName);
+				} catch (IOException e) {
+					// Left for get to report
+				}
+			}
+		}, executor);
+	}
+}
@@ -0,0 +1,74 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PassageContentCacheTest {
+
+	@TempDir
+	Path directory;
+
+	private void write(String fileName, String text, long modified) throws IOException {
+		Path file = directory.resolve(fileName);
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+	}
+
+	@Test
+	void modifiedFileTest() throws IOException {
+		write("story.txt", "Once upon a time.\r\n", 1000000);
+		PassageContentCache cache = new PassageContentCache(directory, null);
+		assertNull(cache.peek("story.txt"));
+		// The line break at the end is left out, as MadLib.readPassageFile does
+		String text = cache.get("story.txt");
+		assertEquals("Once upon a time.", text);
+		assertSame(text, cache.get("story.txt"));
+		assertSame(text, cache.peek("story.txt"));
+
+		write("story.txt", "The end.\n", 2000000);
+		// peek doesn't look at the file, get does
+		assertSame(text, cache.peek("story.txt"));
+		assertEquals("The end.", cache.get("story.txt"));
+		assertEquals("The end.", cache.peek("story.txt"));
+
+		assertThrows(NoSuchFileException.class, () -> cache.get("missing.txt"));
+	}
+
+	@Test
+	void changedPackedPassageTest() throws IOException {
+		write("story.txt", "Once upon a time.", 1000000);
+		Path file = directory.resolve("library.pack");
+		PackedCorpus.write(file, Arrays.asList(new MenuEntry("Story", "Anon", "story.txt", "classic")),
+			Arrays.asList("Once upon a time."), directory);
+		PassageContentCache cache = new PassageContentCache(directory, PackedCorpus.open(file));
+		assertEquals("Once upon a time.", cache.get("story.txt"));
+
+		// Edited after packing, so the file is read instead of the stale pack
+		write("story.txt", "Twice upon a time.", 2000000);
+		assertEquals("Twice upon a time.", cache.get("story.txt"));
+	}
+
+	@Test
+	void preloadTest() throws IOException, InterruptedException, ExecutionException {
+		write("one.txt", "One.", 1000000);
+		write("two.txt", "Two.", 1000000);
+		PassageContentCache cache = new PassageContentCache(directory, null);
+		cache.preload(Arrays.asList("one.txt", "missing.txt", "two.txt")).get();
+		assertEquals("One.", cache.peek("one.txt"));
+		assertEquals("Two.", cache.peek("two.txt"));
+		assertEquals("Two.", cache.getAsync("two.txt").get());
+		ExecutionException e = assertThrows(ExecutionException.class, () -> cache.getAsync("missing.txt").get());
+		assertTrue(e.getCause() instanceof NoSuchFileException);
+	}
+}
@@ -0,0 +1,248 @@
+package madlibs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class tags long texts, such as whole books, without ever holding more
+ * than one piece of the raw text besides the result. The text is read in small
+ * chunks and cut into segments of whole sentences. Every segment is tagged on
+ * its own and added to the end of a single TaggedText, so the tagger only ever
+ * sees a few thousand characters at a time.
+ *
+ * A segment ends at the first sentence boundary after segmentLength characters:
+ * white space that follows a full stop, question mark or exclamation mark, or
+ * that contains a blank line. The white space stays with the segment before it,
+ * so no characters of the original text are lost. Text with no sentence
+ * boundary is cut before a word once it is several segments long, and text
+ * with no white space at all is simply cut at that length, between characters.
+ *
+ * A SegmentListener is told about the words of every segment as soon as they
+ * are tagged, so that work such as ReservoirSampler.GamePlanner can finish
+ * together with the tagging instead of making another pass over the result.
+ *
+ */
+public class PassageReader {
+
+	// Long enough that cuts are rare, short enough for the tagger to handle quickly
+	public static final int DEFAULT_SEGMENT_LENGTH = 16 * 1024;
+	private static final int BUFFER_SIZE = 8192;
+	// A segment with no sentence boundary at all is cut at a word once it gets
+	// this much longer, and one with no white space is cut at this length
+	private static final int MAX_SEGMENT_FACTOR = 4;
+
+	private final Tagger tagger;
+	private final int segmentLength;
+
+	/**
+	 * Receives the words of every segment as soon as it has been tagged.
+	 */
+	public interface SegmentListener {
+		/**
+		 * @param segment The words of the segment. It must not be changed.
+		 * @param firstIndex The index of the first word of the segment in the
+		 * whole text, so word i of the segment is word firstIndex + i of the text
+		 */
+		void tagged(TaggedText segment, int firstIndex);
+	}
+
+	/**
+	 * Creates a new PassageReader with the default segment length.
+	 * @param tagger Tags every segment of the text
+	 */
+	public PassageReader(Tagger tagger) {
+		this(tagger, DEFAULT_SEGMENT_LENGTH);
+	}
+
+	/**
+	 * Creates a new PassageReader.
+	 * @param tagger Tags every segment of the text
+	 * @param segmentLength The smallest number of characters tagged at once,
+	 * except for the last segment
+	 */
+	public PassageReader(Tagger tagger, int segmentLength) {
+		if (segmentLength < 1) {
+			throw new IllegalArgumentException("Segment length must be positive: " + segmentLength);
+		}
+		this.tagger = tagger;
+		this.segmentLength = segmentLength;
+	}
+
+	/**
+	 * Reads and tags a UTF-8 text file.
+	 * @param file The file to read
+	 * @return The words of the whole file along with their tags
+	 * @throws IOException If the file can't be read
+	 */
+	public TaggedText read(Path file) throws IOException {
+		return read(file, null);
+	}
+
+	/**
+	 * Reads and tags a UTF-8 text file, telling a listener about every segment.
+	 * @param file The file to read
+	 * @param listener Told about the words of every segment, or null
+	 * @return The words of the whole file along with their tags
+	 * @throws IOException If the file can't be read
+	 */
+	public TaggedText read(Path file, SegmentListener listener) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return read(channel, listener);
+		}
+	}
+
+	/**
+	 * Reads and tags UTF-8 text from a channel, until the end of the channel.
+	 * Invalid bytes are replaced rather than rejected. The channel is not closed.
+	 * @param channel Where the text comes from
+	 * @return The words of the whole text along with their tags
+	 * @throws IOException If the channel can't be read
+	 */
+	public TaggedText read(ReadableByteChannel channel) throws IOException {
+		return read(channel, null);
+	}
+
+	/**
+	 * Reads and tags UTF-8 text from a channel, telling a listener about
+	 * every segment. The channel is not closed.
+	 * @param channel Where the text comes from
+	 * @param listener Told about the words of every segment, or null
+	 * @return The words of the whole text along with their tags
+	 * @throws IOException If the channel can't be read
+	 */
+	public TaggedText read(ReadableByteChannel channel, SegmentListener listener) throws IOException {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		// UTF-8 never decodes to more chars than bytes, so this can't overflow
+		CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		StringBuilder pending = new StringBuilder(segmentLength * 2);
+		TaggedText taggedText = new TaggedText();
+		boolean endOfInput = false;
+		while (!endOfInput) {
+			endOfInput = channel.read(bytes) < 0;
+			bytes.flip();
+			decoder.decode(bytes, chars, endOfInput);
+			if (endOfInput) {
+				decoder.flush(chars);
+			}
+			// Keep any partial character for the next read
+			bytes.compact();
+			chars.flip();
+			pending.append(chars);
+			chars.clear();
+
+			while (pending.length() >= segmentLength) {
+				int cut = findSentenceBoundary(pending, segmentLength);
+				if (cut < 0 && pending.length() >= segmentLength * MAX_SEGMENT_FACTOR) {
+					cut = findWordBoundary(pending);
+					if (cut < 0) {
+						cut = findCharacterBoundary(pending, segmentLength * MAX_SEGMENT_FACTOR);
+					}
+				}
+				if (cut < 0) {
+					break;
+				}
+				append(taggedText, tagger.tag(pending.substring(0, cut)), listener);
+				pending.delete(0, cut);
+			}
+		}
+		if (pending.length() > 0) {
+			append(taggedText, tagger.tag(pending.toString()), listener);
+		}
+		return taggedText;
+	}
+
+	/*
+	 * The listener gets the segment rather than the whole text, since reading
+	 * the words of the whole text would turn it into a String every time.
+	 */
+	private static void append(TaggedText taggedText, TaggedText segment, SegmentListener listener) {
+		int firstIndex = taggedText.size();
+		taggedText.append(segment);
+		if (listener != null) {
+			listener.tagged(segment, firstIndex);
+		}
+	}
+
+	/*
+	 * Returns where the first segment should end, at or after from, or -1 if
+	 * more text is needed to tell. The segment ends where the white space after
+	 * a sentence ends.
+	 */
+	static int findSentenceBoundary(CharSequence text, int from) {
+		int i = Math.max(from, 1);
+		while (i < text.length()) {
+			if (!Character.isWhitespace(text.charAt(i)) || Character.isWhitespace(text.charAt(i - 1))) {
+				i++;
+				continue;
+			}
+			int runStart = i;
+			int lineBreaks = 0;
+			while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+				if (text.charAt(i) == '\n') {
+					lineBreaks++;
+				}
+				i++;
+			}
+			if (i == text.length()) {
+				// The white space might continue in the next chunk
+				return -1;
+			}
+			if (lineBreaks >= 2 || endsSentence(text, runStart)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Whether the text just before position is the end of a sentence, allowing
+	 * for closing quotes and brackets after the punctuation.
+	 */
+	private static boolean endsSentence(CharSequence text, int position) {
+		int i = position - 1;
+		while (i > 0 && isCloser(text.charAt(i))) {
+			i--;
+		}
+		char c = text.charAt(i);
+		return c == '.' || c == '?' || c == '!';
+	}
+
+	private static boolean isCloser(char c) {
+		return c == '"' || c == '\'' || c == ')' || c == ']' || c == '\u201d' || c == '\u2019';
+	}
+
+	/*
+	 * Returns the start of the last word that has white space before it, or
+	 * -1 if the text is one enormous word.
+	 */
+	private static int findWordBoundary(CharSequence text) {
+		for (int i = text.length() - 1; i > 0; i--) {
+			if (!Character.isWhitespace(text.charAt(i)) && Character.isWhitespace(text.charAt(i - 1))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Returns limit, or one less if that would split a surrogate pair.
+	 */
+	static int findCharacterBoundary(CharSequence text, int limit) {
+		if (limit < text.length() && Character.isHighSurrogate(text.charAt(limit - 1))
+				&& Character.isLowSurrogate(text.charAt(limit))) {
+			return limit - 1;
+		}
+		return limit;
+	}
+}
@@ -0,0 +1,141 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+class PassageReaderTest {
+	static final String text = "  Peter didn't see the rabbits. They were hopping quickly\n" +
+			"through Mr. McGregor's enormous garden!\n\nChapter 2\n\n" +
+			"\u201cWhere is the caf\u00e9?\u201d asked Peter.  He was hungry. ";
+
+	/*
+	 * Hands out the bytes a few at a time, so characters are split between reads.
+	 */
+	private static class TrickleChannel implements ReadableByteChannel {
+		private final byte[] bytes;
+		private int position = 0;
+
+		TrickleChannel(String text) {
+			bytes = text.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public int read(ByteBuffer destination) {
+			if (position == bytes.length) {
+				return -1;
+			}
+			int count = Math.min(3, Math.min(destination.remaining(), bytes.length - position));
+			destination.put(bytes, position, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private LexiconTagger tagger() {
+		HashMap<String, String> lexicon = new HashMap<String, String>();
+		lexicon.put("peter", "NNP");
+		lexicon.put("did", "VBD");
+		lexicon.put("see", "VB");
+		lexicon.put("the", "DT");
+		lexicon.put("they", "PRP");
+		lexicon.put("were", "VBD");
+		lexicon.put("through", "IN");
+		return new LexiconTagger(lexicon, "test");
+	}
+
+	@Test
+	void sameAsTaggingAtOnceTest() throws IOException {
+		LexiconTagger tagger = tagger();
+		TaggedText expected = tagger.tag(text);
+		// Words longer than four segments are cut, and the longest here has 10 characters
+		for (int segmentLength : new int[] {3, 10, 40, PassageReader.DEFAULT_SEGMENT_LENGTH}) {
+			TaggedText actual = new PassageReader(tagger, segmentLength).read(new TrickleChannel(text));
+			assertEquals(expected.getText(), actual.getText());
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.getWord(i), actual.getWord(i));
+				assertEquals(expected.getTrailingBlanks(i), actual.getTrailingBlanks(i));
+			}
+		}
+	}
+
+	@Test
+	void sameTagsAsTaggingAtOnceTest() throws IOException {
+		// Short segments are cut after "Mr.", which changes the tag of the next
+		// word, but long segments always see whole sentences
+		LexiconTagger tagger = tagger();
+		TaggedText expected = tagger.tag(text);
+		TaggedText actual = new PassageReader(tagger).read(new TrickleChannel(text));
+		assertEquals(expected.getSentenceCount(), actual.getSentenceCount());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.getTag(i), actual.getTag(i));
+		}
+	}
+
+	@Test
+	void findSentenceBoundaryTest() {
+		assertEquals(32, PassageReader.findSentenceBoundary(text, 0));
+		assertEquals(99, PassageReader.findSentenceBoundary(text, 72));
+		// A blank line, and a question inside quotes
+		assertEquals(110, PassageReader.findSentenceBoundary(text, 100));
+		assertEquals(131, PassageReader.findSentenceBoundary(text, 111));
+		assertEquals(-1, PassageReader.findSentenceBoundary("No end in sight", 0));
+		// The white space might not be over yet
+		assertEquals(-1, PassageReader.findSentenceBoundary(text, 146));
+	}
+
+	@Test
+	void noWhiteSpaceTest() throws IOException {
+		// One enormous word of emoji, each a surrogate pair, starting at an odd
+		// position so the hard cut lands in the middle of one
+		StringBuilder word = new StringBuilder("x");
+		for (int i = 0; i < 5000; i++) {
+			word.append("\ud83d\ude00");
+		}
+		String text = word.toString();
+		LexiconTagger lexicon = tagger();
+		StringBuilder segments = new StringBuilder();
+		Tagger tagger = new Tagger() {
+			@Override
+			public TaggedText tag(String segment) {
+				assertTrue(segment.length() <= 40, "segment of " + segment.length());
+				assertFalse(Character.isHighSurrogate(segment.charAt(segment.length() - 1)));
+				assertFalse(Character.isLowSurrogate(segment.charAt(0)));
+				segments.append(segment);
+				return lexicon.tag(segment);
+			}
+
+			@Override
+			public String getVersion() {
+				return lexicon.getVersion();
+			}
+		};
+		TaggedText taggedText = new PassageReader(tagger, 10).read(new TrickleChannel(text));
+		assertEquals(text, segments.toString());
+		assertEquals(text, taggedText.getText());
+	}
+
+	@Test
+	void findCharacterBoundaryTest() {
+		String text = "ab\ud83d\ude00c";
+		assertEquals(2, PassageReader.findCharacterBoundary(text, 2));
+		assertEquals(2, PassageReader.findCharacterBoundary(text, 3));
+		assertEquals(4, PassageReader.findCharacterBoundary(text, 4));
+	}
+}
@@ -2,6 +2,13 @@ package madlibs;
 
 
 import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.jupiter.api.Test;
 
 class PassageTest {
@@ -38,6 +45,67 @@ class PassageTest {
 		int[][] expectedIndexes = new int[][] {{6, 14}, {20, 25}, {86, 94}}; 
 		assertArrayEquals(expectedIndexes, shortPassage.getIndexesOfOriginalWords());
 	}
+	@Test
+	void replaceWordTwiceTest() {
+		Passage shortPassage = new Passage(shortText);
+		shortPassage.replaceWords(new String[] {"Alice Cooper"}, new int[][] {{2}});
+		shortPassage.replaceWords(new String[] {"me", "Smart Car"}, new int[][] {{2}, {5}});
+		assertArrayEquals(new int[][] {{6, 8}, {14, 23}}, shortPassage.getIndexesOfReplacedWords());
+		assertEquals(14, shortPassage.getUpdatedStart(5));
+		assertEquals(24, shortPassage.getUpdatedStart(6));
+		assertEquals(28, shortPassage.getUpdatedEnd(6));
+		assertTrue(shortPassage.getUpdatedText().startsWith("To be me in a Smart Car that "));
+	}
+	@Test
+	void renderTest() throws IOException {
+		Passage shortPassage = new Passage(shortText);
+		shortPassage.replaceWords(new String[] {"me", "smart car"}, new int[][] {{0, 2}, {5}});
+		List<int[]> highlights = new ArrayList<>();
+		StringWriter out = new StringWriter();
+		shortPassage.renderUpdatedText(out, (index, start, end) -> highlights.add(new int[] {start, end}));
+		assertEquals(shortPassage.getUpdatedText(), out.toString());
+		assertEquals(out.toString().length(), shortPassage.getUpdatedLength());
+		assertArrayEquals(shortPassage.getIndexesOfReplacedWords(), highlights.toArray(new int[0][]));
+		assertTrue(out.toString().startsWith("Me be me in a smart car that "));
+		
+		highlights.clear();
+		StringBuilder original = new StringBuilder();
+		shortPassage.renderOriginalText(original, (index, start, end) -> highlights.add(new int[] {start, end}));
+		assertEquals(shortPassage.getOriginalText(), original.toString());
+		assertArrayEquals(shortPassage.getIndexesOfOriginalWords(), highlights.toArray(new int[0][]));
+	}
+	
+	@Test
+	void renderRangeTest() throws IOException {
+		Passage longPassage = new Passage(longText);
+		longPassage.replaceWords(new String[] {"rabbit", "ate"}, new int[][] {{0}, {7}});
+		// Rendering the passage in pieces gives the same text and highlights
+		int middle = longPassage.indexOfWordAt(100);
+		StringBuilder updated = new StringBuilder();
+		StringBuilder original = new StringBuilder();
+		List<int[]> highlights = new ArrayList<>();
+		longPassage.renderUpdatedText(updated, 0, middle, (index, start, end) -> highlights.add(new int[] {start, end}));
+		longPassage.renderUpdatedText(updated, middle, longPassage.size(),
+				(index, start, end) -> highlights.add(new int[] {start, end}));
+		assertEquals(longPassage.getUpdatedText(), updated.toString());
+		assertArrayEquals(longPassage.getIndexesOfReplacedWords(), highlights.toArray(new int[0][]));
+		longPassage.renderOriginalText(original, 0, middle, null);
+		assertEquals(longPassage.getOriginalStart(middle), original.length());
+		longPassage.renderOriginalText(original, middle, longPassage.size(), null);
+		assertEquals(longText, original.toString());
+	}
+	
+	@Test
+	void indexOfWordAtTest() {
+		Passage shortPassage = new Passage(shortText);
+		// "be" is at 3 to 5
+		assertEquals(1, shortPassage.indexOfWordAt(3));
+		assertEquals(1, shortPassage.indexOfWordAt(4));
+		assertEquals(2, shortPassage.indexOfWordAt(5));
+		assertEquals(0, shortPassage.indexOfWordAt(0));
+		assertEquals(shortPassage.size(), shortPassage.indexOfWordAt(shortText.length()));
+	}
+	
 	@Test
 	void getOriginalTextShortTest() {
 		Passage shortPassage = new Passage(shortText);
@@ -165,9 +233,88 @@ class PassageTest {
 		assertArrayEquals(expectedIndexes, longPassage.getPartOfSpeech(PartOfSpeech.ED_VERB).toFlatArray());
 	}
 	@Test
+	void getIndexGroupsTest() {
+		// Built by hand, so the tags don't depend on the parser
+		TaggedText taggedText = new TaggedText();
+		String[] words = {"The", "cat", "saw", "a", "dog", "and", "the", "cat", "ran", "."};
+		String[] tags = {"DT", "NN", "VBD", "DT", "NN", "CC", "DT", "NN", "VBD", "."};
+		for (int i = 0; i < words.length; i++) {
+			taggedText.add(words[i], tags[i], i < words.length - 2 ? " " : "");
+		}
+		Passage passage = new Passage(taggedText);
+		TaggedPassage.PartOfSpeechTracker nouns = passage.getPartOfSpeech(PartOfSpeech.SINGULAR_NOUN);
+		assertArrayEquals(new int[][] {{1, 7}, {4}}, nouns.getIndexGroups());
+		assertArrayEquals(new int[] {1, 4, 7}, nouns.getIndexes());
+		assertEquals(3, nouns.size());
+		assertEquals(2, nouns.getWordCount());
+	}
+	@Test
 	void getIndexesOfIngVerbsLongTest() {
 		Passage longPassage = new Passage(longText);
 		Integer[] expectedIndexes = {2, 8, 18, 35, 66, 95, 104, 107};
 		assertArrayEquals(expectedIndexes, longPassage.getPartOfSpeech(PartOfSpeech.ING_VERB).toFlatArray());
 	}
+	@Test
+	void sharedTaggedPassageTest() {
+		TaggedText taggedText = new TaggedText();
+		String[] words = {"The", "cat", "saw", "a", "dog", "."};
+		String[] tags = {"DT", "NN", "VBD", "DT", "NN", "."};
+		for (int i = 0; i < words.length; i++) {
+			taggedText.add(words[i], tags[i], i < words.length - 2 ? " " : "");
+		}
+		TaggedPassage base = new TaggedPassage(taggedText);
+		Passage first = new Passage(base);
+		Passage second = new Passage(base);
+		first.replaceWords(new String[] {"wizard"}, new int[][] {{1}});
+		second.replaceWords(new String[] {"pickle", "robot"}, new int[][] {{1}, {4}});
+		// Each play only sees its own words
+		assertEquals("The wizard saw a dog.", first.getUpdatedText());
+		assertEquals("The pickle saw a robot.", second.getUpdatedText());
+		assertEquals(1, first.getReplacedCount());
+		assertEquals(2, second.getReplacedCount());
+		assertEquals("The cat saw a dog.", new Passage(base).getUpdatedText());
+		assertSame(base.getPartOfSpeech(PartOfSpeech.SINGULAR_NOUN), first.getPartOfSpeech(PartOfSpeech.SINGULAR_NOUN));
+		// A play costs much less than the tagged passage
+		assertTrue(first.estimatedBytes() < base.estimatedBytes());
+	}
+	@Test
+	void sparseReplacementsTest() {
+		TaggedText taggedText = new TaggedText();
+		String[] words = new String[100000];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = "w" + i;
+			taggedText.add(words[i], "NN", " ");
+		}
+		Passage passage = new Passage(new TaggedPassage(taggedText));
+		long unplayed = passage.estimatedBytes();
+		// Batches in any order, replacing some words again, and one word twice in a batch
+		Random random = new Random(7);
+		for (int batch = 0; batch < 20; batch++) {
+			int[][] indexes = new int[3][];
+			String[] replacements = new String[3];
+			for (int i = 0; i < 3; i++) {
+				indexes[i] = new int[] {random.nextInt(words.length), random.nextInt(200)};
+				replacements[i] = "r" + batch + "x" + i;
+				words[indexes[i][0]] = replacements[i];
+				words[indexes[i][1]] = replacements[i];
+			}
+			passage.replaceWords(replacements, indexes);
+		}
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < words.length; i++) {
+			assertEquals(expected.length(), passage.getUpdatedStart(i));
+			expected.append(words[i]).append(' ');
+		}
+		assertEquals(expected.toString(), passage.getUpdatedText());
+		int replaced = 0;
+		for (int i = 0; i < words.length; i++) {
+			if (passage.isReplaced(i)) {
+				replaced++;
+				assertTrue(words[i].startsWith("r"));
+			}
+		}
+		assertEquals(passage.getReplacedCount(), replaced);
+		// The play grows with the words replaced, not with the passage
+		assertTrue(passage.estimatedBytes() - unplayed < 100 * replaced);
+	}
 }
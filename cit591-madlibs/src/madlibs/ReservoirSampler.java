@@ -0,0 +1,283 @@
+package madlibs;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * This class samples the words of one part of speech while they are still
+ * being found, for texts too long to keep every candidate until the end. It
+ * is the streaming version of WeightedSampler: words are grouped by their
+ * text, a word that appears more often is more likely to be chosen, and words
+ * are chosen until they cover desiredPercent of all the candidates or maxN
+ * words have been chosen.
+ *
+ * Every candidate draws a random number, and the key of a word is the largest
+ * number any of its occurrences drew. The largest of n uniform numbers is
+ * distributed like u^(1/n), so ordering the words by key is a weighted random
+ * order without replacement (Efraimidis and Spirakis). That is the same
+ * distribution WeightedSampler picks its rows from, one at a time. Only the
+ * maxN words with the largest keys can ever be chosen, so only they are kept.
+ * A word that is dropped had a key no larger than the smallest kept key,
+ * which never goes down, so if it comes back it is with the larger key drawn
+ * by that occurrence, and the words chosen are exactly the ones a full pass
+ * would choose.
+ *
+ * The memory used does not grow with the text:
+ *
+ * Each kept word keeps at most MAX_POSITIONS of its positions, a uniform
+ * sample of the ones seen since it was kept, so a very common word is only
+ * replaced in some of the places it appears.
+ *
+ * Occurrences of words that are not kept are counted in a small table of
+ * counters shared by all words (a count-min sketch). A word that comes back
+ * starts from that count, so its earlier occurrences still count towards
+ * desiredPercent. The table can only overstate a count, and only when it is
+ * crowded with many different words, so the counts of texts of a few thousand
+ * words are exact.
+ *
+ * The same seed and candidates give the same choice, but not the same one as
+ * WeightedSampler with that seed. When the whole text is available,
+ * WeightedSampler or a GamePlan should be used instead.
+ *
+ */
+public class ReservoirSampler {
+
+	// The most positions kept for a single word
+	static final int MAX_POSITIONS = 256;
+	// The size of the table of counters, which is COUNTER_ROWS rows of
+	// COUNTER_COLUMNS. The number of columns must be a power of two.
+	private static final int COUNTER_ROWS = 4;
+	private static final int COUNTER_COLUMNS = 4096;
+
+	private final double desiredPercent;
+	private final int maxN;
+	private final Random random;
+
+	// The kept words, in no particular order, with their keys, their
+	// occurrence counts, and a sample of the positions seen since they were kept
+	private final String[] words;
+	private final double[] keys;
+	private final int[] counts;
+	private final int[][] positions;
+	private final int[] seen;
+	private final HashMap<String, Integer> slotsByWord = new HashMap<String, Integer>();
+	private int size = 0;
+	// The slot with the smallest key, which is the next to be dropped
+	private int minSlot = -1;
+	private int candidateCount = 0;
+	// Occurrences of words that are not kept
+	private final int[][] counters = new int[COUNTER_ROWS][COUNTER_COLUMNS];
+
+	/**
+	 * Creates an empty sampler.
+	 * @param desiredPercent The fraction of all the candidates that the chosen
+	 * words should cover, as in WeightedSampler
+	 * @param maxN The most words to choose
+	 * @param seed Seeds the random numbers, for reproducibility purposes
+	 */
+	public ReservoirSampler(double desiredPercent, int maxN, long seed) {
+		if (maxN < 1) {
+			throw new IllegalArgumentException("At least one word must be allowed: " + maxN);
+		}
+		this.desiredPercent = desiredPercent;
+		this.maxN = maxN;
+		random = new Random(seed);
+		words = new String[maxN];
+		keys = new double[maxN];
+		counts = new int[maxN];
+		positions = new int[maxN][];
+		seen = new int[maxN];
+	}
+
+	/**
+	 * Considers one occurrence of a word.
+	 * @param word The original text of the word
+	 * @param index The index of the word in the passage
+	 */
+	public void offer(String word, int index) {
+		candidateCount++;
+		double key = random.nextDouble();
+		Integer kept = slotsByWord.get(word);
+		if (kept != null) {
+			int slot = kept;
+			counts[slot]++;
+			addPosition(slot, index);
+			if (key > keys[slot]) {
+				keys[slot] = key;
+				if (slot == minSlot) {
+					findMinSlot();
+				}
+			}
+			return;
+		}
+		int slot;
+		if (size < maxN) {
+			slot = size++;
+		}
+		else if (key > keys[minSlot]) {
+			// Drop the word with the smallest key to make room, remembering
+			// how often it was seen in case it comes back
+			slot = minSlot;
+			slotsByWord.remove(words[slot]);
+			raiseCount(words[slot], counts[slot]);
+		}
+		else {
+			raiseCount(word, estimateCount(word) + 1);
+			return;
+		}
+		words[slot] = word;
+		keys[slot] = key;
+		counts[slot] = estimateCount(word) + 1;
+		if (positions[slot] == null) {
+			positions[slot] = new int[4];
+		}
+		seen[slot] = 0;
+		addPosition(slot, index);
+		slotsByWord.put(word, slot);
+		findMinSlot();
+	}
+
+	/*
+	 * Keeps a uniform sample of the positions, replacing a random one once
+	 * there are MAX_POSITIONS of them (reservoir sampling).
+	 */
+	private void addPosition(int slot, int index) {
+		int n = seen[slot]++;
+		if (n < MAX_POSITIONS) {
+			if (n == positions[slot].length) {
+				positions[slot] = Arrays.copyOf(positions[slot], Math.min(n * 2, MAX_POSITIONS));
+			}
+			positions[slot][n] = index;
+		}
+		else {
+			int replaced = random.nextInt(n + 1);
+			if (replaced < MAX_POSITIONS) {
+				positions[slot][replaced] = index;
+			}
+		}
+	}
+
+	/*
+	 * A linear scan, since maxN is only a handful of words.
+	 */
+	private void findMinSlot() {
+		minSlot = 0;
+		for (int slot = 1; slot < size; slot++) {
+			if (keys[slot] < keys[minSlot]) {
+				minSlot = slot;
+			}
+		}
+	}
+
+	/*
+	 * Records the count of a word that is not kept. Only the counters that are
+	 * below the count are raised, which keeps the overstatement of other
+	 * words' counts as small as possible. Counters are never lowered, since
+	 * other words may share them.
+	 */
+	private void raiseCount(String word, int count) {
+		for (int row = 0; row < COUNTER_ROWS; row++) {
+			int column = column(word, row);
+			counters[row][column] = Math.max(counters[row][column], count);
+		}
+	}
+
+	/*
+	 * Returns at least the number of times a word that is not kept has been seen.
+	 */
+	private int estimateCount(String word) {
+		int count = Integer.MAX_VALUE;
+		for (int row = 0; row < COUNTER_ROWS; row++) {
+			count = Math.min(count, counters[row][column(word, row)]);
+		}
+		return count;
+	}
+
+	private static int column(String word, int row) {
+		// A different odd multiplier for every row gives independent columns
+		int hash = word.hashCode() * (0x9e3779b1 + 2 * row);
+		return (hash ^ (hash >>> 16)) & (COUNTER_COLUMNS - 1);
+	}
+
+	/**
+	 * @return How many candidates have been offered
+	 */
+	public int getCandidateCount() {
+		return candidateCount;
+	}
+
+	/**
+	 * Chooses the words from the candidates offered so far. The first word is
+	 * always chosen if there are any, and then words are chosen in order of
+	 * their keys until desiredPercent of the candidates is covered or maxN
+	 * words have been chosen.
+	 * @return The kept positions of every chosen word in ascending order, one
+	 * row per word, in the order the words were chosen
+	 */
+	public int[][] sampleIndexes() {
+		Integer[] order = new Integer[size];
+		for (int slot = 0; slot < size; slot++) {
+			order[slot] = slot;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(keys[b], keys[a]));
+		int[][] sampled = new int[size][];
+		int count = 0;
+		double remaining = desiredPercent;
+		while (count < size && (count == 0 || remaining > 0)) {
+			int slot = order[count];
+			int[] rowPositions = Arrays.copyOf(positions[slot], Math.min(seen[slot], MAX_POSITIONS));
+			Arrays.sort(rowPositions);
+			sampled[count++] = rowPositions;
+			remaining -= (double) counts[slot] / candidateCount;
+		}
+		return Arrays.copyOf(sampled, count);
+	}
+
+	/**
+	 * Plans a whole game while a text is being read by a PassageReader, with
+	 * one ReservoirSampler for every PartOfSpeech. The plan is ready as soon
+	 * as the last segment has been tagged.
+	 */
+	public static class GamePlanner implements PassageReader.SegmentListener {
+		private final long seed;
+		private final ReservoirSampler[] samplers;
+
+		/**
+		 * Creates a planner for one game.
+		 * @param seed Seeds the sampling, so the same seed and text give the
+		 * same game
+		 */
+		public GamePlanner(long seed) {
+			this.seed = seed;
+			Random random = new Random(seed);
+			PartOfSpeech[] partsOfSpeech = PartOfSpeech.values();
+			samplers = new ReservoirSampler[partsOfSpeech.length];
+			for (PartOfSpeech pos : partsOfSpeech) {
+				samplers[pos.ordinal()] = new ReservoirSampler(pos.getDesiredPercent(),
+					MadLib.MAX_WORDS_PER_PART_OF_SPEECH, random.nextLong());
+			}
+		}
+
+		@Override
+		public void tagged(TaggedText segment, int firstIndex) {
+			for (int i = 0; i < segment.size(); i++) {
+				PartOfSpeech pos = PartOfSpeech.fromPennTag(segment.getTag(i));
+				if (pos != null) {
+					samplers[pos.ordinal()].offer(segment.getWord(i), firstIndex + i);
+				}
+			}
+		}
+
+		/**
+		 * @return The plan of the game, from the words tagged so far
+		 */
+		public GamePlan getPlan() {
+			int[][][] indexes = new int[samplers.length][][];
+			for (int i = 0; i < samplers.length; i++) {
+				indexes[i] = samplers[i].sampleIndexes();
+			}
+			return new GamePlan(indexes, seed);
+		}
+	}
+}
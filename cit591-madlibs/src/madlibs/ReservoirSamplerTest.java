@@ -0,0 +1,225 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ReservoirSamplerTest {
+
+	// A word for every candidate: word i appears i + 1 times, scattered
+	private static List<String> candidates(int distinctWords, long seed) {
+		ArrayList<String> words = new ArrayList<String>();
+		for (int w = 0; w < distinctWords; w++) {
+			for (int i = 0; i <= w; i++) {
+				words.add("word" + w);
+			}
+		}
+		Collections.shuffle(words, new Random(seed));
+		return words;
+	}
+
+	@Test
+	void groupsByWordTest() {
+		ReservoirSampler sampler = new ReservoirSampler(1.0, 10, 1);
+		String[] words = {"cat", "dog", "cat", "hat", "cat", "dog"};
+		for (int i = 0; i < words.length; i++) {
+			sampler.offer(words[i], i * 2);
+		}
+		assertEquals(6, sampler.getCandidateCount());
+		int[][] sampled = sampler.sampleIndexes();
+		// All of the candidates are wanted, so every word is chosen
+		assertEquals(3, sampled.length);
+		HashSet<String> rows = new HashSet<String>();
+		for (int[] row : sampled) {
+			rows.add(Arrays.toString(row));
+		}
+		assertEquals(new HashSet<String>(Arrays.asList("[0, 4, 8]", "[2, 10]", "[6]")), rows);
+	}
+
+	@Test
+	void sameWordsAsKeepingEverythingTest() {
+		// Keeping only maxN words must choose the same words as working out the
+		// key of every word from all of its occurrences
+		for (long seed = 0; seed < 50; seed++) {
+			List<String> words = candidates(60, seed);
+			ReservoirSampler sampler = new ReservoirSampler(1.0, 5, seed);
+			Random random = new Random(seed);
+			HashMap<String, Double> keys = new HashMap<String, Double>();
+			HashMap<String, Integer> firsts = new HashMap<String, Integer>();
+			for (int i = 0; i < words.size(); i++) {
+				sampler.offer(words.get(i), i);
+				keys.merge(words.get(i), random.nextDouble(), Math::max);
+				firsts.putIfAbsent(words.get(i), i);
+			}
+			ArrayList<String> byKey = new ArrayList<String>(keys.keySet());
+			byKey.sort((a, b) -> Double.compare(keys.get(b), keys.get(a)));
+			int[][] sampled = sampler.sampleIndexes();
+			assertEquals(5, sampled.length);
+			for (int i = 0; i < sampled.length; i++) {
+				// Every row holds positions of the expected word, ending with its last occurrence
+				String expected = byKey.get(i);
+				for (int index : sampled[i]) {
+					assertEquals(expected, words.get(index), "seed " + seed);
+				}
+				assertEquals(words.lastIndexOf(expected), sampled[i][sampled[i].length - 1]);
+			}
+		}
+	}
+
+	@Test
+	void weightedByOccurrencesTest() {
+		// A word that appears 9 times should be chosen first about 9 times in 10
+		int chosen = 0;
+		int trials = 2000;
+		for (int seed = 0; seed < trials; seed++) {
+			ReservoirSampler sampler = new ReservoirSampler(0.01, 1, seed);
+			for (int i = 0; i < 10; i++) {
+				sampler.offer(i == 4 ? "rare" : "common", i);
+			}
+			if (sampler.sampleIndexes()[0].length > 1) {
+				chosen++;
+			}
+		}
+		assertEquals(0.9, (double) chosen / trials, 0.03);
+	}
+
+	@Test
+	void sameDistributionAsWeightedSamplerTest() {
+		// Words that appear 6, 3 and 1 times. Wanting all of the candidates,
+		// WeightedSampler picks every row in proportion to the remaining
+		// weight, so the ordered pairs of words chosen should match.
+		int[][] rows = {{0, 2, 4, 6, 8, 9}, {1, 3, 7}, {5}};
+		String[] words = new String[10];
+		for (int row = 0; row < rows.length; row++) {
+			for (int index : rows[row]) {
+				words[index] = "word" + row;
+			}
+		}
+		WeightedSampler weighted = new WeightedSampler(rows);
+		int trials = 20000;
+		int[][] weightedPairs = new int[rows.length][rows.length];
+		int[][] reservoirPairs = new int[rows.length][rows.length];
+		// The first numbers of Randoms with neighbouring seeds are alike, so
+		// the seeds are spread out the way GamePlan does it
+		Random seeds = new Random(1);
+		for (int trial = 0; trial < trials; trial++) {
+			long seed = seeds.nextLong();
+			int[][] fromWeighted = weighted.sampleIndexes(1.0, seed, 2);
+			weightedPairs[rowOf(words, fromWeighted[0])][rowOf(words, fromWeighted[1])]++;
+			ReservoirSampler sampler = new ReservoirSampler(1.0, 2, seed);
+			for (int i = 0; i < words.length; i++) {
+				sampler.offer(words[i], i);
+			}
+			int[][] fromReservoir = sampler.sampleIndexes();
+			reservoirPairs[rowOf(words, fromReservoir[0])][rowOf(words, fromReservoir[1])]++;
+		}
+		for (int first = 0; first < rows.length; first++) {
+			for (int second = 0; second < rows.length; second++) {
+				assertEquals((double) weightedPairs[first][second] / trials,
+					(double) reservoirPairs[first][second] / trials, 0.015, first + " then " + second);
+			}
+		}
+		// Six in ten, and then three of the remaining four
+		assertEquals(0.45, (double) reservoirPairs[0][1] / trials, 0.015);
+	}
+
+	/*
+	 * A word that was dropped and came back only has its later positions, so
+	 * the row is told by its word.
+	 */
+	private static int rowOf(String[] words, int[] row) {
+		return words[row[0]].charAt(4) - '0';
+	}
+
+	@Test
+	void countsWordsThatComeBackTest() {
+		// Only three words are kept at a time, so most words are dropped and
+		// some come back. Their earlier occurrences must still count, so the
+		// words are chosen until they cover desiredPercent and no further.
+		for (long seed = 0; seed < 200; seed++) {
+			List<String> words = candidates(60, seed);
+			ReservoirSampler sampler = new ReservoirSampler(0.05, 3, seed);
+			HashMap<String, Integer> counts = new HashMap<String, Integer>();
+			for (int i = 0; i < words.size(); i++) {
+				sampler.offer(words.get(i), i);
+				counts.merge(words.get(i), 1, Integer::sum);
+			}
+			int[][] sampled = sampler.sampleIndexes();
+			double covered = 0;
+			for (int i = 0; i < sampled.length; i++) {
+				assertTrue(covered < 0.05, "seed " + seed + " chose too many words");
+				covered += (double) counts.get(words.get(sampled[i][0])) / words.size();
+			}
+			assertTrue(covered >= 0.05 || sampled.length == 3, "seed " + seed + " chose too few words");
+		}
+	}
+
+	@Test
+	void maxPositionsTest() {
+		ReservoirSampler sampler = new ReservoirSampler(0.5, 5, 7);
+		for (int i = 0; i < 10000; i++) {
+			sampler.offer("common", i);
+		}
+		int[][] sampled = sampler.sampleIndexes();
+		assertEquals(1, sampled.length);
+		int[] row = sampled[0];
+		assertEquals(ReservoirSampler.MAX_POSITIONS, row.length);
+		// Sorted, all different, and spread over the whole text rather than the start
+		for (int i = 1; i < row.length; i++) {
+			assertTrue(row[i] > row[i - 1]);
+		}
+		assertTrue(row[row.length - 1] > 5000);
+	}
+
+	@Test
+	void desiredPercentTest() {
+		ReservoirSampler empty = new ReservoirSampler(0.2, 5, 3);
+		assertEquals(0, empty.sampleIndexes().length);
+		// Ten different words, so 20% of the candidates is two words
+		ReservoirSampler sampler = new ReservoirSampler(0.2, 5, 3);
+		for (int i = 0; i < 10; i++) {
+			sampler.offer("word" + i, i);
+		}
+		assertEquals(2, sampler.sampleIndexes().length);
+	}
+
+	@Test
+	void planWhileReadingTest() throws IOException {
+		HashMap<String, String> lexicon = new HashMap<String, String>();
+		lexicon.put("the", "DT");
+		lexicon.put("cat", "NN");
+		lexicon.put("cats", "NNS");
+		lexicon.put("sat", "VBD");
+		lexicon.put("quietly", "RB");
+		LexiconTagger tagger = new LexiconTagger(lexicon, "test");
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			text.append(i % 3 == 0 ? "The cats sat quietly. " : "The cat sat. ");
+		}
+		ReservoirSampler.GamePlanner planner = new ReservoirSampler.GamePlanner(11);
+		TaggedText taggedText = new PassageReader(tagger, 100).read(Channels.newChannel(
+			new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8))), planner);
+		GamePlan plan = planner.getPlan();
+		assertEquals(11, plan.getSeed());
+		// Only one word of each of these, and the segments don't lose any of them
+		assertArrayEquals(new int[][] {new TaggedPassage(taggedText).getPartOfSpeech(PartOfSpeech.SINGULAR_NOUN)
+			.getIndexes()}, plan.getIndexes(PartOfSpeech.SINGULAR_NOUN));
+		for (int index : plan.getIndexes(PartOfSpeech.ADVERB)[0]) {
+			assertEquals("quietly", taggedText.getWord(index));
+		}
+		assertEquals(0, plan.getWordCount(PartOfSpeech.ADJECTIVE));
+		assertEquals(PartOfSpeech.SINGULAR_NOUN, plan.nextPartOfSpeech(null));
+	}
+}
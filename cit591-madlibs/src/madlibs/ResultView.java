@@ -0,0 +1,248 @@
+package madlibs;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * ResultView class shows the updated and original passages side by side at the
+ * end of a game, with the replaced words highlighted. The styled documents are
+ * built on a background thread, each with a single insert, and a long passage
+ * is split into pages of whole words so that only one page is ever laid out.
+ * The result appears quickly and scrolls smoothly even for a whole book.
+ */
+public class ResultView extends JPanel implements ActionListener {
+
+    private static final long serialVersionUID = 1L;
+
+    // About how many characters of the original text are shown on one page
+    static final int PAGE_CHARS = 20000;
+
+    private static final SimpleAttributeSet TITLE = new SimpleAttributeSet();
+    private static final SimpleAttributeSet HIGHLIGHT = new SimpleAttributeSet();
+    static {
+        StyleConstants.setBold(TITLE, true);
+        StyleConstants.setBackground(HIGHLIGHT, Color.LIGHT_GRAY);
+    }
+
+    private JTextPane updatedPane = newPane();
+    private JTextPane originalPane = newPane();
+    private JScrollPane scrollPane;
+    private JPanel pageBar = new JPanel(new BorderLayout());
+    private JButton previousButton = new JButton("< PREVIOUS PAGE");
+    private JButton nextButton = new JButton("NEXT PAGE >");
+    private JLabel pageLabel = new JLabel("", SwingConstants.CENTER);
+
+    private Passage passage;
+    // The index of the first word of every page, followed by the number of words
+    private int[] pageStarts;
+    private int page;
+    private SwingWorker<StyledDocument[], Void> loader;
+
+    /**
+     * This constructor lays out the two text panes and the page buttons, which
+     * are only shown for passages longer than one page.
+     */
+    public ResultView() {
+        setLayout(new BorderLayout());
+        JPanel resultPanel = new WidthTrackingPanel();
+        resultPanel.setLayout(new GridLayout(0, 2));
+        resultPanel.add(updatedPane);
+        resultPanel.add(originalPane);
+        scrollPane = new JScrollPane(resultPanel);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        add(scrollPane, BorderLayout.CENTER);
+
+        pageBar.add(previousButton, BorderLayout.WEST);
+        pageBar.add(pageLabel, BorderLayout.CENTER);
+        pageBar.add(nextButton, BorderLayout.EAST);
+        pageBar.setVisible(false);
+        add(pageBar, BorderLayout.SOUTH);
+        previousButton.addActionListener(this);
+        nextButton.addActionListener(this);
+    }
+
+    private static JTextPane newPane() {
+        JTextPane pane = new JTextPane();
+        pane.setEditable(false);
+        pane.setMargin(new Insets(4, 4, 4, 4));
+        return pane;
+    }
+
+    /*
+     * Lets the text panes wrap to the width of the window, instead of growing
+     * sideways, while scrolling up and down.
+     */
+    private static class WidthTrackingPanel extends JPanel implements Scrollable {
+        private static final long serialVersionUID = 1L;
+
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return 16;
+        }
+
+        public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+        }
+
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+    }
+
+    /**
+     * showPassage method shows the first page of a played passage. Must be
+     * called on the event dispatch thread.
+     * @param passage The passage, which must not be changed while it is shown
+     */
+    public void showPassage(Passage passage) {
+        this.passage = passage;
+        pageStarts = findPages(passage, PAGE_CHARS);
+        pageBar.setVisible(pageStarts.length > 2);
+        showPage(0);
+    }
+
+    /**
+     * findPages method splits a passage into pages of whole words, each
+     * starting about pageChars characters of the original text after the last.
+     * @param passage The passage to split
+     * @param pageChars About how long a page should be
+     * @return The index of the first word of every page, followed by the
+     * number of words in the passage. An empty passage has one empty page.
+     */
+    static int[] findPages(Passage passage, int pageChars) {
+        int[] starts = new int[16];
+        int count = 1;
+        int index = 0;
+        while (index < passage.size() || count == 1) {
+            if (index < passage.size()) {
+                // The word that crosses the page boundary starts the next page
+                int next = passage.indexOfWordAt(passage.getOriginalStart(index) + pageChars);
+                index = Math.max(index + 1, next);
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            starts[count++] = index;
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    /*
+     * Builds the documents for a page in the background and shows them when
+     * they are ready. Any page still being built is no longer wanted.
+     */
+    private void showPage(int newPage) {
+        if (loader != null) {
+            loader.cancel(false);
+        }
+        page = newPage;
+        previousButton.setEnabled(false);
+        nextButton.setEnabled(false);
+        pageLabel.setText("Loading page " + (page + 1) + " of " + (pageStarts.length - 1) + "...");
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        Passage shown = passage;
+        int from = pageStarts[page];
+        int to = pageStarts[page + 1];
+        loader = new SwingWorker<StyledDocument[], Void>() {
+            @Override
+            protected StyledDocument[] doInBackground() throws IOException, BadLocationException {
+                GameEvents.ResultRendered event = new GameEvents.ResultRendered();
+                event.begin();
+                StyledDocument[] documents = new StyledDocument[] {
+                    buildDocument("Updated Passage:  \n\n", shown, true, from, to),
+                    buildDocument("Original Passage: \n\n", shown, false, from, to) };
+                event.finish("window", shown.getOriginalText(), documents[0].getLength() + documents[1].getLength(),
+                        shown.getReplacedCount());
+                return documents;
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    StyledDocument[] documents = get();
+                    updatedPane.setDocument(documents[0]);
+                    originalPane.setDocument(documents[1]);
+                    scrollPane.getViewport().setViewPosition(new Point(0, 0));
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(ResultView.this, "The result could not be shown: " + cause);
+                }
+                pageLabel.setText("Page " + (page + 1) + " of " + (pageStarts.length - 1));
+                previousButton.setEnabled(page > 0);
+                nextButton.setEnabled(page < pageStarts.length - 2);
+            }
+        };
+        loader.execute();
+    }
+
+    /**
+     * buildDocument method renders one page of the passage into a new styled
+     * document. The document isn't shown yet, so this can run on any thread.
+     * @param title A title to display before the text
+     * @param passage The passage to render
+     * @param updated Whether to render the updated text rather than the original
+     * @param from The index of the first word of the page
+     * @param to The index of the first word of the next page
+     * @return The document, with the title and the replaced words styled
+     */
+    static StyledDocument buildDocument(String title, Passage passage, boolean updated, int from, int to)
+            throws IOException, BadLocationException {
+        int pageStart = from == 0 ? 0 : updated ? passage.getUpdatedStart(from) : passage.getOriginalStart(from);
+        int offset = title.length() - pageStart;
+        StringBuilder text = new StringBuilder(title);
+        // The highlights are collected while the text is rendered
+        List<int[]> highlights = new ArrayList<int[]>();
+        Passage.HighlightListener listener = (index, start, end) -> highlights.add(new int[] {offset + start, offset + end});
+        if (updated) {
+            passage.renderUpdatedText(text, from, to, listener);
+        } else {
+            passage.renderOriginalText(text, from, to, listener);
+        }
+
+        // The whole page goes in with one insert, then the styles are applied
+        // before any view is listening to the document
+        DefaultStyledDocument document = new DefaultStyledDocument();
+        document.insertString(0, text.toString(), null);
+        document.setCharacterAttributes(0, title.length(), TITLE, false);
+        for (int[] highlight : highlights) {
+            document.setCharacterAttributes(highlight[0], highlight[1] - highlight[0], HIGHLIGHT, false);
+        }
+        return document;
+    }
+
+    /**
+     * Responds to the page buttons.
+     */
+    public void actionPerformed(ActionEvent evt) {
+        if (evt.getSource() == previousButton && page > 0) {
+            showPage(page - 1);
+        } else if (evt.getSource() == nextButton && page < pageStarts.length - 2) {
+            showPage(page + 1);
+        }
+    }
+}
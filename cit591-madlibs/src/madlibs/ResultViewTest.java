@@ -0,0 +1,47 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+
+import org.junit.jupiter.api.Test;
+
+class ResultViewTest {
+
+	@Test
+	void findPagesTest() {
+		Passage passage = new Passage(PassageTest.longText);
+		int[] pages = ResultView.findPages(passage, 100);
+		assertEquals(0, pages[0]);
+		assertEquals(passage.size(), pages[pages.length - 1]);
+		for (int i = 1; i < pages.length; i++) {
+			assertTrue(pages[i] > pages[i - 1]);
+			// No page is much longer than asked for
+			int end = i < pages.length - 1 ? passage.getOriginalStart(pages[i]) : PassageTest.longText.length();
+			assertTrue(end - passage.getOriginalStart(pages[i - 1]) <= 100 + 20);
+		}
+		assertArrayEquals(new int[] {0, passage.size()}, ResultView.findPages(passage, 1 << 20));
+	}
+
+	@Test
+	void buildDocumentTest() throws Exception {
+		Passage passage = new Passage(PassageTest.shortText);
+		passage.replaceWords(new String[] {"me", "smart car"}, new int[][] {{0, 2}, {5}});
+		int[] pages = ResultView.findPages(passage, 30);
+		assertTrue(pages.length > 3);
+		// The second page starts somewhere after the first replaced words
+		StyledDocument document = ResultView.buildDocument("Title\n", passage, true, pages[1], pages[2]);
+		StringBuilder expected = new StringBuilder("Title\n");
+		passage.renderUpdatedText(expected, pages[1], pages[2], null);
+		assertEquals(expected.toString(), document.getText(0, document.getLength()));
+		assertTrue(StyleConstants.isBold(document.getCharacterElement(0).getAttributes()));
+
+		document = ResultView.buildDocument("Title\n", passage, true, pages[0], pages[1]);
+		String text = document.getText(0, document.getLength());
+		int smart = text.indexOf("smart car");
+		assertTrue(smart > 0);
+		assertNotNull(document.getCharacterElement(smart).getAttributes().getAttribute(StyleConstants.Background));
+		assertNull(document.getCharacterElement(smart - 2).getAttributes().getAttribute(StyleConstants.Background));
+	}
+}
@@ -0,0 +1,292 @@
+package madlibs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * This class holds the games in progress on MadLibServer. It is split into
+ * stripes, each with its own lock, so that requests for different games rarely
+ * wait for each other.
+ *
+ * The store is bounded in two ways. Every stripe has an equal share of a
+ * memory budget, based on GameSession.estimatedBytes, and drops its least
+ * recently used games when it goes over. A game bigger than a whole stripe's
+ * share is refused, since keeping it would leave the stripe over budget. Games that have not been used for
+ * longer than the idle time are dropped when they are next looked up, or by
+ * sweep, which the server runs regularly. Abandoned games therefore never
+ * pile up.
+ *
+ */
+public class SessionStore {
+
+	// A power of two, so the stripe can be picked with a mask
+	private static final int STRIPES = 16;
+
+	private final Stripe[] stripes;
+	private final long stripeBudget;
+	private final long idleMillis;
+	private final LongSupplier clock;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+
+	private static class Entry {
+		final GameSession session;
+		final long bytes;
+		long lastAccess;
+
+		Entry(GameSession session, long bytes, long lastAccess) {
+			this.session = session;
+			this.bytes = bytes;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/*
+	 * One part of the store. The map is kept in access order, so the least
+	 * recently used game is always first.
+	 */
+	private static class Stripe {
+		final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		long bytes = 0;
+	}
+
+	/**
+	 * Creates a new, empty store.
+	 * @param maxBytes The most memory that the games should use altogether
+	 * @param idleMillis How long a game can go unused before it is dropped
+	 */
+	public SessionStore(long maxBytes, long idleMillis) {
+		this(maxBytes, idleMillis, System::currentTimeMillis, STRIPES);
+	}
+
+	/*
+	 * The clock and the number of stripes can be replaced by tests. The number
+	 * of stripes must be a power of two.
+	 */
+	SessionStore(long maxBytes, long idleMillis, LongSupplier clock, int stripeCount) {
+		if (maxBytes <= 0 || idleMillis <= 0) {
+			throw new IllegalArgumentException("The size and idle time must be positive");
+		}
+		stripes = new Stripe[stripeCount];
+		stripeBudget = Math.max(1, maxBytes / stripeCount);
+		this.idleMillis = idleMillis;
+		this.clock = clock;
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	private Stripe stripeFor(String id) {
+		int hash = id.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+	}
+
+	/**
+	 * Adds a game. May drop the least recently used games of the same stripe to
+	 * stay within budget, but never the game being added.
+	 * @param session The game to add
+	 * @return False if the game is too big to keep, in which case it is not added
+	 */
+	public boolean put(GameSession session) {
+		return store(session, false);
+	}
+
+	/**
+	 * Updates the size of a game that has changed, for example after the
+	 * player has supplied words. Does nothing if the game has been dropped.
+	 * @param session The game that has changed
+	 * @return False if the game has grown too big to keep, in which case it is
+	 * dropped, or if it had already been dropped
+	 */
+	public boolean update(GameSession session) {
+		return store(session, true);
+	}
+
+	private boolean store(GameSession session, boolean onlyIfPresent) {
+		Stripe stripe = stripeFor(session.getId());
+		// Holding the game while it is measured and stored means that when two
+		// threads change and update it at once, the latest size is stored
+		synchronized (session) {
+			long bytes = session.estimatedBytes();
+			synchronized (stripe) {
+				if (onlyIfPresent && !stripe.entries.containsKey(session.getId())) {
+					return false;
+				}
+				if (bytes > stripeBudget) {
+					Entry old = stripe.entries.remove(session.getId());
+					if (old != null) {
+						stripe.bytes -= old.bytes;
+					}
+					rejections.increment();
+					return false;
+				}
+				Entry old = stripe.entries.put(session.getId(), new Entry(session, bytes, clock.getAsLong()));
+				if (old != null) {
+					stripe.bytes -= old.bytes;
+				}
+				stripe.bytes += bytes;
+				Iterator<Entry> eldest = stripe.entries.values().iterator();
+				while (stripe.bytes > stripeBudget && stripe.entries.size() > 1) {
+					Entry entry = eldest.next();
+					if (entry.session == session) {
+						continue;
+					}
+					eldest.remove();
+					stripe.bytes -= entry.bytes;
+					evictions.increment();
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Looks up a game and marks it as used.
+	 * @param id Identifies the game
+	 * @return The game, or null if there is no such game or it has been idle too long
+	 */
+	public GameSession get(String id) {
+		Stripe stripe = stripeFor(id);
+		long now = clock.getAsLong();
+		synchronized (stripe) {
+			Entry entry = stripe.entries.get(id);
+			if (entry != null && now - entry.lastAccess > idleMillis) {
+				stripe.entries.remove(id);
+				stripe.bytes -= entry.bytes;
+				expirations.increment();
+				entry = null;
+			}
+			if (entry == null) {
+				misses.increment();
+				return null;
+			}
+			entry.lastAccess = now;
+			hits.increment();
+			return entry.session;
+		}
+	}
+
+	/**
+	 * Removes a game.
+	 * @param id Identifies the game
+	 * @return Whether there was such a game
+	 */
+	public boolean remove(String id) {
+		Stripe stripe = stripeFor(id);
+		synchronized (stripe) {
+			Entry entry = stripe.entries.remove(id);
+			if (entry != null) {
+				stripe.bytes -= entry.bytes;
+			}
+			return entry != null;
+		}
+	}
+
+	/**
+	 * Drops every game that has been idle for too long.
+	 * @return The number of games dropped
+	 */
+	public int sweep() {
+		long now = clock.getAsLong();
+		int dropped = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				// In access order, so the idle games all come first
+				Iterator<Entry> eldest = stripe.entries.values().iterator();
+				while (eldest.hasNext()) {
+					Entry entry = eldest.next();
+					if (now - entry.lastAccess <= idleMillis) {
+						break;
+					}
+					eldest.remove();
+					stripe.bytes -= entry.bytes;
+					dropped++;
+				}
+			}
+		}
+		expirations.add(dropped);
+		return dropped;
+	}
+
+	/**
+	 * @return The number of games in the store
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.entries.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return The estimated memory used by all the games in the store
+	 */
+	public long getEstimatedBytes() {
+		long bytes = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				bytes += stripe.bytes;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return The number of lookups that found a game
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return The number of lookups that found no game
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return The number of games dropped to stay within the memory budget
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return The number of games dropped for being idle too long
+	 */
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	/**
+	 * @return The number of games refused for being bigger than a stripe's budget
+	 */
+	public long getRejections() {
+		return rejections.sum();
+	}
+
+	/**
+	 * @return All the counters as a JSON object
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder("{");
+		Json.appendName(json, "sessions").append(size());
+		Json.appendName(json, "estimatedBytes").append(getEstimatedBytes());
+		Json.appendName(json, "hits").append(getHits());
+		Json.appendName(json, "misses").append(getMisses());
+		Json.appendName(json, "evictions").append(getEvictions());
+		Json.appendName(json, "expirations").append(getExpirations());
+		Json.appendName(json, "rejections").append(getRejections());
+		return json.append('}').toString();
+	}
+}
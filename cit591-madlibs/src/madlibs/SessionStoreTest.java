@@ -0,0 +1,102 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class SessionStoreTest {
+
+	private long now = 0;
+
+	private GameSession session(String id) {
+		TaggedText taggedText = new TaggedText();
+		String[] words = {"The", "cat", "saw", "a", "dog", "."};
+		String[] tags = {"DT", "NN", "VBD", "DT", "NN", "."};
+		for (int i = 0; i < words.length; i++) {
+			taggedText.add(words[i], tags[i], i < words.length - 2 ? " " : "");
+		}
+		return new GameSession(id, null, new Passage(taggedText), 42);
+	}
+
+	@Test
+	void leastRecentlyUsedTest() {
+		long size = session("a").estimatedBytes();
+		// Room for three games, all in one stripe
+		SessionStore store = new SessionStore(3 * size, 1000, () -> now, 1);
+		store.put(session("a"));
+		store.put(session("b"));
+		store.put(session("c"));
+		assertNotNull(store.get("a"));
+		store.put(session("d"));
+		// b was used least recently
+		assertNull(store.get("b"));
+		assertNotNull(store.get("a"));
+		assertNotNull(store.get("c"));
+		assertNotNull(store.get("d"));
+		assertEquals(3, store.size());
+		assertEquals(3 * size, store.getEstimatedBytes());
+		assertEquals(1, store.getEvictions());
+		assertEquals(4, store.getHits());
+		assertEquals(1, store.getMisses());
+	}
+
+	@Test
+	void idleTest() {
+		SessionStore store = new SessionStore(1 << 20, 1000, () -> now, 1);
+		store.put(session("a"));
+		store.put(session("b"));
+		now = 800;
+		assertNotNull(store.get("b"));
+		now = 1500;
+		// a has been idle too long, b was used 700ms ago
+		assertNull(store.get("a"));
+		now = 1900;
+		assertEquals(1, store.size());
+		now = 2000;
+		assertEquals(1, store.sweep());
+		assertEquals(0, store.size());
+		assertEquals(0, store.getEstimatedBytes());
+		assertEquals(2, store.getExpirations());
+	}
+
+	@Test
+	void updateTest() {
+		SessionStore store = new SessionStore(1 << 20, 1000, () -> now, 1);
+		GameSession game = session("a");
+		store.put(game);
+		long before = store.getEstimatedBytes();
+		String[] words = new String[game.getWordCount(PartOfSpeech.SINGULAR_NOUN)];
+		Arrays.fill(words, "hippopotamus");
+		game.submitWords(PartOfSpeech.SINGULAR_NOUN, words);
+		// Updating twice must not count the game twice
+		store.update(game);
+		store.update(game);
+		assertTrue(store.getEstimatedBytes() > before);
+		assertEquals(game.estimatedBytes(), store.getEstimatedBytes());
+		// A game that has been removed is not brought back
+		assertTrue(store.remove("a"));
+		store.update(game);
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	void tooBigTest() {
+		GameSession game = session("a");
+		long size = game.estimatedBytes();
+		// Two stripes of a little more than one game each
+		SessionStore store = new SessionStore(2 * size + 2, 1000, () -> now, 2);
+		assertTrue(store.put(game));
+		String[] words = new String[game.getWordCount(PartOfSpeech.SINGULAR_NOUN)];
+		Arrays.fill(words, "hippopotamus");
+		game.submitWords(PartOfSpeech.SINGULAR_NOUN, words);
+		// Grown past the budget, so it is dropped rather than kept over budget
+		assertFalse(store.update(game));
+		assertNull(store.get("a"));
+		assertEquals(0, store.getEstimatedBytes());
+		assertFalse(store.put(game));
+		assertEquals(0, store.size());
+		assertEquals(2, store.getRejections());
+	}
+}
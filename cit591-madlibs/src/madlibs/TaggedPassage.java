@@ -0,0 +1,415 @@
+package madlibs;
+
+import java.util.Arrays;
+
+/**
+ * This class is the part of a Passage that never changes: the tagged words of
+ * the text, which of them are capitalized, where every part of speech is found
+ * and the samplers used to plan games. It is built once per text and is
+ * immutable and thread-safe, so any number of games, on any threads, can be
+ * played on it at once. Each game is a Passage, which only records the words
+ * the player has replaced.
+ *
+ */
+public class TaggedPassage {
+
+	// The words of the original text, stored in columns
+	private final TaggedText taggedText;
+	// The original text, from the first word onwards
+	private final String originalText;
+	// One byte of flags for every word, see CAPITALIZED
+	private final byte[] flags;
+
+	// Track if the original word was capitalized, so the replaced word can also be
+	private static final byte CAPITALIZED = 1;
+
+	/* These different PartOfSpeechTrackers store the indexes in the original text
+	 * where the the respective part of speech can be found.
+	 */
+	private final PartOfSpeechTracker singularNouns;
+	private final PartOfSpeechTracker pluralNouns;
+	private final PartOfSpeechTracker adverbs;
+	private final PartOfSpeechTracker adjectives;
+	private final PartOfSpeechTracker ingVerbs;
+	private final PartOfSpeechTracker edVerbs;
+	// A sampler for every PartOfSpeech, in the order of its ordinal
+	private final WeightedSampler[] samplers;
+
+	// For tracking the indexes of the different parts of speech
+	class PartOfSpeechTracker {
+		/* Every distinct original word gets a word id, the order in which it was
+		 * first seen. The slots array is an open addressing hash table that maps a
+		 * word to its id plus one, so that zero means empty. Words are compared
+		 * directly on the characters of the original text, so adding a word does
+		 * not allocate. Keys do not correspond to current word, if replacement had
+		 * been done.
+		 */
+		private int[] slots = new int[16];
+		private int[] hashes = new int[8];
+		// Where the first occurrence of every word id starts and ends in the text
+		private int[] keyStarts = new int[8];
+		private int[] keyEnds = new int[8];
+		private int wordCount = 0;
+		
+		// Every index that was added and the word id it belongs to, in order
+		private int[] indexes = new int[8];
+		private int[] wordIds = new int[8];
+		private int size = 0;
+		
+		/* The indexes grouped by word are stored back to back in one shared arena,
+		 * with the indexes of word id w between groupStarts[w] and groupStarts[w + 1].
+		 * The arena and the array views are built by the TaggedPassage constructor,
+		 * once every index has been added, and never change after that.
+		 */
+		private int[] arena;
+		private int[] groupStarts;
+		private int[][] nestedView;
+		private int[] flatView;
+		
+		PartOfSpeechTracker() {
+		}
+		
+		/*
+		 * Adds the word between start and end of the original text, found at the
+		 * supplied index of the passage. Only the constructor adds words.
+		 */
+		private void add(int start, int end, int index) {
+			int hash = hash(start, end);
+			int mask = slots.length - 1;
+			int slot = hash & mask;
+			int wordId = -1;
+			while (slots[slot] != 0) {
+				int candidate = slots[slot] - 1;
+				if (hashes[candidate] == hash && sameWord(candidate, start, end)) {
+					wordId = candidate;
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (wordId < 0) {
+				wordId = newWord(hash, start, end);
+				slots[slot] = wordId + 1;
+				// Keep the table at most half full
+				if (wordCount * 2 > slots.length) {
+					rehash();
+				}
+			}
+			if (size == indexes.length) {
+				indexes = Arrays.copyOf(indexes, size * 2);
+				wordIds = Arrays.copyOf(wordIds, size * 2);
+			}
+			indexes[size] = index;
+			wordIds[size] = wordId;
+			size++;
+			// The cached views are out of date now
+			arena = null;
+			nestedView = null;
+			flatView = null;
+		}
+		
+		private int newWord(int hash, int start, int end) {
+			if (wordCount == keyStarts.length) {
+				hashes = Arrays.copyOf(hashes, wordCount * 2);
+				keyStarts = Arrays.copyOf(keyStarts, wordCount * 2);
+				keyEnds = Arrays.copyOf(keyEnds, wordCount * 2);
+			}
+			hashes[wordCount] = hash;
+			keyStarts[wordCount] = start;
+			keyEnds[wordCount] = end;
+			return wordCount++;
+		}
+		
+		private void rehash() {
+			slots = new int[slots.length * 2];
+			int mask = slots.length - 1;
+			for (int wordId = 0; wordId < wordCount; wordId++) {
+				int slot = hashes[wordId] & mask;
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = wordId + 1;
+			}
+		}
+		
+		private int hash(int start, int end) {
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + originalText.charAt(i);
+			}
+			return hash ^ (hash >>> 16);
+		}
+		
+		private boolean sameWord(int wordId, int start, int end) {
+			int keyStart = keyStarts[wordId];
+			int length = keyEnds[wordId] - keyStart;
+			return length == end - start && originalText.regionMatches(keyStart, originalText, start, length);
+		}
+		
+		/*
+		 * Groups the indexes by word id with a counting sort into the arena.
+		 */
+		private void buildArena() {
+			groupStarts = new int[wordCount + 1];
+			for (int i = 0; i < size; i++) {
+				groupStarts[wordIds[i] + 1]++;
+			}
+			for (int w = 0; w < wordCount; w++) {
+				groupStarts[w + 1] += groupStarts[w];
+			}
+			arena = new int[size];
+			int[] next = Arrays.copyOf(groupStarts, wordCount);
+			for (int i = 0; i < size; i++) {
+				arena[next[wordIds[i]]++] = indexes[i];
+			}
+		}
+		
+		/**
+		 * @return The number of indexes that belong to this part of speech
+		 */
+		public int size() {
+			return size;
+		}
+		
+		/**
+		 * @return The number of distinct words that belong to this part of speech
+		 */
+		public int getWordCount() {
+			return wordCount;
+		}
+		
+		/**
+		 * Return the indexes where the corresponding parts of speech can be
+		 * found in the passage, grouped by word. The array is built once and
+		 * shared, so it must not be modified.
+		 * @return A 2d int array with one row for every distinct word, in the
+		 * order that the words first appear.
+		 */
+		public int[][] getIndexGroups() {
+			if (nestedView == null) {
+				if (arena == null) {
+					buildArena();
+				}
+				int[][] groups = new int[wordCount][];
+				for (int w = 0; w < wordCount; w++) {
+					groups[w] = Arrays.copyOfRange(arena, groupStarts[w], groupStarts[w + 1]);
+				}
+				nestedView = groups;
+			}
+			return nestedView;
+		}
+		
+		/**
+		 * Return the indexes where the corresponding parts of speech can be
+		 * found in the passage. The array is built once and shared, so it must
+		 * not be modified.
+		 * @return A 1d int array of the indexes that belong to this part of
+		 * speech, sorted.
+		 */
+		public int[] getIndexes() {
+			if (flatView == null) {
+				int[] sorted = Arrays.copyOf(indexes, size);
+				// Indexes are normally added in order, so this is rarely needed
+				for (int i = 1; i < size; i++) {
+					if (sorted[i - 1] > sorted[i]) {
+						Arrays.sort(sorted);
+						break;
+					}
+				}
+				flatView = sorted;
+			}
+			return flatView;
+		}
+		
+		/**
+		 * Return the indexes where the corresponding parts of speech can be
+		 * found in the passage as a flat Integer array.
+		 * @return An 1d Integer array of the indexes that belong to this
+		 * part of speech, sorted.
+		 */
+		public Integer[] toFlatArray() {
+			int[] flat = getIndexes();
+			Integer[] allIndexes = new Integer[flat.length];
+			for (int i = 0; i < flat.length; i++) {
+				allIndexes[i] = flat[i];
+			}
+			return allIndexes;
+		}
+		/**
+		 * Return the indexes where the corresponding parts of speech can be
+		 * found in the passage as a 2d Integer array.
+		 * @return A 2d Integer array of the indexes that belong to this 
+		 * part of speech.
+		 */
+		public Integer[][] toNestedArray() {
+			int[][] groups = getIndexGroups();
+			Integer[][] allIndexes = new Integer[groups.length][];
+			for (int i = 0; i < groups.length; i++) {
+				allIndexes[i] = new Integer[groups[i].length];
+				for (int j = 0; j < groups[i].length; j++) {
+					allIndexes[i][j] = groups[i][j];
+				}
+			}
+			return allIndexes;
+		}
+		
+	}
+
+	/**
+	 * Tags the supplied text with the default Tagger.
+	 * @param originalText The text of the passage
+	 */
+	public TaggedPassage(String originalText) {
+		this(beginTagged(), Passage.tag(originalText), true);
+	}
+
+	/**
+	 * Tags the supplied text.
+	 * @param originalText The text of the passage
+	 * @param tagger Used to split the text into words and tag their parts of speech
+	 */
+	public TaggedPassage(String originalText, Tagger tagger) {
+		this(beginTagged(), tagger.tag(originalText), true);
+	}
+
+	/**
+	 * Builds the passage from text that has already been tagged, for example
+	 * by the TaggedPassageCache.
+	 * @param taggedText The words of the passage along with their tags. It
+	 * must not be changed afterwards.
+	 */
+	public TaggedPassage(TaggedText taggedText) {
+		this(beginTagged(), taggedText, false);
+	}
+
+	/*
+	 * The event is begun before the text is tagged, so that its duration
+	 * includes the tagging when there is any.
+	 */
+	private TaggedPassage(GameEvents.PassageTagged event, TaggedText taggedText, boolean tagged) {
+		long startNanos = Metrics.startNanos();
+		long startBytes = Metrics.allocatedBytes();
+
+		this.taggedText = taggedText;
+		originalText = taggedText.getText();
+		flags = new byte[taggedText.size()];
+
+		singularNouns = new PartOfSpeechTracker();
+		pluralNouns = new PartOfSpeechTracker();
+		adverbs = new PartOfSpeechTracker();
+		adjectives = new PartOfSpeechTracker();
+		edVerbs = new PartOfSpeechTracker();
+		ingVerbs = new PartOfSpeechTracker();
+
+		// We want to keep track of the index of the word within the overall passage
+		for (int passageIndex = 0; passageIndex < taggedText.size(); passageIndex++) {
+			if (Character.isUpperCase(originalText.charAt(taggedText.getStart(passageIndex)))) {
+				flags[passageIndex] = CAPITALIZED;
+			}
+			// Add this word to the appropriate PartOfSpeechTracker
+			PartOfSpeech partOfSpeech = PartOfSpeech.fromPennTag(taggedText.getTag(passageIndex));
+			if (partOfSpeech != null) {
+				getPartOfSpeech(partOfSpeech).add(taggedText.getStart(passageIndex), taggedText.getEnd(passageIndex), passageIndex);
+			}
+		}
+
+		// Build every view now, so that nothing changes once the passage is shared
+		PartOfSpeech[] partsOfSpeech = PartOfSpeech.values();
+		samplers = new WeightedSampler[partsOfSpeech.length];
+		for (PartOfSpeech pos : partsOfSpeech) {
+			PartOfSpeechTracker tracker = getPartOfSpeech(pos);
+			tracker.getIndexes();
+			samplers[pos.ordinal()] = new WeightedSampler(tracker.getIndexGroups(), pos);
+		}
+		Metrics.INDEX.record(startNanos, startBytes);
+		event.finish(taggedText, tagged);
+	}
+
+	private static GameEvents.PassageTagged beginTagged() {
+		GameEvents.PassageTagged event = new GameEvents.PassageTagged();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * @return The words of the passage along with their tags, which must not
+	 * be changed
+	 */
+	public TaggedText getTaggedText() {
+		return taggedText;
+	}
+
+	/**
+	 * @return The original text
+	 */
+	public String getOriginalText() {
+		return originalText;
+	}
+
+	/**
+	 * @return The number of words in the passage
+	 */
+	public int size() {
+		return flags.length;
+	}
+
+	/**
+	 * @param index The index of a word in the passage
+	 * @return Whether the word starts with a capital letter, so that its
+	 * replacement should too
+	 */
+	public boolean isCapitalized(int index) {
+		return (flags[index] & CAPITALIZED) != 0;
+	}
+
+	/**
+	 * Returns the requested PartOfSpeechTracker object.
+	 * @param partOfSpeech A valid part of speech from the PartOfSpeech Enum
+	 * @return A PartOfSpeechTracker objects that contains the indexes for the
+	 * specified PartOfSpeech
+	 */
+	public PartOfSpeechTracker getPartOfSpeech(PartOfSpeech partOfSpeech) {
+		switch(partOfSpeech) {
+		case SINGULAR_NOUN:
+			return singularNouns;
+		case PLURAL_NOUN:
+			return pluralNouns;
+		case ADJECTIVE:
+			return adjectives;
+		case ADVERB:
+			return adverbs;
+		case ED_VERB:
+			return edVerbs;
+		case ING_VERB:
+			return ingVerbs;
+		// This should never happen...
+		default:
+			throw new IllegalArgumentException("Invalid part of speech");
+		}
+	}
+
+	/**
+	 * Works out which words the player will be asked to replace, for every
+	 * part of speech at once.
+	 * @param seed Seeds the sampling, so the same seed gives the same game
+	 * @return The plan of the game
+	 */
+	public GamePlan planGame(long seed) {
+		return new GamePlan(samplers, seed);
+	}
+
+	/**
+	 * @return A sampler for the index groups of every PartOfSpeech, in the
+	 * order of its ordinal
+	 */
+	WeightedSampler[] getSamplers() {
+		return samplers;
+	}
+
+	/**
+	 * @return The approximate number of bytes of memory used by the text and
+	 * its tags, not counting the PartOfSpeechTrackers.
+	 */
+	public long estimatedBytes() {
+		return taggedText.estimatedBytes() + 16 + flags.length;
+	}
+}
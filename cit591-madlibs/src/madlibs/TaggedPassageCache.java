@@ -0,0 +1,305 @@
+package madlibs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class stores tagged passages on disk, so that the same text never has
+ * to be tagged twice. Every entry is a small binary file in the cache directory
+ * whose name is a hash of the text and of the tagger version. Changing either
+ * the text or the tagger therefore results in a different file, and the old
+ * entry is simply never read again.
+ *
+ * The last few passages asked for with getPassage are also kept in memory as
+ * TaggedPassages, so that playing one again, or in several games at once,
+ * costs nothing more than the words replaced in each game.
+ *
+ */
+public class TaggedPassageCache {
+
+	// Identifies the files written by this class
+	private static final int MAGIC = 0x4d4c5447;
+	// Increase whenever the layout of the file changes
+	private static final int FORMAT_VERSION = 2;
+	private static final String EXTENSION = ".tags";
+	// The default cache location, relative to the working directory like index.csv
+	public static final String DEFAULT_DIRECTORY = "tag-cache";
+	// How many TaggedPassages are kept in memory, dropping the least recently used
+	private static final int PASSAGES_IN_MEMORY = 8;
+
+	private final Path directory;
+	private final Tagger tagger;
+	private final String taggerVersion;
+	private final Map<String, TaggedPassage> passages = new LinkedHashMap<String, TaggedPassage>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, TaggedPassage> eldest) {
+			return size() > PASSAGES_IN_MEMORY;
+		}
+	};
+
+	/**
+	 * Creates a cache in the default directory.
+	 * @param tagger Tags the texts that are not in the cache yet
+	 */
+	public TaggedPassageCache(Tagger tagger) {
+		this(Paths.get(DEFAULT_DIRECTORY), tagger);
+	}
+
+	/**
+	 * Creates a cache in the supplied directory.
+	 * @param directory Where the cache files are kept. It is created when needed.
+	 * @param tagger Tags the texts that are not in the cache yet
+	 */
+	public TaggedPassageCache(Path directory, Tagger tagger) {
+		this.directory = directory;
+		this.tagger = tagger;
+		this.taggerVersion = tagger.getVersion();
+	}
+
+	/**
+	 * @return The tagger used for texts that are not in the cache yet
+	 */
+	public Tagger getTagger() {
+		return tagger;
+	}
+
+	/**
+	 * Looks up the tagged version of the supplied text.
+	 * @param text The text of the passage
+	 * @return The TaggedText, or null if the text is not in the cache
+	 */
+	public TaggedText get(String text) {
+		Path file = fileFor(text);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			return read(in, Files.size(file));
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			// A damaged entry is treated as missing, and will be overwritten
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the tagged version of the supplied text. Failing to write the cache
+	 * is not fatal, the text will just be tagged again next time.
+	 * @param text The text of the passage
+	 * @param taggedText The result of tagging the text
+	 */
+	public void put(String text, TaggedText taggedText) {
+		Path file = fileFor(text);
+		Path temp = null;
+		try {
+			Files.createDirectories(directory);
+			// Write to a temporary file first, so a reader never sees half an entry
+			temp = Files.createTempFile(directory, "entry", ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				write(taggedText, out);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Could not write tag cache entry " + file + ": " + e.getMessage());
+		} finally {
+			// Only still there if the entry was not written
+			deleteQuietly(temp);
+		}
+	}
+
+	private static void deleteQuietly(Path temp) {
+		if (temp == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(temp);
+		} catch (IOException e) {
+			System.err.println("Could not delete " + temp + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the tagged version of the text from the cache, tagging the text and
+	 * storing the result if it is not there yet.
+	 * @param text The text of the passage
+	 * @return The TaggedText for the supplied text
+	 */
+	public TaggedText getOrTag(String text) {
+		TaggedText taggedText = get(text);
+		if (taggedText == null) {
+			taggedText = tagger.tag(text);
+			put(text, taggedText);
+		}
+		return taggedText;
+	}
+
+	/**
+	 * Returns the TaggedPassage for the text, from memory if it was asked for
+	 * recently, and otherwise from getOrTag. A TaggedPassage never changes, so
+	 * the same one is returned to every caller, on any thread.
+	 * @param text The text of the passage
+	 * @return The TaggedPassage for the supplied text
+	 */
+	public TaggedPassage getPassage(String text) {
+		synchronized (passages) {
+			TaggedPassage passage = passages.get(text);
+			if (passage != null) {
+				return passage;
+			}
+		}
+		// Tagged without holding the lock, so two threads may both build it the
+		// first time. Either copy works, and only one is kept.
+		TaggedPassage passage = new TaggedPassage(getOrTag(text));
+		synchronized (passages) {
+			passages.put(text, passage);
+		}
+		return passage;
+	}
+
+	/*
+	 * The file name is the SHA-256 hash of the tagger version and the text.
+	 */
+	private Path fileFor(String text) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(taggerVersion.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (byte b : hash) {
+				name.append(String.format("%02x", b));
+			}
+			return directory.resolve(name.append(EXTENSION).toString());
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * The layout is a header, a table of the distinct tags, the whole text, and
+	 * then for every word the index of its tag, the length of the word and the
+	 * length of its trailing blanks.
+	 */
+	private void write(TaggedText taggedText, DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(taggerVersion);
+		out.writeInt(taggedText.getSentenceCount());
+		HashMap<String, Integer> tagCodes = new HashMap<String, Integer>();
+		ArrayList<String> tagTable = new ArrayList<String>();
+		for (int i = 0; i < taggedText.size(); i++) {
+			String tag = taggedText.getTag(i);
+			if (!tagCodes.containsKey(tag)) {
+				tagCodes.put(tag, tagTable.size());
+				tagTable.add(tag);
+			}
+		}
+		out.writeShort(tagTable.size());
+		for (String tag : tagTable) {
+			out.writeUTF(tag);
+		}
+		byte[] text = taggedText.getText().getBytes(StandardCharsets.UTF_8);
+		out.writeInt(text.length);
+		out.write(text);
+		out.writeInt(taggedText.size());
+		for (int i = 0; i < taggedText.size(); i++) {
+			out.writeByte(tagCodes.get(taggedText.getTag(i)));
+			writeLength(out, taggedText.getEnd(i) - taggedText.getStart(i));
+			writeLength(out, taggedText.getBlanksEnd(i) - taggedText.getEnd(i));
+		}
+	}
+
+	/*
+	 * Every count, length and tag code is checked against the size of the
+	 * file, the text and the tag table, so that a damaged entry is reported
+	 * as an IOException rather than failing somewhere else.
+	 */
+	private TaggedText read(DataInputStream in, long fileSize) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+			throw new IOException("Not a tag cache file");
+		}
+		if (!in.readUTF().equals(taggerVersion)) {
+			throw new IOException("Entry was written by a different tagger");
+		}
+		TaggedText taggedText = new TaggedText();
+		int sentenceCount = in.readInt();
+		String[] tagTable = new String[in.readUnsignedShort()];
+		for (int i = 0; i < tagTable.length; i++) {
+			tagTable[i] = in.readUTF();
+		}
+		int textLength = in.readInt();
+		if (sentenceCount < 0 || textLength < 0 || textLength > fileSize) {
+			throw new IOException("Damaged tag cache entry");
+		}
+		taggedText.setSentenceCount(sentenceCount);
+		byte[] bytes = new byte[textLength];
+		in.readFully(bytes);
+		String text = new String(bytes, StandardCharsets.UTF_8);
+		int size = in.readInt();
+		// Every word takes at least three bytes
+		if (size < 0 || size > fileSize / 3) {
+			throw new IOException("Damaged tag cache entry");
+		}
+		int position = 0;
+		for (int i = 0; i < size; i++) {
+			int code = in.readUnsignedByte();
+			if (code >= tagTable.length) {
+				throw new IOException("Damaged tag cache entry");
+			}
+			int end = position + readLength(in);
+			if (end > text.length()) {
+				throw new IOException("Damaged tag cache entry");
+			}
+			int blanksEnd = end + readLength(in);
+			if (blanksEnd > text.length()) {
+				throw new IOException("Damaged tag cache entry");
+			}
+			taggedText.add(text, position, end, blanksEnd, tagTable[code]);
+			position = blanksEnd;
+		}
+		return taggedText;
+	}
+
+	/*
+	 * Lengths are almost always small, so they are written 7 bits at a time.
+	 */
+	private static void writeLength(DataOutputStream out, int length) throws IOException {
+		while (length >= 0x80) {
+			out.writeByte(length & 0x7f | 0x80);
+			length >>>= 7;
+		}
+		out.writeByte(length);
+	}
+
+	private static int readLength(DataInputStream in) throws IOException {
+		int length = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 28) {
+				throw new IOException("Damaged tag cache entry");
+			}
+			b = in.readUnsignedByte();
+			length |= (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		if (length < 0) {
+			throw new IOException("Damaged tag cache entry");
+		}
+		return length;
+	}
+}
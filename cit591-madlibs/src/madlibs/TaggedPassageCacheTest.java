@@ -0,0 +1,141 @@
+package madlibs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TaggedPassageCacheTest {
+	static final String text = "Peter ran quickly.";
+
+	// Stands in for a real tagger, only the version matters to the cache
+	private static class VersionOnlyTagger implements Tagger {
+		private final String version;
+
+		VersionOnlyTagger(String version) {
+			this.version = version;
+		}
+
+		@Override
+		public TaggedText tag(String text) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getVersion() {
+			return version;
+		}
+	}
+
+	private TaggedText taggedText() {
+		TaggedText taggedText = new TaggedText();
+		taggedText.add("Peter", "NNP", " ");
+		taggedText.add("ran", "VBD", " ");
+		taggedText.add("quickly", "RB", "");
+		taggedText.add(".", ".", "");
+		taggedText.endSentence();
+		return taggedText;
+	}
+
+	@Test
+	void roundTripTest(@TempDir Path directory) {
+		TaggedPassageCache cache = new TaggedPassageCache(directory, new VersionOnlyTagger("test-tagger"));
+		cache.put(text, taggedText());
+		TaggedText cached = cache.get(text);
+		assertNotNull(cached);
+		assertEquals(4, cached.size());
+		assertEquals(1, cached.getSentenceCount());
+		assertEquals("quickly", cached.getWord(2));
+		assertEquals("RB", cached.getTag(2));
+		assertEquals(" ", cached.getTrailingBlanks(1));
+		assertEquals(text, new Passage(cached).getOriginalText());
+	}
+
+	@Test
+	void passageInMemoryTest(@TempDir Path directory) {
+		TaggedPassageCache cache = new TaggedPassageCache(directory, new VersionOnlyTagger("test-tagger"));
+		cache.put(text, taggedText());
+		TaggedPassage passage = cache.getPassage(text);
+		assertEquals(text, passage.getOriginalText());
+		// The second game of the same text shares the first one's TaggedPassage
+		assertSame(passage, cache.getPassage(text));
+		assertNotSame(new Passage(passage), new Passage(cache.getPassage(text)));
+	}
+
+	@Test
+	void failedWriteTest(@TempDir Path directory) throws IOException {
+		TaggedPassageCache cache = new TaggedPassageCache(directory, new VersionOnlyTagger("test-tagger"));
+		cache.put(text, taggedText());
+		Path entry;
+		try (Stream<Path> files = Files.list(directory)) {
+			entry = files.findFirst().get();
+		}
+		// A directory that isn't empty can't be replaced by the new entry
+		Files.delete(entry);
+		Files.createDirectories(entry.resolve("blocked"));
+		cache.put(text, taggedText());
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(0, files.filter(file -> file.toString().endsWith(".tmp")).count());
+		}
+		assertNull(cache.get(text));
+	}
+
+	@Test
+	void damagedEntryTest(@TempDir Path directory) throws IOException {
+		TaggedPassageCache cache = new TaggedPassageCache(directory, new VersionOnlyTagger("test-tagger"));
+		cache.put(text, taggedText());
+		Path entry;
+		try (Stream<Path> files = Files.list(directory)) {
+			entry = files.findFirst().get();
+		}
+		byte[] good = Files.readAllBytes(entry);
+		// Every byte changed, and every length cut short, is either read or
+		// treated as missing, but never throws
+		for (int i = 0; i < good.length; i++) {
+			for (int value : new int[] {0x00, 0x7f, 0x80, 0xff}) {
+				byte[] damaged = good.clone();
+				damaged[i] = (byte) value;
+				Files.write(entry, damaged);
+				cache.get(text);
+			}
+			Files.write(entry, Arrays.copyOf(good, i));
+			assertNull(cache.get(text));
+		}
+
+		// A damaged entry is tagged again and replaced
+		int[] tagged = new int[1];
+		TaggedPassageCache retagging = new TaggedPassageCache(directory, new VersionOnlyTagger("test-tagger") {
+			@Override
+			public TaggedText tag(String text) {
+				tagged[0]++;
+				return taggedText();
+			}
+		});
+		byte[] damaged = good.clone();
+		// The last word's tag code, well past the end of the tag table
+		damaged[damaged.length - 3] = (byte) 0xff;
+		Files.write(entry, damaged);
+		assertEquals("quickly", retagging.getOrTag(text).getWord(2));
+		assertEquals(1, tagged[0]);
+		assertArrayEquals(good, Files.readAllBytes(entry));
+	}
+
+	@Test
+	void changedTextMissesTest(@TempDir Path directory) {
+		TaggedPassageCache cache = new TaggedPassageCache(directory, new VersionOnlyTagger("test-tagger"));
+		cache.put(text, taggedText());
+		assertNull(cache.get(text + " "));
+	}
+
+	@Test
+	void changedTaggerMissesTest(@TempDir Path directory) {
+		new TaggedPassageCache(directory, new VersionOnlyTagger("test-tagger")).put(text, taggedText());
+		assertNull(new TaggedPassageCache(directory, new VersionOnlyTagger("other-tagger")).get(text));
+	}
+}
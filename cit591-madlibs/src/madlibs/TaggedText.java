@@ -0,0 +1,259 @@
+package madlibs;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the output of part of speech tagging: the individual words
+ * (tokens) of a text, the Penn Treebank tag of every word and the white space
+ * that follows each word. A Passage can be built from it without tagging the
+ * text again.
+ *
+ * The words are stored in columns rather than as one object per word. The text
+ * itself is kept once, and every word is described by where it starts and ends
+ * in that text and by a one byte tag code. The white space after a word runs
+ * until the start of the next word.
+ *
+ */
+public class TaggedText {
+
+	// All the Penn Treebank tags seen so far. A tag's code is its index in this
+	// array. Both are only changed while holding the lock on tagCodes, and can
+	// be read without it, since words are tagged on several threads at once.
+	private static volatile String[] tagNames = new String[0];
+	private static final ConcurrentHashMap<String, Byte> tagCodes = new ConcurrentHashMap<String, Byte>();
+
+	// The text is appended to the buffer, and turned into a String when it is read
+	private StringBuilder buffer = new StringBuilder();
+	private String text;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private byte[] tags = new byte[16];
+	private int size = 0;
+	private int sentenceCount = 0;
+
+	/**
+	 * Adds a word to the end of the text.
+	 * @param word The actual text of the word
+	 * @param tag The part of speech of the word, using the tag from Penn Treebank
+	 * @param trailingBlanks The white space characters that follow this word
+	 */
+	public void add(String word, String tag, String trailingBlanks) {
+		StringBuilder buffer = getBuffer();
+		int start = buffer.length();
+		buffer.append(word);
+		int end = buffer.length();
+		buffer.append(trailingBlanks);
+		addColumns(start, end, tagCode(tag));
+	}
+
+	/**
+	 * Adds a word to the end of the text, copying it straight from the source
+	 * text without creating any intermediate strings.
+	 * @param source The text the word comes from
+	 * @param start Where the word starts in the source
+	 * @param end Where the word ends in the source
+	 * @param blanksEnd Where the white space after the word ends in the source
+	 * @param tag The part of speech of the word, using the tag from Penn Treebank
+	 */
+	public void add(CharSequence source, int start, int end, int blanksEnd, String tag) {
+		StringBuilder buffer = getBuffer();
+		int wordStart = buffer.length();
+		buffer.append(source, start, blanksEnd);
+		addColumns(wordStart, wordStart + end - start, tagCode(tag));
+	}
+
+	/**
+	 * Adds all the words and sentences of another TaggedText to the end of
+	 * this one, for example when a long text is tagged a piece at a time.
+	 * @param other The text to add. It is not changed.
+	 */
+	public void append(TaggedText other) {
+		StringBuilder buffer = getBuffer();
+		int offset = buffer.length();
+		buffer.append(other.getText());
+		int capacity = starts.length;
+		while (capacity < size + other.size) {
+			capacity *= 2;
+		}
+		if (capacity > starts.length) {
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			tags = Arrays.copyOf(tags, capacity);
+		}
+		for (int i = 0; i < other.size; i++) {
+			starts[size + i] = other.starts[i] + offset;
+			ends[size + i] = other.ends[i] + offset;
+		}
+		System.arraycopy(other.tags, 0, tags, size, other.size);
+		size += other.size;
+		sentenceCount += other.sentenceCount;
+	}
+
+	private void addColumns(int start, int end, byte tag) {
+		if (size == starts.length) {
+			int capacity = size * 2;
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			tags = Arrays.copyOf(tags, capacity);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		tags[size] = tag;
+		size++;
+	}
+
+	private StringBuilder getBuffer() {
+		if (buffer == null) {
+			buffer = new StringBuilder(text);
+		}
+		text = null;
+		return buffer;
+	}
+
+	/**
+	 * Marks the end of a sentence.
+	 */
+	public void endSentence() {
+		sentenceCount++;
+	}
+
+	/**
+	 * @return The number of words in the text
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The number of sentences in the text
+	 */
+	public int getSentenceCount() {
+		return sentenceCount;
+	}
+
+	/**
+	 * Sets the number of sentences, used when reading a TaggedText back from disk.
+	 * @param sentenceCount The number of sentences in the text
+	 */
+	void setSentenceCount(int sentenceCount) {
+		this.sentenceCount = sentenceCount;
+	}
+
+	/**
+	 * @return The whole text, from the start of the first word to the end of
+	 * the white space after the last word.
+	 */
+	public String getText() {
+		if (text == null) {
+			text = buffer.toString();
+			// The String is all that is needed from now on
+			buffer = null;
+		}
+		return text;
+	}
+
+	/**
+	 * @return The length of the whole text
+	 */
+	public int length() {
+		return text != null ? text.length() : buffer.length();
+	}
+
+	/**
+	 * @param index The index of the word within the text
+	 * @return Where the word starts in the text
+	 */
+	public int getStart(int index) {
+		return starts[checkIndex(index)];
+	}
+
+	/**
+	 * @param index The index of the word within the text
+	 * @return Where the word ends in the text, not including blank spaces
+	 */
+	public int getEnd(int index) {
+		return ends[checkIndex(index)];
+	}
+
+	/**
+	 * @param index The index of the word within the text
+	 * @return Where the blank spaces after the word end in the text
+	 */
+	public int getBlanksEnd(int index) {
+		return index + 1 < size ? starts[index + 1] : length();
+	}
+
+	/**
+	 * @param index The index of the word within the text
+	 * @return The text of the word, not including blank spaces
+	 */
+	public String getWord(int index) {
+		return getText().substring(getStart(index), getEnd(index));
+	}
+
+	/**
+	 * @param index The index of the word within the text
+	 * @return The Penn Treebank tag of the word
+	 */
+	public String getTag(int index) {
+		return tagName(tags[checkIndex(index)]);
+	}
+
+	/**
+	 * @param index The index of the word within the text
+	 * @return The white space characters that follow the word
+	 */
+	public String getTrailingBlanks(int index) {
+		return getText().substring(getEnd(index), getBlanksEnd(index));
+	}
+
+	/**
+	 * @return The approximate number of bytes of memory used by this object
+	 */
+	public long estimatedBytes() {
+		// Arrays and the String, each with a small header
+		return 3 * 16 + starts.length * 8L + tags.length + 40 + 2L * length();
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		}
+		return index;
+	}
+
+	/**
+	 * @param tag A Penn Treebank tag
+	 * @return The one byte code used to store the tag
+	 */
+	static byte tagCode(String tag) {
+		Byte code = tagCodes.get(tag);
+		if (code != null) {
+			return code;
+		}
+		synchronized (tagCodes) {
+			code = tagCodes.get(tag);
+			if (code == null) {
+				if (tagNames.length > Byte.MAX_VALUE) {
+					throw new IllegalArgumentException("Too many different tags, can't add " + tag);
+				}
+				code = (byte) tagNames.length;
+				String[] names = Arrays.copyOf(tagNames, tagNames.length + 1);
+				names[code] = tag;
+				// Publish the name before the code, so a code is never seen without its name
+				tagNames = names;
+				tagCodes.put(tag, code);
+			}
+			return code;
+		}
+	}
+
+	/**
+	 * @param code A code returned by tagCode
+	 * @return The Penn Treebank tag for the code
+	 */
+	static String tagName(byte code) {
+		return tagNames[code];
+	}
+}
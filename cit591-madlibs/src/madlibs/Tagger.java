@@ -0,0 +1,55 @@
+package madlibs;
+
+/**
+ * A Tagger splits text into words and tags every word with its Penn Treebank
+ * part of speech. The Passage class only needs the tags that map onto a
+ * PartOfSpeech, so a Tagger is free to trade accuracy for speed.
+ *
+ * The default Tagger is chosen with the madlibs.tagger setting, which can be
+ * "corenlp" (the default) or "lexicon". Unless madlibs.tagger.threads is set
+ * to 1, long texts are tagged on several threads by a ParallelTagger.
+ *
+ */
+public interface Tagger {
+
+	public static final String TAGGER_SETTING = "madlibs.tagger";
+
+	/**
+	 * Splits the supplied text into words and tags every word with its part of
+	 * speech.
+	 * @param text The text to tag
+	 * @return The words of the text along with their tags
+	 */
+	public TaggedText tag(String text);
+
+	/**
+	 * @return Identifies the tagger and its model, so that tags produced by a
+	 * different tagger are not mistaken for these ones.
+	 */
+	public String getVersion();
+
+	/**
+	 * Prepares the tagger, so that the first real passage does not have to
+	 * wait for models to load. Does nothing by default.
+	 */
+	public default void warmUp() {
+	}
+
+	/**
+	 * @return The tagger named by the madlibs.tagger setting
+	 */
+	public static Tagger getDefault() {
+		String name = MadLibConfig.get(TAGGER_SETTING, "corenlp");
+		Tagger tagger;
+		if (name.equals("lexicon")) {
+			tagger = LexiconTagger.getInstance();
+		}
+		else if (name.equals("corenlp")) {
+			tagger = CoreNlpTagger.getInstance();
+		}
+		else {
+			throw new IllegalArgumentException("Unknown tagger: " + name);
+		}
+		return ParallelTagger.getThreadCount() > 1 ? ParallelTagger.getInstance(tagger) : tagger;
+	}
+}
@@ -0,0 +1,107 @@
+package madlibs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class tags passages on a background thread, so that the part of
+ * speech tagging never runs on the Swing event dispatch thread. The result is
+ * a TaggedPassage, which is never changed by a game, so every game played on
+ * it starts with a new Passage.
+ * Only the most recently requested text is worked on. If a different text is
+ * requested before the previous one has been tagged, the previous job is
+ * cancelled and its result is dropped.
+ *
+ */
+public class TaggingService {
+
+	// A single worker is enough, since only the latest request matters
+	private final ExecutorService executor;
+	// Tagged passages are stored here, so the same text is only tagged once
+	private final TaggedPassageCache cache;
+	// The text and the future of the most recent request
+	private String currentText;
+	private CompletableFuture<TaggedPassage> currentJob;
+
+	/**
+	 * Creates a new TaggingService with its own daemon worker thread, which
+	 * keeps tagged passages in the default cache directory.
+	 */
+	public TaggingService() {
+		this(new TaggedPassageCache(Tagger.getDefault()));
+	}
+
+	/**
+	 * Creates a new TaggingService with its own daemon worker thread.
+	 * @param cache Where tagged passages are stored and looked up
+	 */
+	public TaggingService(TaggedPassageCache cache) {
+		this.cache = cache;
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "madlibs-tagger");
+			// Don't keep the JVM alive just because of the tagger
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts tagging the supplied text in the background, unless that text is
+	 * already being tagged, in which case the existing job is returned. Any
+	 * job for a different text is cancelled.
+	 * @param text The text of the passage
+	 * @return A future that completes with the TaggedPassage
+	 */
+	public synchronized CompletableFuture<TaggedPassage> tag(String text) {
+		if (currentJob != null && text.equals(currentText)
+				&& !currentJob.isCancelled() && !currentJob.isCompletedExceptionally()) {
+			return currentJob;
+		}
+		cancel();
+		CompletableFuture<TaggedPassage> job = new CompletableFuture<TaggedPassage>();
+		executor.execute(() -> {
+			// Skip jobs that became stale while waiting in the queue
+			if (job.isDone()) {
+				return;
+			}
+			try {
+				job.complete(cache.getPassage(text));
+			} catch (RuntimeException e) {
+				job.completeExceptionally(e);
+			}
+		});
+		currentText = text;
+		currentJob = job;
+		return job;
+	}
+
+	/**
+	 * Loads the tagging model on the worker thread, so that it is ready by the
+	 * time the player picks a passage. Jobs submitted in the meantime simply
+	 * wait for it to finish.
+	 */
+	public void warmUp() {
+		executor.execute(() -> cache.getTagger().warmUp());
+	}
+
+	/**
+	 * Cancels the current job, if there is one. A job that is already running
+	 * is allowed to finish, but its result is discarded.
+	 */
+	public synchronized void cancel() {
+		if (currentJob != null) {
+			currentJob.cancel(false);
+		}
+		currentText = null;
+		currentJob = null;
+	}
+
+	/**
+	 * Stops the worker thread. No more jobs can be submitted afterwards.
+	 */
+	public void shutdown() {
+		cancel();
+		executor.shutdownNow();
+	}
+}
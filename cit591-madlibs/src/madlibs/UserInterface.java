@@ -1,13 +1,13 @@
 package madlibs;
 
 import javax.swing.*;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.DefaultHighlighter;
-import javax.swing.text.Highlighter;
 
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 
 
 /**
@@ -40,21 +40,27 @@ public class UserInterface extends JPanel implements ActionListener {
 
     private JButton continueButton;
     private JTextField[] wordField;
-    private int cardCounter = 0;
+    // The words to ask for in this game, and the part of speech being asked for
+    private GamePlan plan;
+    private PartOfSpeech currentPartOfSpeech;
 
     private String originalText;
+    // The library passage chosen in the menu, or null for the player's own text
+    private String selectedFileName;
+    // Shared with the rest of the game, and preloaded by MadLib.makeMenu
+    private PassageContentCache passageCache = PassageContentCache.getInstance();
     private Passage passage;
+    // Tags passages in the background so the window never freezes
+    private TaggingService taggingService;
     //private MadLib m = new MadLib();
     private int numOfWords;
     private String[] replacementWords;
-    Integer[][] indexesToReplace;
+    int[][] indexesToReplace;
     
-    private JTextArea outputModifiedText;
+    private ResultView resultView;
     private JButton playAgainButton;
     private int firstStart;
     
-    private JTextArea outputOriginalText;
-    
     private Color DARK_RED;  
     private Color LT_GREEN;
     private Font menuFont;
@@ -64,8 +70,18 @@ public class UserInterface extends JPanel implements ActionListener {
      * action events from some of them.
      */
     public UserInterface(ArrayList<MenuEntry> childrensMenu, ArrayList<MenuEntry> classicsMenu) {
+        this(childrensMenu, classicsMenu, new TaggingService());
+    }
+
+    /**
+     * This constructor is the same as above, but uses the supplied TaggingService
+     * to tag passages in the background.
+     */
+    public UserInterface(ArrayList<MenuEntry> childrensMenu, ArrayList<MenuEntry> classicsMenu,
+            TaggingService taggingService) {
         this.childrensMenu = childrensMenu;
         this.classicsMenu = classicsMenu;
+        this.taggingService = taggingService;
 
         setLayout(cardLayout);
         DARK_RED = new Color(0xc0, 0x00, 0x00);
@@ -128,8 +144,8 @@ public class UserInterface extends JPanel implements ActionListener {
         childrenLabel.setFont(menuFont); 
         litMenu.add(childrenLabel);
         for (int i = 1; i <= childrensMenu.size(); i++) {
-            radioButton[i] = new JRadioButton(
-                    childrensMenu.get(i - 1).getLitTitle() + " by" + childrensMenu.get(i - 1).getLitAuthor());
+            radioButton[i] = new JRadioButton(childrensMenu.get(i - 1).getLitTitle().trim() + " by "
+                    + childrensMenu.get(i - 1).getLitAuthor().trim());
             litMenu.add(radioButton[i]);
             group.add(radioButton[i]);
             radioButton[i].setName(childrensMenu.get(i - 1).getLitFileName());
@@ -140,8 +156,8 @@ public class UserInterface extends JPanel implements ActionListener {
         classicLabel.setFont(menuFont);
         litMenu.add(classicLabel);
         for (int j = childrensMenu.size() + 1; j <= (childrensMenu.size() + classicsMenu.size()); j++) {
-            radioButton[j] = new JRadioButton(classicsMenu.get(j - childrensMenu.size() - 1).getLitTitle() + " by"
-                    + classicsMenu.get(j - childrensMenu.size() - 1).getLitAuthor());
+            radioButton[j] = new JRadioButton(classicsMenu.get(j - childrensMenu.size() - 1).getLitTitle().trim()
+                    + " by " + classicsMenu.get(j - childrensMenu.size() - 1).getLitAuthor().trim());
             litMenu.add(radioButton[j]);
             group.add(radioButton[j]);
             radioButton[j].setName(classicsMenu.get(j - childrensMenu.size() - 1).getLitFileName());
@@ -204,38 +220,55 @@ public class UserInterface extends JPanel implements ActionListener {
 
     /**
      * designWordRequestCards method sets the design for the secondCard thru seventhCard.  Each card collects
-     * replacement words for a different part of speech.  If there are no replacement words required for a particular
-     * part of speech then that window (card) is not displayed.
+     * replacement words for a different part of speech.  The game plan only gives the parts of speech that
+     * need replacement words, so the other windows (cards) are never displayed.
      */
     private void designWordRequestCards() {
 
-        if (cardCounter == 0) {
+        switch (currentPartOfSpeech) {
+        case SINGULAR_NOUN:
             cardLayout.show(cards, "Replace Nouns");
             setWordRequestCardLayout(secondCard);
-        } else if (cardCounter == 1) {
+            break;
+        case PLURAL_NOUN:
             cardLayout.show(cards, "Replace Plural Nouns");
             setWordRequestCardLayout(thirdCard);
-        } else if (cardCounter == 2) {
+            break;
+        case ADJECTIVE:
             cardLayout.show(cards, "Replace Adjectives");
             setWordRequestCardLayout(forthCard);
-        } else if (cardCounter == 3) {
+            break;
+        case ADVERB:
             cardLayout.show(cards, "Replace Adverbs");
             setWordRequestCardLayout(fifthCard);
-        } else if (cardCounter == 4) {
+            break;
+        case ED_VERB:
             cardLayout.show(cards, "Replace -ed Verbs");
             setWordRequestCardLayout(sixthCard);
-        } else if (cardCounter == 5) {
+            break;
+        case ING_VERB:
             cardLayout.show(cards, "Replace -ing Verbs");
             setWordRequestCardLayout(seventhCard);
+            break;
         }
         
-        PartOfSpeech[] pos = PartOfSpeech.values();
-        requestWords(pos[cardCounter]);
-        
-        cardCounter++;
+        requestWords(currentPartOfSpeech);
 
     }
     
+    /**
+     * showNextCard method moves on to the next part of speech in the game plan, or to the
+     * result once every part of speech has been answered.
+     */
+    private void showNextCard() {
+        currentPartOfSpeech = plan.nextPartOfSpeech(currentPartOfSpeech);
+        if (currentPartOfSpeech != null) {
+            designWordRequestCards();
+        } else {
+            designResultCard();
+        }
+    }
+    
     /**
      * setWordRequestCardLayout sets the layout for all the word request cards
      * @param wordCard
@@ -263,16 +296,14 @@ public class UserInterface extends JPanel implements ActionListener {
     }
     
 	/**
-	 * requestWords method gets the indexes for all requested parts of speech, samples them and then
+	 * requestWords method gets the sampled indexes of a part of speech from the game plan and then
 	 * prompts user for the correct number of replacements.  This method is run for each part of 
-	 * speech.  
+	 * speech that has any words to replace.  
 	 * @param partOfSpeech
 	 */
     private void requestWords(PartOfSpeech partOfSpeech) {
 
-        Integer[][] indexesToSample = passage.getPartOfSpeech(partOfSpeech).toNestedArray();
-        WeightedSampler sampler = new WeightedSampler(indexesToSample);
-        indexesToReplace = sampler.sample(partOfSpeech.getDesiredPercent(), MadLib.MAX_WORDS_PER_PART_OF_SPEECH);
+        indexesToReplace = plan.getIndexes(partOfSpeech);
         
         numOfWords = indexesToReplace.length;
         if (indexesToReplace.length > 0) {
@@ -300,17 +331,6 @@ public class UserInterface extends JPanel implements ActionListener {
             continueButton.addActionListener(this);
             
         }
-        else {
-            if (cardCounter < 5) {
-                cardCounter++;
-                designWordRequestCards();
-            }
-            // Exception control of potential fatal error in the case of no "verbs ending in ed" in originalText
-            else { 
-                cardCounter = 0;
-                designResultCard();
-            }
-        }
         
     }
 
@@ -350,27 +370,10 @@ public class UserInterface extends JPanel implements ActionListener {
             eighthCard.setLayout(new BorderLayout());
             formatTitle(eighthCard, "Literature Mad-Lib Result");
 
-            JPanel resultPanel = new JPanel();
-            resultPanel.setLayout(new GridLayout(0, 2));
-            // Places scrolling text area into the middle (CENTER) cell of the overall
-            // BorderLayout (note the EAST cell is empty)
-            outputModifiedText = new JTextArea();
-            outputModifiedText.setEditable(false);
-            outputModifiedText.setMargin(new Insets(4, 4, 4, 4));
-            outputModifiedText.setLineWrap(true);
-            outputModifiedText.setWrapStyleWord(true);
-
-            // Places scrolling text area into the middle (CENTER) cell of the overall
-            // BorderLayout (note the EAST cell is empty)
-            outputOriginalText = new JTextArea();
-            outputOriginalText.setEditable(false);
-            outputOriginalText.setMargin(new Insets(4, 4, 4, 4));
-            outputOriginalText.setLineWrap(true);
-            outputOriginalText.setWrapStyleWord(true);
-
-            resultPanel.add(outputModifiedText);
-            resultPanel.add(outputOriginalText);
-            eighthCard.add(new JScrollPane(resultPanel), BorderLayout.CENTER);
+            // Places the updated and original passages side by side into the middle
+            // (CENTER) cell of the overall BorderLayout (note the EAST cell is empty)
+            resultView = new ResultView();
+            eighthCard.add(resultView, BorderLayout.CENTER);
 
             // Places a "PLAY AGAIN button into the bottom cell of the overall
             // BorderLayout and
@@ -395,42 +398,11 @@ public class UserInterface extends JPanel implements ActionListener {
             firstStart++;
         }
 
-        // Displays Mad-Lib updatedText in the text field with the replaced words
-        // highlighted
-        highlightText("Updated Passage:  \n\n", passage.getUpdatedText(), outputModifiedText, passage.getIndexesOfReplacedWords());
-
-        // Displays Mad-Lib originalText in the text field with the replaced words
-        // highlighted
-        highlightText("Original Passage: \n\n", passage.getOriginalText(), outputOriginalText, passage.getIndexesOfOriginalWords());
+        // Displays the Mad-Lib updatedText and originalText with the replaced words
+        // highlighted. They are prepared in the background, a page at a time.
+        resultView.showPassage(passage);
     }
 
-    /**
-     * highlightText private method highlights portions of a text indicated by the
-     * indexes provided in the indexes 2D array
-     * 
-     * @param title A title to display before the text
-     * @param text The text to be highlighted
-     * @param textArea The JTextArea (text box) that will display the text
-     * @param indexes  - array including the start and stop indexes of each desired
-     *                 highlight
-     */
-    private void highlightText(String title, String text, JTextArea textArea, int[][] indexes) {
-
-        Highlighter highlighter = textArea.getHighlighter();
-        textArea.setText(title + text);
-        DefaultHighlighter.DefaultHighlightPainter greyPainter = new DefaultHighlighter.DefaultHighlightPainter(
-                Color.LIGHT_GRAY);
-        for (int i = 0; i < indexes.length; i++) {
-            try {
-                highlighter.addHighlight(title.length() + indexes[i][0], title.length() + indexes[i][1], greyPainter);
-            } catch (BadLocationException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-        }
-
-    }
-    
     /**
      * formatTitle method formats the title of each window (card)
      * @param card
@@ -448,13 +420,87 @@ public class UserInterface extends JPanel implements ActionListener {
     }
 
 
+    /**
+     * startGame method waits for the tagged passage without blocking the event
+     * dispatch thread, and then shows the first word request card. Usually the
+     * passage has already been tagged when the radio button was selected. Every
+     * game gets a new Passage, so nothing is left over from the last one.
+     * @param text The text of the passage to play with
+     */
+    private void startGame(String text) {
+        playButton.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        taggingService.tag(text).whenComplete((taggedPassage, error) -> SwingUtilities.invokeLater(() -> {
+            playButton.setEnabled(true);
+            setCursor(Cursor.getDefaultCursor());
+            if (error == null) {
+                passage = new Passage(taggedPassage);
+                // The whole game is planned at once, so there is nothing to work out between cards
+                plan = passage.planGame(new Random().nextLong());
+                currentPartOfSpeech = null;
+                showNextCard();
+            }
+            // A cancelled job just means the player picked another passage
+            else if (!(error instanceof CancellationException)
+                    && !(error.getCause() instanceof CancellationException)) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                JOptionPane.showMessageDialog(this, "The passage could not be processed: " + cause.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * showLibraryPassage method shows the chosen library passage and starts tagging it.
+     * The text is normally already in the PassageContentCache, so it is shown at once and
+     * only checked against the file in the background. Otherwise it is read in the
+     * background and the PLAY button waits for it.
+     * @param fileName The file name of the passage
+     */
+    private void showLibraryPassage(String fileName) {
+        selectedFileName = fileName;
+        String cachedText = passageCache.peek(fileName);
+        if (cachedText != null) {
+            showPassageText(cachedText);
+        } else {
+            originalText = null;
+            inputOriginalText.setText("Loading the passage...");
+            playButton.setEnabled(false);
+        }
+        passageCache.getAsync(fileName).whenComplete((text, error) -> SwingUtilities.invokeLater(() -> {
+            // Nothing to do if the player has chosen something else in the meantime
+            if (!fileName.equals(selectedFileName)) {
+                return;
+            }
+            playButton.setEnabled(true);
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                inputOriginalText.setText("");
+                JOptionPane.showMessageDialog(this, "The passage could not be read: " + cause.getMessage());
+            } else if (text != originalText) {
+                // Either it wasn't cached, or the file has changed
+                showPassageText(text);
+            }
+        }));
+    }
+
+    /**
+     * showPassageText method shows a library passage in the text area to the right of the menu.
+     * @param text The text of the passage
+     */
+    private void showPassageText(String text) {
+        originalText = text;
+        inputOriginalText.setText(text);
+        inputOriginalText.setCaretPosition(0);
+        // Start tagging right away, so it is likely done before PLAY is clicked
+        taggingService.tag(text);
+    }
+
     /**
      * Respond to an ActionEvent from one of the GUI components in the panel. In
      * each case, a message about the event is posted to the text area. This method
      * is part of the ActionListener interface.
      */
     public void actionPerformed(ActionEvent evt) {
-        MadLib m = new MadLib();
         JFrame errorPopUp = null;
         
         try {
@@ -468,8 +514,7 @@ public class UserInterface extends JPanel implements ActionListener {
                         if (createYourOwn == true);{
                             originalText = inputOriginalText.getText();
                         }
-                        passage = new Passage(originalText);
-                        designWordRequestCards();
+                        startGame(originalText);
 
                     } else {
                         RadioButtonSelected = null;
@@ -478,12 +523,7 @@ public class UserInterface extends JPanel implements ActionListener {
                 if (target == continueButton) {
                     boolean allWordsEntered = collectWords();
                     if (allWordsEntered == true) {
-                        if (cardCounter < 6) {
-                            designWordRequestCards();
-                        } else {
-                            cardCounter = 0;
-                            designResultCard();
-                        }
+                        showNextCard();
                     }
                     else if (allWordsEntered == false) {
                         errorPopUp = new JFrame();
@@ -503,16 +543,19 @@ public class UserInterface extends JPanel implements ActionListener {
                     passageSelected = (JRadioButton) target;
                     if (passageSelected.getName() != createYourOwnName ) {                        
                         inputOriginalText.setEditable(false);
-                        originalText = m.litReader(passageSelected.getName());
-                        inputOriginalText.setText(originalText);
                         createYourOwn = false;
+                        showLibraryPassage(passageSelected.getName());
                         
                     }
                     else {
+                        selectedFileName = null;
+                        playButton.setEnabled(true);
                         inputOriginalText.setText("Type your own Mad-Lib passage here.");
                         inputOriginalText.setEditable(true);
                         //originalText = text.getText();
                         createYourOwn = true;
+                        // The text isn't known yet, so any earlier job is no longer needed
+                        taggingService.cancel();
                     }
                     RadioButtonSelected = true;
                 }
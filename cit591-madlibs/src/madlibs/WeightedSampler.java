@@ -1,6 +1,6 @@
 package madlibs;
 
-import java.util.*;
+import java.util.Random;
 
 /**
  * This class can sample a 2d array of Integers so that the percentage of elements
@@ -11,22 +11,82 @@ import java.util.*;
  */
 public class WeightedSampler {
 	
-	ArrayList<Integer[]> indexesToSample;
-	int totalNumberOfIndexes = 0;
+	// The rows that can be sampled. These are never modified.
+	private final int[][] indexesToSample;
+	private final int totalNumberOfIndexes;
+	/* A Fenwick tree (binary indexed tree) over the lengths of the rows, so that
+	 * finding the row at a cumulative weight and removing a row both take
+	 * O(log n). It is built once and copied into a work space for every sample.
+	 */
+	private final int[] tree;
+	// The largest power of two that is not more than the number of rows
+	private final int topStep;
+	// What the rows are, for the WordsSampled event, or null if unknown
+	private final PartOfSpeech partOfSpeech;
+	
+	// Every thread gets its own work space, so sampling does not allocate
+	private static final ThreadLocal<WorkSpace> workSpaces = ThreadLocal.withInitial(WorkSpace::new);
+	
+	private static class WorkSpace {
+		private final Random random = new Random();
+		private int[] tree = new int[0];
+	}
 
 	/**
 	 * Creates a new WeightedSampler object.
 	 * @param indexesToSample The 2d Integer array from which rows will be sampled.
 	 */
 	WeightedSampler(Integer[][] indexesToSample) {
-		// Creating an ArrayList helps ensure that we don't mutate original object
-		this.indexesToSample = new ArrayList<Integer[]>();
-		for (Integer[] wordIndexes : indexesToSample) {
-			this.indexesToSample.add(wordIndexes);
-			totalNumberOfIndexes += wordIndexes.length;
+		this(unbox(indexesToSample));
+	}
+	
+	/**
+	 * Creates a new WeightedSampler object from primitive arrays, such as the
+	 * ones returned by PartOfSpeechTracker.getIndexGroups. The arrays are not
+	 * copied, so they must not be modified afterwards.
+	 * @param indexesToSample The 2d int array from which rows will be sampled.
+	 */
+	WeightedSampler(int[][] indexesToSample) {
+		this(indexesToSample, null);
+	}
+	
+	/**
+	 * Creates a new WeightedSampler object from the index groups of a part of
+	 * speech, which is reported in the WordsSampled events of the game.
+	 * @param indexesToSample The 2d int array from which rows will be sampled.
+	 * @param partOfSpeech The part of speech of the words in the rows
+	 */
+	WeightedSampler(int[][] indexesToSample, PartOfSpeech partOfSpeech) {
+		this.indexesToSample = indexesToSample;
+		this.partOfSpeech = partOfSpeech;
+		int rows = indexesToSample.length;
+		tree = new int[rows + 1];
+		int total = 0;
+		for (int i = 0; i < rows; i++) {
+			total += indexesToSample[i].length;
+			tree[i + 1] = indexesToSample[i].length;
 		}
+		totalNumberOfIndexes = total;
+		// Build the tree in place in O(n)
+		for (int i = 1; i <= rows; i++) {
+			int parent = i + (i & -i);
+			if (parent <= rows) {
+				tree[parent] += tree[i];
+			}
+		}
+		topStep = rows == 0 ? 0 : Integer.highestOneBit(rows);
 	}
 	
+	private static int[][] unbox(Integer[][] indexesToSample) {
+		int[][] unboxed = new int[indexesToSample.length][];
+		for (int i = 0; i < indexesToSample.length; i++) {
+			unboxed[i] = new int[indexesToSample[i].length];
+			for (int j = 0; j < unboxed[i].length; j++) {
+				unboxed[i][j] = indexesToSample[i][j];
+			}
+		}
+		return unboxed;
+	}
 	
 	/** 
 	 * Samples 1d Integer arrays from the supplied 2d Integer array. The percentage of 
@@ -43,17 +103,126 @@ public class WeightedSampler {
 	 * @return A 2d Integer array containing the randomly selected 1d Integer arrays
 	 */
 	public Integer[][] sample(double desiredPercent, long seed, Integer maxN) {
-		Random random = new Random(seed);
-		// Making a copy so can modify without mutating original
-		ArrayList<Integer[]> indexesToSample = (ArrayList<Integer[]>) this.indexesToSample.clone();
-		ArrayList<Integer[]> sampledIndexes = sample(
-			indexesToSample,
-			desiredPercent,
-			random,
-			maxN
-		);
-		// Returning an array rather than a list since easier to work with.
-		return sampledIndexes.toArray(new Integer[sampledIndexes.size()][]);
+		int[][] sampledIndexes = sampleIndexes(desiredPercent, seed, maxN);
+		Integer[][] boxedIndexes = new Integer[sampledIndexes.length][];
+		for (int i = 0; i < sampledIndexes.length; i++) {
+			boxedIndexes[i] = new Integer[sampledIndexes[i].length];
+			for (int j = 0; j < sampledIndexes[i].length; j++) {
+				boxedIndexes[i][j] = sampledIndexes[i][j];
+			}
+		}
+		return boxedIndexes;
+	}
+	
+	/** 
+	 * The same as sample, but works on primitive arrays. The returned rows are
+	 * the same arrays that were supplied to the constructor.
+	 * @param desiredPercent The percentage of the total elements that should be contained
+	 * within the chosen int arrays.
+	 * @param seed A random seed for reproducibility purposes
+	 * @param maxN The maximum number of 1d int arrays that should be selected.
+	 * @return A 2d int array containing the randomly selected 1d int arrays
+	 */
+	public int[][] sampleIndexes(double desiredPercent, long seed, int maxN) {
+		int[] rows = new int[Math.max(1, Math.min(maxN, indexesToSample.length))];
+		int count = sampleRows(desiredPercent, seed, maxN, rows);
+		int[][] sampledIndexes = new int[count][];
+		for (int i = 0; i < count; i++) {
+			sampledIndexes[i] = indexesToSample[rows[i]];
+		}
+		return sampledIndexes;
+	}
+	
+	/**
+	 * @param row The position of a row, such as one chosen by sampleRows
+	 * @return The row, which is the same array that was supplied to the
+	 * constructor and must not be modified
+	 */
+	int[] getRow(int row) {
+		return indexesToSample[row];
+	}
+	
+	/**
+	 * Samples rows the same way as sample, but only writes the positions of the
+	 * chosen rows, in the order they were chosen, into the supplied array. This
+	 * does not allocate any memory, and takes O(k log n) time for k chosen rows.
+	 * @param desiredPercent The percentage of the total elements that should be contained
+	 * within the chosen rows.
+	 * @param seed A random seed for reproducibility purposes
+	 * @param maxN The maximum number of rows that should be selected.
+	 * @param rows Receives the positions of the chosen rows. It must be able to hold
+	 * the smaller of maxN and the number of rows, and at least one row.
+	 * @return The number of rows that were chosen
+	 */
+	public int sampleRows(double desiredPercent, long seed, int maxN, int[] rows) {
+		GameEvents.WordsSampled event = new GameEvents.WordsSampled();
+		event.begin();
+		double desiredFraction = desiredPercent;
+		long startNanos = Metrics.startNanos();
+		long startBytes = Metrics.allocatedBytes();
+		WorkSpace workSpace = workSpaces.get();
+		Random random = workSpace.random;
+		// Gives the same sequence of numbers as new Random(seed)
+		random.setSeed(seed);
+		if (workSpace.tree.length < tree.length) {
+			workSpace.tree = new int[tree.length];
+		}
+		// The work space may be longer than this tree, so only the first size slots are used
+		int[] tree = workSpace.tree;
+		int size = this.tree.length;
+		System.arraycopy(this.tree, 0, tree, 0, size);
+		
+		int remainingIndexes = totalNumberOfIndexes;
+		int count = 0;
+		// If empty, then return nothing
+		if (indexesToSample.length == 0) {
+			Metrics.SAMPLE.record(startNanos, startBytes);
+			event.finish(partOfSpeech, 0, 0, 0, desiredFraction);
+			return 0;
+		}
+		// The first row is always chosen, and then we keep going until we have met
+		// our desired percentage unless we have reached the maximum number of elements
+		do {
+			// Create a random variable between 0 and desiredPercent. The chosen row is
+			// the first one where the sum of the weights of the remaining rows up to
+			// and including it reaches the random variable, going back to the start
+			// if we reach the end.
+			double weightThreshold = random.nextDouble() * desiredPercent;
+			// Work in numbers of indexes rather than weights, so the tree can use ints
+			double threshold = weightThreshold * totalNumberOfIndexes;
+			if (threshold > remainingIndexes) {
+				threshold -= (Math.ceil(threshold / remainingIndexes) - 1) * remainingIndexes;
+			}
+			int row = findRow(tree, size, (int) Math.max(1, Math.ceil(threshold)));
+			int length = indexesToSample[row].length;
+			// Remove the sampled row so it doesn't get chosen again
+			for (int i = row + 1; i < size; i += i & -i) {
+				tree[i] -= length;
+			}
+			remainingIndexes -= length;
+			// Casting one of these ints to a double will ensure that the result is a double
+			desiredPercent -= (double) length / totalNumberOfIndexes;
+			rows[count++] = row;
+		} while (desiredPercent > 0 && count < maxN && remainingIndexes > 0);
+		Metrics.SAMPLE.record(startNanos, startBytes);
+		event.finish(partOfSpeech, indexesToSample.length, totalNumberOfIndexes, count, desiredFraction);
+		return count;
+	}
+	
+	/*
+	 * Finds the first row where the number of remaining indexes up to and
+	 * including that row is at least the target.
+	 */
+	private int findRow(int[] tree, int size, int target) {
+		int position = 0;
+		for (int step = topStep; step > 0; step >>= 1) {
+			int next = position + step;
+			if (next < size && tree[next] < target) {
+				position = next;
+				target -= tree[next];
+			}
+		}
+		return position;
 	}
 	/**
 	 * Samples 1d Integer arrays from the supplied 2d Integer array. The percentage of 
@@ -71,68 +240,5 @@ public class WeightedSampler {
 	public Integer[][] sample(double desiredPercent, Integer maxN) {;
 		return sample(desiredPercent, new Random().nextLong(), maxN);
 	}
-	
-	private ArrayList<Integer[]> sample(
-		ArrayList<Integer[]> indexesToSample,
-		double desiredPercent,
-		Random random,
-		Integer maxN) {
-		
-		// We will populate and return this ArrayList
-		ArrayList<Integer[]> sampledIndexes = new ArrayList<Integer[]>();
-		
-		// If empty, then return an empty ArrayList
-		if (indexesToSample.size() == 0) {
-			return sampledIndexes;
-		}
-		
-		// Create a random variable between 0 and desiredPercent
-		// We will loop over the arrays to sample, summing up their weight, until
-		// we reach the sum of their weights is equal to or greater than the random variable
-		// The array on which this condition is met will be sampled
-		double weightThreshold = random.nextDouble() * desiredPercent;
-		Integer[] currentIndexes;
-		// This variable keeps track of the weight of the current array
-		double currentWeight;
-		// index for looping;
-		int i = 0;
-		while (true) {
-			currentIndexes = indexesToSample.get(i);
-			// Casting one of these ints to a double will ensure that the result is a double
-			currentWeight = (double) currentIndexes.length / totalNumberOfIndexes;
-			weightThreshold -= currentWeight;
-			// Stop looping once the sum of the weights of the traversed arrays is greater than
-			// the random variable
-			if (weightThreshold <= 0) {
-				break;
-			}
-			i++;
-			// Start at beginning if we have reached the end
-			if (i >= indexesToSample.size()) {
-				i = 0;
-			}
-		}
-		// Remove the sampled set of indexes so they don't get chosen again
-		indexesToSample.remove(i);
-		// Update how much percentage needs to be sampled and how close to maxN we are
-		desiredPercent -= currentWeight;
-		maxN -= 1;
-		
-		sampledIndexes.add(currentIndexes);
-		// Call recursively until we have met our desired percentage unless we have
-		// reached the maximum number of elements 
-		if (desiredPercent > 0 && maxN > 0) {
-			sampledIndexes.addAll(
-				sample(
-					indexesToSample,
-					desiredPercent,
-					random,
-					maxN
-				)
-			);
-		}
-		return sampledIndexes;
-	}
-	
 
 }
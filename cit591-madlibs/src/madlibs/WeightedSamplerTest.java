@@ -39,6 +39,42 @@ class WeightedSamplerTest {
 		WeightedSampler sampler = new WeightedSampler(indexesToSample);
 		assertArrayEquals(expectedIndexes, sampler.sample(0.5, 20200418, 2));
 	}
+	// The expected rows were produced by the original, list based, sampler,
+	// so these check that a seed still gives the same result
+	@Test
+	void testSameAsListSampler() {
+		int[][] indexesToSample = {
+			{0},
+			{1,2},
+			{3,4,5},
+			{6,7},
+			{8},
+			{9,10,11,12},
+			{13},
+			{14,15},
+		};
+		WeightedSampler sampler = new WeightedSampler(indexesToSample);
+		assertArrayEquals(new int[][] {{3,4,5}, {1,2}}, sampler.sampleIndexes(0.3, 42L, Integer.MAX_VALUE));
+		assertArrayEquals(new int[][] {{9,10,11,12}, {6,7}, {1,2}}, sampler.sampleIndexes(0.9, 7L, 3));
+	}
+	@Test
+	void testLargeSample() {
+		// Used to overflow the stack, since every pick was a recursive call
+		int[][] indexesToSample = new int[200000][];
+		for (int i = 0; i < indexesToSample.length; i++) {
+			indexesToSample[i] = new int[] {i};
+		}
+		WeightedSampler sampler = new WeightedSampler(indexesToSample);
+		int[] rows = new int[indexesToSample.length];
+		int count = sampler.sampleRows(1.0, 20200418, Integer.MAX_VALUE, rows);
+		assertEquals(indexesToSample.length, count);
+		// Every row is chosen exactly once
+		boolean[] seen = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			assertFalse(seen[rows[i]]);
+			seen[rows[i]] = true;
+		}
+	}
 	@Test
 	void testEmptySample() {
 		Integer[][] indexesToSample = new Integer[0][];